@@ -0,0 +1,103 @@
+package pragmasoft.andriilupynos.js_executioner.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pragmasoft.andriilupynos.js_executioner.application.api.dto.ScriptEventDto;
+import pragmasoft.andriilupynos.js_executioner.application.api.dto.ScriptExecutionDto;
+import pragmasoft.andriilupynos.js_executioner.application.api.dto.ScriptSimpleDto;
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEvent;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Building and writing response bodies with an object mapper configured the same way as the application one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoSerializationBenchmark {
+
+    private static final int INLINE_OUTPUT_LIMIT = 1024 * 1024;
+    private static final int PAGE_SIZE = 100;
+
+    private ObjectMapper objectMapper;
+    private ScriptInfo scriptInfo;
+    private ScriptExecution execution;
+    private List<ScriptInfo> page;
+    private ScriptEvent event;
+
+    @Setup
+    public void setUp() {
+        this.objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        var created = Instant.parse("2022-01-01T00:00:00Z");
+        this.scriptInfo = script("script", created, "Hello world\n".repeat(1000));
+        this.execution = ScriptExecution.restore(this.scriptInfo, created, created.plusMillis(5), created.plusMillis(20));
+        this.page = IntStream.range(0, PAGE_SIZE)
+                .mapToObj(i -> script("script-" + i, created.plusMillis(i), ""))
+                .collect(Collectors.toList());
+        this.event = new ScriptEvent(42, "script", ScriptInfo.Status.RUNNING, ScriptInfo.Status.COMPLETED, created);
+    }
+
+    @Benchmark
+    public byte[] execution() throws IOException {
+        return this.objectMapper.writeValueAsBytes(new ScriptExecutionDto(this.scriptInfo, this.execution, INLINE_OUTPUT_LIMIT));
+    }
+
+    @Benchmark
+    public byte[] page() throws IOException {
+        var dtos = this.page.stream().map(ScriptSimpleDto::new).collect(Collectors.toList());
+        return this.objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] event() throws IOException {
+        return this.objectMapper.writeValueAsBytes(new ScriptEventDto(this.event));
+    }
+
+    private static ScriptInfo script(String name, Instant created, String output) {
+        var out = new ByteArrayScriptOutput();
+        try {
+            out.asStream().write(output.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var code = new Script("console.log('Hello world')", OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return ScriptInfo.restore(code, name, ScriptInfo.Status.COMPLETED, created, ScriptLimits.DEFAULT, ScriptOutputMode.UNBOUNDED, out, new ByteArrayScriptOutput());
+    }
+
+}
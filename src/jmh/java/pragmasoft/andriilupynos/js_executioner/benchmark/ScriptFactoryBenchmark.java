@@ -0,0 +1,90 @@
+package pragmasoft.andriilupynos.js_executioner.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.graalvm.polyglot.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSContextPool;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSScriptFactory;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSSourceCache;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of a script ready to run: with a new engine for every script, with the shared engine
+ * and a source that was never seen, and with the shared engine and a cached source.
+ * Shared engine keeps contexts pre-created in background, as the service does, so its scripts check out pooled contexts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScriptFactoryBenchmark {
+
+    private static final String CODE = "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2) }\nconsole.log(fib(15))";
+
+    private GraalJSScriptFactory sharedEngineFactory;
+    private long uncached = 0;
+
+    @Setup
+    public void setUp() {
+        this.sharedEngineFactory = factory(16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.sharedEngineFactory.close();
+    }
+
+    @Benchmark
+    public Script coldEngine() throws Exception {
+        try (var factory = factory(0)) {
+            return create(factory, CODE);
+        }
+    }
+
+    @Benchmark
+    public Script sharedEngine() throws Exception {
+        // Distinct code misses the source cache, so every script is parsed
+        return create(this.sharedEngineFactory, CODE + "\n// " + this.uncached++);
+    }
+
+    @Benchmark
+    public Script sharedEngineCachedSource() throws Exception {
+        return create(this.sharedEngineFactory, CODE);
+    }
+
+    private static Script create(GraalJSScriptFactory factory, String code) throws Exception {
+        // Closing discards the context, as contexts are never returned to the pool once checked out for a script
+        try (var script = factory.createScript(code, OutputStream.nullOutputStream(), OutputStream.nullOutputStream(), ScriptLimits.UNLIMITED)) {
+            return script;
+        }
+    }
+
+    /**
+     * @param idle number of contexts pool keeps pre-created, a pool without them creates a context on every checkout
+     */
+    private static GraalJSScriptFactory factory(int idle) {
+        var meterRegistry = new SimpleMeterRegistry();
+        return new GraalJSScriptFactory(
+                new GraalJSContextPool(Engine.newBuilder().build(), idle, idle, Duration.ZERO, 0, meterRegistry),
+                new GraalJSSourceCache(10000, 50_000_000, Duration.ofHours(1), meterRegistry)
+        );
+    }
+
+}
@@ -0,0 +1,67 @@
+package pragmasoft.andriilupynos.js_executioner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a megabyte of output in chunks of the given size and reading it back in chunks of the same size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptOutputBenchmark {
+
+    private static final int OUTPUT_SIZE = 1024 * 1024;
+
+    @Param({"64", "4096", "65536"})
+    private int chunkSize;
+
+    private byte[] chunk;
+    private ByteArrayScriptOutput written;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.chunk = new byte[this.chunkSize];
+        Arrays.fill(this.chunk, (byte) 'a');
+        this.written = write(this.chunk);
+    }
+
+    @Benchmark
+    public ScriptInfo.ScriptOutput write() throws IOException {
+        return write(this.chunk);
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) {
+        for (long offset = 0; offset < OUTPUT_SIZE; offset += this.chunkSize)
+            blackhole.consume(this.written.read(offset, this.chunkSize));
+    }
+
+    private static ByteArrayScriptOutput write(byte[] chunk) throws IOException {
+        var output = new ByteArrayScriptOutput();
+        var stream = output.asStream();
+        for (int written = 0; written < OUTPUT_SIZE; written += chunk.length)
+            stream.write(chunk);
+        return output;
+    }
+
+}
@@ -0,0 +1,111 @@
+package pragmasoft.andriilupynos.js_executioner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.InMemoryScriptInfoRepository;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing of the in-memory store, every fourth script is still scheduled and the others are completed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScriptRepositoryBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private InMemoryScriptInfoRepository repository;
+
+    @Setup
+    public void setUp() {
+        this.repository = new InMemoryScriptInfoRepository();
+        // Outputs are not read by the repository, so all scripts share empty ones to keep the heap small
+        var out = new ByteArrayScriptOutput();
+        var err = new ByteArrayScriptOutput();
+        var created = Instant.parse("2022-01-01T00:00:00Z");
+        for (int i = 0; i < this.size; i++) {
+            var status = i % 4 == 0 ? ScriptInfo.Status.SCHEDULED : ScriptInfo.Status.COMPLETED;
+            this.repository.store(ScriptInfo.restore(
+                    new NoopScript(),
+                    "script-" + i,
+                    status,
+                    created.plusMillis(i),
+                    ScriptLimits.DEFAULT,
+                    ScriptOutputMode.UNBOUNDED,
+                    out,
+                    err
+            ));
+        }
+    }
+
+    @Benchmark
+    public void allByCreated(Blackhole blackhole) {
+        for (var scriptInfo : this.repository.all(ScriptService.SortBy.CREATED))
+            blackhole.consume(scriptInfo);
+    }
+
+    @Benchmark
+    public void allByName(Blackhole blackhole) {
+        for (var scriptInfo : this.repository.all(ScriptService.SortBy.NAME))
+            blackhole.consume(scriptInfo);
+    }
+
+    @Benchmark
+    public void allByStatus(Blackhole blackhole) {
+        for (var scriptInfo : this.repository.all(ScriptService.SortBy.CREATED, ScriptInfo.Status.SCHEDULED))
+            blackhole.consume(scriptInfo);
+    }
+
+    @Benchmark
+    public void firstPageByName(Blackhole blackhole) {
+        int taken = 0;
+        for (var scriptInfo : this.repository.all(ScriptService.SortBy.NAME, ScriptInfo.Status.COMPLETED, null, false)) {
+            blackhole.consume(scriptInfo);
+            if (++taken == PAGE_SIZE)
+                break;
+        }
+    }
+
+    private static class NoopScript extends Script {
+
+        NoopScript() {
+            super("", OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
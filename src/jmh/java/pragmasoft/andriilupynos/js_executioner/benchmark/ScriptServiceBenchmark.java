@@ -0,0 +1,111 @@
+package pragmasoft.andriilupynos.js_executioner.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.graalvm.polyglot.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pragmasoft.andriilupynos.js_executioner.domain.DomainScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.DefaultScriptOutputFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.FairShareScheduler;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.HierarchicalTimingWheel;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSContextPool;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSScriptFactory;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSSourceCache;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.InMemoryScriptExecutionRepository;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.InMemoryScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.ScriptExecutors;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the script service wired the same way as the application with the in-memory store.
+ * Every script is deleted by the operation that created it, so the store does not grow between iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScriptServiceBenchmark {
+
+    private static final String CODE = "console.log('Hello world')";
+
+    private GraalJSScriptFactory scriptFactory;
+    private ExecutorService executor;
+    private HierarchicalTimingWheel timer;
+    private ScriptEventBus eventBus;
+    private DomainScriptService scriptService;
+
+    @Setup
+    public void setUp() {
+        var meterRegistry = new SimpleMeterRegistry();
+        this.scriptFactory = new GraalJSScriptFactory(
+                new GraalJSContextPool(Engine.newBuilder().build(), 2, 16, Duration.ofMinutes(5), 0, meterRegistry),
+                new GraalJSSourceCache(10000, 50_000_000, Duration.ofHours(1), meterRegistry)
+        );
+        this.timer = new HierarchicalTimingWheel(Duration.ofMillis(10), 512, Executors.newSingleThreadExecutor());
+        this.eventBus = new ScriptEventBus(65536, Executors.newSingleThreadExecutor());
+        this.executor = ScriptExecutors.create(ScriptExecutors.Type.FIXED, 8, meterRegistry);
+        this.scriptService = new DomainScriptService(
+                this.scriptFactory,
+                new InMemoryScriptInfoRepository(),
+                new FairShareScheduler(this.executor, 8, Duration.ofSeconds(10), Map.of()),
+                this.timer,
+                ScriptLimits.UNLIMITED,
+                new DefaultScriptOutputFactory(
+                        ScriptOutputMode.UNBOUNDED,
+                        64 * 1024,
+                        1024 * 1024,
+                        1024 * 1024,
+                        1024 * 1024 * 1024,
+                        Path.of(System.getProperty("java.io.tmpdir"))
+                ),
+                new InMemoryScriptExecutionRepository(),
+                this.eventBus,
+                this.executor
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.eventBus.close();
+        this.timer.close();
+        this.executor.shutdownNow();
+        this.scriptFactory.close();
+    }
+
+    @Benchmark
+    public ScriptInfo create() {
+        var scriptInfo = this.scriptService.create(CODE);
+        this.scriptService.delete(scriptInfo.name);
+        return scriptInfo;
+    }
+
+    @Benchmark
+    public ScriptInfo createAndExecute() throws Exception {
+        var scriptInfo = this.scriptService.create(CODE);
+        this.scriptService.execute(scriptInfo).get();
+        this.scriptService.delete(scriptInfo.name);
+        return scriptInfo;
+    }
+
+}
@@ -0,0 +1,45 @@
+package pragmasoft.andriilupynos.js_executioner.application.api;
+
+import org.springframework.scheduling.support.CronExpression;
+import pragmasoft.andriilupynos.js_executioner.domain.ExecutionOptions;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Recurrence defined by a spring cron expression evaluated in UTC
+ */
+public class CronRecurrence implements ExecutionOptions.Recurrence {
+
+    private final CronExpression expression;
+
+    private CronRecurrence(CronExpression expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Valid expression that never fires, e.g. on the 30th of February, is rejected as well
+     */
+    public static CronRecurrence parse(String cron) {
+        CronRecurrence recurrence;
+        try {
+            recurrence = new CronRecurrence(CronExpression.parse(cron));
+        } catch (java.lang.IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cron expression: " + e.getMessage());
+        }
+        if (recurrence.nextAfter(Instant.now(CurrentClock.get())).isEmpty())
+            throw new IllegalArgumentException("Cron expression " + cron + " has no upcoming executions");
+        return recurrence;
+    }
+
+    @Override
+    public Optional<Instant> nextAfter(Instant time) {
+        return Optional.ofNullable(this.expression.next(time.atZone(ZoneOffset.UTC)))
+                .map(ZonedDateTime::toInstant);
+    }
+
+}
@@ -18,7 +18,7 @@ public class HateoasRootController {
     public RepresentationModel<?> getEntitiesLinks() {
         return new RepresentationModel<>(
             List.of(
-                    linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null))
+                    linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null, null, null, null, null))
                             .withRel("scripts")
             )
         );
@@ -1,16 +1,69 @@
 package pragmasoft.andriilupynos.js_executioner.application.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.RepresentationModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriUtils;
+import pragmasoft.andriilupynos.js_executioner.application.api.admission.RateLimitInterceptor;
 import pragmasoft.andriilupynos.js_executioner.application.api.dto.*;
+import pragmasoft.andriilupynos.js_executioner.application.api.problem.ScriptProblems;
+import pragmasoft.andriilupynos.js_executioner.application.api.reactive.ReactiveScriptService;
+import pragmasoft.andriilupynos.js_executioner.application.api.stream.ScriptEventStreamer;
+import pragmasoft.andriilupynos.js_executioner.application.api.stream.ScriptOutputStreamer;
+import pragmasoft.andriilupynos.js_executioner.domain.ExecutionOptions;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptSubmission;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptRejectedException;
+import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
+import reactor.core.publisher.Mono;
 
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
@@ -22,45 +75,282 @@ public class ScriptController {
 
     public static final String HATEOAS_SCRIPTS_REL = "scripts";
     public static final String HATEOAS_SCRIPT_REL = "script";
+    public static final String HATEOAS_OUTPUT_REL = "output";
+    public static final String HATEOAS_ERROR_OUTPUT_REL = "errorOutput";
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    public static final String SCRIPT_NAME_HEADER = "X-Script-Name";
+    public static final String APPLICATION_JAVASCRIPT_VALUE = "application/javascript";
+    public static final String TEXT_JAVASCRIPT_VALUE = "text/javascript";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String SCRIPT_PARAMS = "scriptParams";
+    private static final String WAIT_PARAM = "wait";
+    private static final String WAIT_FOR_COMPLETION_PARAM = "waitForCompletion";
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Builder for a longer body grows while it is read, so a claimed length does not allocate memory up front
+    private static final int MAX_PRESIZED_CODE_LENGTH = 1024 * 1024;
 
     private final ScriptService scriptService;
+    private final ReactiveScriptService reactiveScriptService;
+    private final ScriptOutputStreamer outputStreamer;
+    private final ScriptEventStreamer eventStreamer;
+    private final ObjectMapper objectMapper;
+    private final int inlineOutputLimit;
+    private final int maxBatchSize;
+    private final long maxCodeSize;
+    private final Duration maxWait;
+    private final String baseProblemUri;
 
-    public ScriptController(ScriptService scriptService) {
+    /**
+     * @param inlineOutputLimit bytes of output included into script and execution responses
+     * @param maxBatchSize      maximum number of scripts in a batch
+     * @param maxCodeSize       maximum size of code provided as a plain request body or an uploaded file
+     * @param maxWait           maximum time a request waits for script completion
+     */
+    public ScriptController(
+            ScriptService scriptService,
+            ReactiveScriptService reactiveScriptService,
+            ScriptOutputStreamer outputStreamer,
+            ScriptEventStreamer eventStreamer,
+            ObjectMapper objectMapper,
+            @Value("${scripts.output.inline-limit:1MB}") DataSize inlineOutputLimit,
+            @Value("${scripts.batch.max-size:10000}") int maxBatchSize,
+            @Value("${scripts.code.max-size:10MB}") DataSize maxCodeSize,
+            @Value("${scripts.wait.max:60s}") Duration maxWait,
+            @Value("${problem.base-uri}") String baseProblemUri
+    ) {
         this.scriptService = scriptService;
+        this.reactiveScriptService = reactiveScriptService;
+        this.outputStreamer = outputStreamer;
+        this.eventStreamer = eventStreamer;
+        this.objectMapper = objectMapper;
+        this.inlineOutputLimit = Math.toIntExact(inlineOutputLimit.toBytes());
+        this.maxBatchSize = maxBatchSize;
+        this.maxCodeSize = maxCodeSize.toBytes();
+        this.maxWait = maxWait;
+        this.baseProblemUri = baseProblemUri;
     }
 
     @Operation(
             operationId = "scheduleScript",
             summary = "Schedule a script for future execution.",
             description = "Schedule a script for future execution. " +
-                    "It will be executed at the specified time or as soon as possible."
+                    "It will be executed at the specified time (runAt or delayMillis) or as soon as possible. " +
+                    "If cron expression is provided, then script is executed repeatedly, " +
+                    "every occurrence being a separate script named <name>#<occurrence>. " +
+                    "Scripts with higher priority are started first, while scripts of different clients " +
+                    "identified by " + CLIENT_ID_HEADER + " header share workers fairly. " +
+                    "Responds with 429 if client exceeded its rate limit and with 503 if execution queue is full, " +
+                    "both with Retry-After header. " +
+                    "Script exceeding its statement, wall time or CPU time limit is stopped with TIMED_OUT status, " +
+                    "script allocating more than its memory limit, garbage included, is stopped with MEMORY_EXCEEDED status, " +
+                    "limits that are not provided are taken from service defaults, zero disables a limit."
     )
     @PostMapping(path = "/scripts")
     @ResponseStatus(HttpStatus.ACCEPTED)
-    public EntityModel<ScriptCreateRespDto> scheduleScript(@RequestBody ScriptCreateRqDto rq) {
-        var script = scriptService.create(rq.getCode(), rq.getName());
-        scriptService.execute(script);
-        //noinspection ConstantConditions
-        return EntityModel.of(
-                new ScriptCreateRespDto(script.name),
-                linkTo(methodOn(ScriptController.class).scheduleScript(null)).withSelfRel(),
-                linkTo(methodOn(ScriptController.class).findScriptFullInfoById(script.name)).withRel(HATEOAS_SCRIPT_REL),
-                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null)).withRel(HATEOAS_SCRIPTS_REL)
-        );
+    public EntityModel<ScriptCreateRespDto> scheduleScript(
+            @RequestBody ScriptCreateRqDto rq,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) {
+        return schedule(rq, clientId);
+    }
+
+    @Operation(
+            operationId = "scheduleScriptCode",
+            summary = "Schedule a script provided as a plain request body for future execution.",
+            description = "Same as scheduling a script, but the whole request body is the code, " +
+                    "so it is sent as is instead of being escaped into JSON. " +
+                    "Name is taken from the name query parameter or the " + SCRIPT_NAME_HEADER + " header, " +
+                    "other fields of a scheduled script are taken from query parameters. " +
+                    "Code may be at most scripts.code.max-size bytes."
+    )
+    @PostMapping(
+            path = "/scripts",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, APPLICATION_JAVASCRIPT_VALUE, TEXT_JAVASCRIPT_VALUE}
+    )
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public EntityModel<ScriptCreateRespDto> scheduleScriptCode(
+            InputStream body,
+            @ModelAttribute(SCRIPT_PARAMS) ScriptCreateRqDto params,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(name = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(name = SCRIPT_NAME_HEADER, required = false) String name,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) throws IOException {
+        return schedule(codeRequest(body, params, contentType, contentLength, name), clientId);
+    }
+
+    @Operation(
+            operationId = "uploadScript",
+            summary = "Schedule a script uploaded as a file for future execution.",
+            description = "Same as scheduling a script, but the code is the code part of a multipart form. " +
+                    "Name is taken from the name field, the " + SCRIPT_NAME_HEADER + " header or the file name, " +
+                    "other fields of a scheduled script are taken from form fields or query parameters. " +
+                    "Code may be at most scripts.code.max-size bytes."
+    )
+    @PostMapping(path = "/scripts", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public EntityModel<ScriptCreateRespDto> uploadScript(
+            @RequestPart("code") MultipartFile code,
+            @ModelAttribute(SCRIPT_PARAMS) ScriptCreateRqDto params,
+            @RequestHeader(name = SCRIPT_NAME_HEADER, required = false) String name,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) throws IOException {
+        return schedule(uploadRequest(code, params, name), clientId);
+    }
+
+    @Operation(
+            operationId = "runScript",
+            summary = "Schedule a script and wait until it finishes.",
+            description = "Same as scheduling a script, but the response is delayed until the script finishes " +
+                    "or the wait duration (e.g. 500ms or 5s) passes, whichever comes first. " +
+                    "Finished script is answered with 200 and the same information as the script execution resource, " +
+                    "including its output. Otherwise the response is the same 202 as without waiting. " +
+                    "No server thread is held while waiting, wait is at most scripts.wait.max."
+    )
+    @PostMapping(path = "/scripts", params = WAIT_PARAM)
+    public Mono<ResponseEntity<RepresentationModel<?>>> runScript(
+            @RequestBody ScriptCreateRqDto rq,
+            @RequestParam(WAIT_PARAM) String wait,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) {
+        return run(rq, clientId, wait);
+    }
+
+    @Operation(
+            operationId = "runScriptCode",
+            summary = "Schedule a script provided as a plain request body and wait until it finishes.",
+            description = "Same as running a script, with the code provided as for scheduling a plain request body."
+    )
+    @PostMapping(
+            path = "/scripts",
+            params = WAIT_PARAM,
+            consumes = {MediaType.TEXT_PLAIN_VALUE, APPLICATION_JAVASCRIPT_VALUE, TEXT_JAVASCRIPT_VALUE}
+    )
+    public Mono<ResponseEntity<RepresentationModel<?>>> runScriptCode(
+            InputStream body,
+            @ModelAttribute(SCRIPT_PARAMS) ScriptCreateRqDto params,
+            @RequestParam(WAIT_PARAM) String wait,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(name = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(name = SCRIPT_NAME_HEADER, required = false) String name,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) throws IOException {
+        return run(codeRequest(body, params, contentType, contentLength, name), clientId, wait);
+    }
+
+    @Operation(
+            operationId = "runUploadedScript",
+            summary = "Schedule a script uploaded as a file and wait until it finishes.",
+            description = "Same as running a script, with the code provided as for uploading a script."
+    )
+    @PostMapping(path = "/scripts", params = WAIT_PARAM, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<RepresentationModel<?>>> runUploadedScript(
+            @RequestPart("code") MultipartFile code,
+            @ModelAttribute(SCRIPT_PARAMS) ScriptCreateRqDto params,
+            @RequestParam(WAIT_PARAM) String wait,
+            @RequestHeader(name = SCRIPT_NAME_HEADER, required = false) String name,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId
+    ) throws IOException {
+        return run(uploadRequest(code, params, name), clientId, wait);
+    }
+
+    /**
+     * Code of plain and multipart requests is taken from the body only
+     */
+    @InitBinder(SCRIPT_PARAMS)
+    public void initScriptParamsBinder(WebDataBinder binder) {
+        binder.setDisallowedFields("code");
+    }
+
+    @Operation(
+            operationId = "scheduleScripts",
+            summary = "Schedule a batch of scripts for execution.",
+            description = "Schedule scripts provided as a JSON array or as newline-delimited JSON, " +
+                    "every script accepting the same fields as a single scheduled script. " +
+                    "Scripts are parsed in parallel and submitted for execution together. " +
+                    "Responds with 207 and a result for every script in the order of the batch: " +
+                    "202 with the name of a scheduled script, or the problem a separate request for it would get. " +
+                    "Script named the same as an earlier script of the batch is answered with 400. " +
+                    "Batch may contain at most scripts.batch.max-size scripts, " +
+                    "every script takes a request of the rate limit of the client."
+    )
+    @PostMapping(path = "/scripts/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CollectionModel<EntityModel<ScriptBatchItemDto>>> scheduleScripts(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(
+                    array = @ArraySchema(schema = @Schema(implementation = ScriptCreateRqDto.class))
+            ))
+            InputStream body,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId,
+            HttpServletRequest request
+    ) throws IOException {
+        // Scripts are read one by one, so a batch exceeding the limit is rejected before it is read whole
+        var rqs = new ArrayList<ScriptCreateRqDto>();
+        try (var parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IllegalArgumentException("batch must be a JSON array of scripts");
+            for (var token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null)
+                    throw new IllegalArgumentException("batch must be a JSON array of scripts");
+                checkBatchSize(rqs.size() + 1);
+                rqs.add(token == JsonToken.VALUE_NULL ? null : parser.readValueAs(ScriptCreateRqDto.class));
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid batch: " + e.getOriginalMessage());
+        }
+        RateLimitInterceptor.acquire(request, rqs.size());
+        return submitBatch(rqs, Map.of(), clientId);
+    }
+
+    @Operation(
+            operationId = "scheduleScriptsNdjson",
+            summary = "Schedule a batch of scripts provided as newline-delimited JSON.",
+            description = "Same as scheduling a batch of scripts, every non-blank line holds one script. " +
+                    "Line that is not a valid script is answered with 400 in its result."
+    )
+    @PostMapping(path = "/scripts/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<CollectionModel<EntityModel<ScriptBatchItemDto>>> scheduleScriptsNdjson(
+            InputStream body,
+            @RequestHeader(name = CLIENT_ID_HEADER, required = false) String clientId,
+            HttpServletRequest request
+    ) throws IOException {
+        // Lines are read one by one, so a batch exceeding the limit is rejected before it is read whole
+        var rqs = new ArrayList<ScriptCreateRqDto>();
+        var invalid = new HashMap<Integer, ScriptException>();
+        try (var reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank())
+                    continue;
+                checkBatchSize(rqs.size() + 1);
+                try {
+                    rqs.add(objectMapper.readValue(line, ScriptCreateRqDto.class));
+                } catch (JsonProcessingException e) {
+                    invalid.put(rqs.size(), new IllegalArgumentException("Invalid script: " + e.getOriginalMessage()));
+                    rqs.add(null);
+                }
+            }
+        }
+        RateLimitInterceptor.acquire(request, rqs.size());
+        return submitBatch(rqs, invalid, clientId);
     }
 
     @Operation(
             operationId = "findScriptFullInfoByName",
-            summary = "Find a script by name."
+            summary = "Find a script by name.",
+            description = "Find a script by name. " +
+                    "Only the beginning of the output is included, whole output is available from the output links."
     )
     @GetMapping("/scripts/{name}")
     public EntityModel<ScriptDto> findScriptFullInfoById(@PathVariable String name) {
         var scriptInfo = scriptService.get(name);
         var scriptExecution = scriptService.executionOf(scriptInfo);
         return EntityModel.of(
-                new ScriptDto(scriptInfo, scriptExecution.orElse(null)),
+                new ScriptDto(scriptInfo, scriptExecution.orElse(null), inlineOutputLimit),
                 linkTo(methodOn(ScriptController.class).findScriptFullInfoById(name)).withSelfRel(),
-                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null)).withRel(HATEOAS_SCRIPTS_REL)
+                linkTo(methodOn(ScriptController.class).getScriptOutput(name, null, null, null)).withRel(HATEOAS_OUTPUT_REL),
+                linkTo(methodOn(ScriptController.class).getScriptErrorOutput(name, null, null, null)).withRel(HATEOAS_ERROR_OUTPUT_REL),
+                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null, null, null, null, null)).withRel(HATEOAS_SCRIPTS_REL)
         );
     }
 
@@ -75,7 +365,7 @@ public class ScriptController {
     public RepresentationModel<?> deleteScriptById(@PathVariable String name) {
         scriptService.delete(name);
         return new RepresentationModel<>(
-                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null)).withRel(HATEOAS_SCRIPTS_REL)
+                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null, null, null, null, null)).withRel(HATEOAS_SCRIPTS_REL)
         );
     }
 
@@ -83,19 +373,34 @@ public class ScriptController {
             operationId = "findScriptsSimpleInfo",
             summary = "Returns scripts matching provided parameters.",
             description = "Returns scripts matching provided parameters. " +
-                    "Allows to filter returned scripts by status and to order by creation date."
+                    "Allows to filter returned scripts by status and to order by creation date, " +
+                    "scripts are ordered by name otherwise. " +
+                    "Scripts are returned in pages of at most limit scripts (" + DEFAULT_PAGE_SIZE + " by default), " +
+                    "following pages are reached by next and prev links carrying after and before cursors. " +
+                    "Fields is a comma separated list of returned fields, name is always returned."
     )
     @GetMapping("/scripts")
     public CollectionModel<EntityModel<ScriptSimpleDto>> findScriptsSimpleInfo(
             @RequestParam(required = false) ScriptExecutionStatusDto status,
-            @RequestParam(required = false) Boolean newFirst
+            @RequestParam(required = false) Boolean newFirst,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields
     ) {
-        var scripts = scriptService.all(
-                        Boolean.TRUE.equals(newFirst) ? ScriptService.SortBy.CREATED : null,
-                        status != null ? ScriptInfo.Status.valueOf(status.name()) : null
-                )
+        if (limit != null && (limit <= 0 || limit > MAX_PAGE_SIZE))
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        var returnedFields = fieldsOf(fields);
+        var page = scriptService.page(
+                Boolean.TRUE.equals(newFirst) ? ScriptService.SortBy.CREATED : null,
+                status != null ? ScriptInfo.Status.valueOf(status.name()) : null,
+                after != null ? ScriptCursor.decode(after) : null,
+                before != null ? ScriptCursor.decode(before) : null,
+                limit != null ? limit : DEFAULT_PAGE_SIZE
+        );
+        var scripts = page.scripts
                 .stream()
-                .map(ScriptSimpleDto::new)
+                .map(scriptInfo -> new ScriptSimpleDto(scriptInfo, returnedFields))
                 .map(scriptDto ->
                         EntityModel.of(
                                 scriptDto,
@@ -104,10 +409,26 @@ public class ScriptController {
                 )
                 .collect(Collectors.toList());
 
-        return CollectionModel.of(
-                scripts,
-                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null)).withSelfRel()
+        var links = new ArrayList<Link>();
+        links.add(
+                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(status, newFirst, after, before, limit, fields))
+                        .withSelfRel()
         );
+        if (page.hasNext && !page.scripts.isEmpty()) {
+            var cursor = ScriptCursor.encode(ScriptPosition.of(page.scripts.get(page.scripts.size() - 1)));
+            links.add(
+                    linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(status, newFirst, cursor, null, limit, fields))
+                            .withRel(IanaLinkRelations.NEXT)
+            );
+        }
+        if (page.hasPrevious && !page.scripts.isEmpty()) {
+            var cursor = ScriptCursor.encode(ScriptPosition.of(page.scripts.get(0)));
+            links.add(
+                    linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(status, newFirst, null, cursor, limit, fields))
+                            .withRel(IanaLinkRelations.PREV)
+            );
+        }
+        return CollectionModel.of(scripts, links);
     }
 
     @Operation(
@@ -136,17 +457,466 @@ public class ScriptController {
 
     @Operation(
             operationId = "getScriptExecution",
-            summary = "Get information about script execution. "
+            summary = "Get information about script execution. ",
+            description = "Get information about script execution. " +
+                    "Only the beginning of the output is included, whole output is available from the output links."
     )
     @GetMapping("/scripts/{name}/execution")
     public EntityModel<ScriptExecutionDto> getScriptExecution(@PathVariable String name) {
         var scriptInfo = scriptService.get(name);
         var scriptExecution = scriptService.executionOf(scriptInfo);
         return EntityModel.of(
-                new ScriptExecutionDto(scriptInfo, scriptExecution.orElse(null)),
-                linkTo(methodOn(ScriptController.class).getScriptExecution(name)).withSelfRel(),
+                new ScriptExecutionDto(scriptInfo, scriptExecution.orElse(null), inlineOutputLimit),
+                executionLinks(name, linkTo(methodOn(ScriptController.class).getScriptExecution(name)).withSelfRel())
+        );
+    }
+
+    @Operation(
+            operationId = "waitForScriptExecution",
+            summary = "Get information about script execution once it finishes.",
+            description = "Same as getting information about script execution, but the response is delayed " +
+                    "until the execution finishes or the waitForCompletion duration (e.g. 500ms or 5s) passes, " +
+                    "whichever comes first. No server thread is held while waiting, " +
+                    "wait is at most scripts.wait.max."
+    )
+    @GetMapping(path = "/scripts/{name}/execution", params = WAIT_FOR_COMPLETION_PARAM)
+    public Mono<EntityModel<ScriptExecutionDto>> waitForScriptExecution(
+            @PathVariable String name,
+            @RequestParam(WAIT_FOR_COMPLETION_PARAM) String waitForCompletion
+    ) {
+        var timeout = waitOf(WAIT_FOR_COMPLETION_PARAM, waitForCompletion);
+        //noinspection ConstantConditions
+        var self = linkTo(methodOn(ScriptController.class).waitForScriptExecution(name, waitForCompletion)).withSelfRel();
+        return awaitExecution(name, timeout, self);
+    }
+
+    @Operation(
+            operationId = "awaitScriptExecution",
+            summary = "Wait until script execution finishes.",
+            description = "Responds once the execution finishes or is stopped, " +
+                    "with the same information as the script execution resource. " +
+                    "No server thread is held while waiting. " +
+                    "Responds with 503 if the execution does not finish within spring.mvc.async.request-timeout."
+    )
+    @GetMapping("/scripts/{name}/execution/completion")
+    public Mono<EntityModel<ScriptExecutionDto>> awaitScriptExecution(@PathVariable String name) {
+        //noinspection ConstantConditions
+        return awaitExecution(name, null, linkTo(methodOn(ScriptController.class).awaitScriptExecution(name)).withSelfRel());
+    }
+
+    @Operation(
+            operationId = "getScriptOutput",
+            summary = "Get output of a script.",
+            description = "Returns bytes of the output written so far. " +
+                    "Part of the output can be requested with offset and limit parameters or with a single Range header, " +
+                    "the latter being answered with 206 and Content-Range. " +
+                    "If head-tail output dropped part of the range, only the kept bytes the range starts with are returned."
+    )
+    @GetMapping(path = "/scripts/{name}/output", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> getScriptOutput(
+            @PathVariable String name,
+            @RequestParam(required = false) Long offset,
+            @RequestParam(required = false) Long limit,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range
+    ) {
+        return outputResponse(scriptService.get(name).getOutput(), offset, limit, range);
+    }
+
+    @Operation(
+            operationId = "getScriptErrorOutput",
+            summary = "Get error output of a script.",
+            description = "Returns bytes of the error output written so far, " +
+                    "supporting the same parameters as the output resource."
+    )
+    @GetMapping(path = "/scripts/{name}/error-output", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> getScriptErrorOutput(
+            @PathVariable String name,
+            @RequestParam(required = false) Long offset,
+            @RequestParam(required = false) Long limit,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range
+    ) {
+        return outputResponse(scriptService.get(name).getErrorOutput(), offset, limit, range);
+    }
+
+    @Operation(
+            operationId = "streamScriptOutput",
+            summary = "Stream output of a script as server-sent events.",
+            description = "Streams output of a script as it is written. " +
+                    "Events named out and err carry new bytes of standard and error output, " +
+                    "event named end carries terminal status of the script and closes the stream. " +
+                    "Stream starts from the provided byte offsets or from the Last-Event-ID of a previous stream."
+    )
+    @GetMapping(path = "/scripts/{name}/output/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamScriptOutput(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "0") long outOffset,
+            @RequestParam(defaultValue = "0") long errOffset,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        var scriptInfo = scriptService.get(name);
+        var offsets = ScriptOutputStreamer.parseEventId(lastEventId);
+        if (offsets != null)
+            return outputStreamer.stream(scriptInfo, offsets[0], offsets[1]);
+        return outputStreamer.stream(scriptInfo, outOffset, errOffset);
+    }
+
+    @Operation(
+            operationId = "streamScriptEvents",
+            summary = "Stream status changes of all scripts as server-sent events.",
+            description = "Streams every status change of a script as a status event, " +
+                    "including creation of a script with no previous status. " +
+                    "Event id is the sequence of the change, stream resumes after the Last-Event-ID of a previous stream " +
+                    "as long as the following changes are still kept. " +
+                    "Changes missed by the client are announced by a dropped event with their number."
+    )
+    @GetMapping(path = "/scripts/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamScriptEvents(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        return eventStreamer.stream(lastEventId);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> outputResponse(
+            ScriptInfo.ScriptOutput output,
+            Long offset,
+            Long limit,
+            String range
+    ) {
+        if ((offset != null && offset < 0) || (limit != null && limit < 0))
+            throw new IllegalArgumentException("offset and limit must not be negative");
+
+        // Output may still grow, the response covers bytes written so far
+        long size = output.size();
+        long from = offset != null ? Math.min(offset, size) : 0;
+        long length = limit != null ? Math.min(limit, size - from) : size - from;
+        var status = HttpStatus.OK;
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        var ranges = offset == null && limit == null ? parseRanges(range) : List.<HttpRange>of();
+        // Multiple ranges are not supported, so the whole output is returned for them
+        if (ranges.size() == 1) {
+            try {
+                // Bounded output may have dropped part of the range, only the kept bytes it starts with are sent
+                from = output.keptFrom(ranges.get(0).getRangeStart(size));
+                long end = Math.min(ranges.get(0).getRangeEnd(size) + 1, output.keptUntil(from));
+                length = end - from;
+                if (length <= 0)
+                    throw new java.lang.IllegalArgumentException("Range is empty");
+            } catch (java.lang.IllegalArgumentException e) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            status = HttpStatus.PARTIAL_CONTENT;
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + from + "-" + (from + length - 1) + "/" + size);
+        }
+        // Dropped bytes of bounded output are skipped, so length of the whole output is known only if nothing was dropped
+        if (status == HttpStatus.PARTIAL_CONTENT || output.truncatedBytes() == 0)
+            headers.setContentLength(length);
+        headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+
+        long start = from;
+        long count = length;
+        StreamingResponseBody body = out -> output.transferTo(start, count, Channels.newChannel(out));
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+    private static List<HttpRange> parseRanges(String range) {
+        if (range == null)
+            return List.of();
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (java.lang.IllegalArgumentException e) {
+            // Malformed Range header is ignored
+            return List.of();
+        }
+    }
+
+    private static Set<String> fieldsOf(String fields) {
+        if (fields == null)
+            return ScriptSimpleDto.FIELDS;
+        var result = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .collect(Collectors.toSet());
+        for (var field : result)
+            if (!ScriptSimpleDto.FIELDS.contains(field))
+                throw new IllegalArgumentException("Unknown field " + field + ", supported fields are " + ScriptSimpleDto.FIELDS);
+        return result;
+    }
+
+    private EntityModel<ScriptCreateRespDto> schedule(ScriptCreateRqDto rq, String clientId) {
+        return scheduledModel(submit(rq, clientId).script.name);
+    }
+
+    /**
+     * Links are built from the current request, which is available only on the request thread,
+     * so both responses are prepared before waiting
+     */
+    private Mono<ResponseEntity<RepresentationModel<?>>> run(ScriptCreateRqDto rq, String clientId, String wait) {
+        var timeout = waitOf(WAIT_PARAM, wait);
+        var submitted = submit(rq, clientId);
+        var name = submitted.script.name;
+        var scheduled = ResponseEntity.status(HttpStatus.ACCEPTED).<RepresentationModel<?>>body(scheduledModel(name));
+        var links = executionLinks(name, linkTo(methodOn(ScriptController.class).getScriptExecution(name)).withSelfRel());
+        return reactiveScriptService.completion(submitted.execution)
+                .map(execution -> ResponseEntity.ok().<RepresentationModel<?>>body(
+                        EntityModel.of(new ScriptExecutionDto(submitted.script, execution, inlineOutputLimit), links)
+                ))
+                .timeout(timeout, Mono.just(scheduled));
+    }
+
+    /**
+     * @param timeout time after which the execution is returned as it is, null to wait until it finishes
+     */
+    private Mono<EntityModel<ScriptExecutionDto>> awaitExecution(String name, Duration timeout, Link self) {
+        // Links are built from the current request, which is available only on the request thread
+        var links = executionLinks(name, self);
+        return reactiveScriptService.get(name)
+                .flatMap(scriptInfo -> reactiveScriptService.executionOf(scriptInfo)
+                        .flatMap(execution -> timeout == null
+                                ? reactiveScriptService.completion(execution)
+                                : reactiveScriptService.completion(execution).timeout(timeout, Mono.just(execution))
+                        )
+                        .map(execution -> new ScriptExecutionDto(scriptInfo, execution, inlineOutputLimit))
+                        .defaultIfEmpty(new ScriptExecutionDto(scriptInfo, null, inlineOutputLimit))
+                )
+                .map(execution -> EntityModel.of(execution, links));
+    }
+
+    private ScriptSubmission.Result submit(ScriptCreateRqDto rq, String clientId) {
+        var submission = submissionOf(rq, clientId);
+        var script = scriptService.create(submission.code, submission.name, submission.limits, submission.outputMode);
+        try {
+            return ScriptSubmission.Result.submitted(script, scriptService.execute(script, submission.options));
+        } catch (ScriptException e) {
+            // Client is expected to retry or fix the request, so script that was not executed must not be left behind
+            scriptService.delete(script.name);
+            throw e;
+        }
+    }
+
+    private static EntityModel<ScriptCreateRespDto> scheduledModel(String name) {
+        //noinspection ConstantConditions
+        return EntityModel.of(
+                new ScriptCreateRespDto(name),
+                linkTo(methodOn(ScriptController.class).scheduleScript(null, null)).withSelfRel(),
+                linkTo(methodOn(ScriptController.class).findScriptFullInfoById(name)).withRel(HATEOAS_SCRIPT_REL),
+                linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null, null, null, null, null)).withRel(HATEOAS_SCRIPTS_REL)
+        );
+    }
+
+    private static List<Link> executionLinks(String name, Link self) {
+        return List.of(
+                self,
+                linkTo(methodOn(ScriptController.class).getScriptOutput(name, null, null, null)).withRel(HATEOAS_OUTPUT_REL),
+                linkTo(methodOn(ScriptController.class).getScriptErrorOutput(name, null, null, null)).withRel(HATEOAS_ERROR_OUTPUT_REL),
                 linkTo(methodOn(ScriptController.class).findScriptFullInfoById(name)).withRel(HATEOAS_SCRIPT_REL)
         );
     }
 
+    /**
+     * @param invalid errors of scripts that could not be read, by their position in the batch
+     */
+    private ResponseEntity<CollectionModel<EntityModel<ScriptBatchItemDto>>> submitBatch(
+            List<ScriptCreateRqDto> rqs,
+            Map<Integer, ScriptException> invalid,
+            String clientId
+    ) {
+        checkBatchSize(rqs.size());
+        var results = new ScriptBatchItemDto[rqs.size()];
+        var indexes = new ArrayList<Integer>();
+        var submissions = new ArrayList<ScriptSubmission>();
+        for (int i = 0; i < rqs.size(); i++) {
+            try {
+                if (invalid.containsKey(i))
+                    throw invalid.get(i);
+                if (rqs.get(i) == null)
+                    throw new IllegalArgumentException("script is required");
+                submissions.add(submissionOf(rqs.get(i), clientId));
+                indexes.add(i);
+            } catch (ScriptException e) {
+                results[i] = failedItem(i, e);
+            }
+        }
+
+        var submitted = scriptService.submitAll(submissions);
+        for (int j = 0; j < submitted.size(); j++) {
+            int i = indexes.get(j);
+            var result = submitted.get(j);
+            results[i] = result.isSubmitted() ? ScriptBatchItemDto.submitted(i, result.script.name) : failedItem(i, result.error);
+        }
+
+        // Links of items differ only by the name, so the base is built once for the whole batch
+        //noinspection ConstantConditions
+        var scriptsHref = linkTo(methodOn(ScriptController.class).findScriptsSimpleInfo(null, null, null, null, null, null))
+                .toUri()
+                .toString();
+        var items = Arrays.stream(results)
+                .map(item -> item.getName() == null
+                        ? EntityModel.of(item)
+                        : EntityModel.of(
+                                item,
+                                Link.of(
+                                        scriptsHref + "/" + UriUtils.encodePathSegment(item.getName(), StandardCharsets.UTF_8),
+                                        HATEOAS_SCRIPT_REL
+                                )
+                        )
+                )
+                .collect(Collectors.toList());
+        return ResponseEntity.status(HttpStatus.MULTI_STATUS).body(
+                CollectionModel.of(
+                        items,
+                        linkTo(methodOn(ScriptController.class).scheduleScripts(null, null, null)).withSelfRel(),
+                        Link.of(scriptsHref, HATEOAS_SCRIPTS_REL)
+                )
+        );
+    }
+
+    private ScriptBatchItemDto failedItem(int index, ScriptException e) {
+        Long retryAfter = e instanceof ScriptRejectedException
+                ? Math.max(1, (((ScriptRejectedException) e).retryAfter.toMillis() + 999) / 1000)
+                : null;
+        return ScriptBatchItemDto.failed(index, ScriptProblems.of(baseProblemUri, e), retryAfter);
+    }
+
+    private void checkBatchSize(int size) {
+        if (size > maxBatchSize)
+            throw new IllegalArgumentException("batch must contain at most " + maxBatchSize + " scripts");
+    }
+
+    private ScriptCreateRqDto codeRequest(
+            InputStream body,
+            ScriptCreateRqDto params,
+            MediaType contentType,
+            Long contentLength,
+            String name
+    ) throws IOException {
+        params.setCode(readCode(body, contentType, contentLength != null ? contentLength : -1));
+        if (params.getName() == null)
+            params.setName(name);
+        return params;
+    }
+
+    private ScriptCreateRqDto uploadRequest(
+            MultipartFile code,
+            ScriptCreateRqDto params,
+            String name
+    ) throws IOException {
+        var contentType = code.getContentType() != null ? MediaType.parseMediaType(code.getContentType()) : null;
+        params.setCode(readCode(code.getInputStream(), contentType, code.getSize()));
+        if (params.getName() == null)
+            params.setName(name != null ? name : code.getOriginalFilename());
+        return params;
+    }
+
+    /**
+     * @param wait duration such as 500ms, 5s or PT5S
+     */
+    private Duration waitOf(String param, String wait) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(wait);
+        } catch (java.lang.IllegalArgumentException e) {
+            throw new IllegalArgumentException(param + " must be a duration such as 500ms or 5s");
+        }
+        if (duration.isNegative())
+            throw new IllegalArgumentException(param + " must not be negative");
+        if (duration.compareTo(maxWait) > 0)
+            throw new IllegalArgumentException(param + " must be at most " + maxWait.toMillis() + "ms");
+        return duration;
+    }
+
+    /**
+     * Body is decoded straight into a builder sized by its length, so the code is not buffered as bytes
+     * and is copied only once more when it becomes a string
+     *
+     * @param length body length in bytes, negative if unknown
+     */
+    private String readCode(InputStream body, MediaType contentType, long length) throws IOException {
+        if (length > maxCodeSize)
+            throw codeTooLarge();
+        var charset = contentType != null && contentType.getCharset() != null
+                ? contentType.getCharset()
+                : StandardCharsets.UTF_8;
+        var code = new StringBuilder(length >= 0 ? (int) Math.min(length, MAX_PRESIZED_CODE_LENGTH) : READ_BUFFER_SIZE);
+        // Length may be unknown or wrong, so the size is checked while the body is read as well
+        try (var reader = new InputStreamReader(new BoundedInputStream(body, maxCodeSize, this::codeTooLarge), charset)) {
+            var buffer = new char[READ_BUFFER_SIZE];
+            for (int read; (read = reader.read(buffer)) != -1; )
+                code.append(buffer, 0, read);
+        }
+        return code.toString();
+    }
+
+    private IllegalArgumentException codeTooLarge() {
+        return new IllegalArgumentException("code must be at most " + maxCodeSize + " bytes");
+    }
+
+    private static ScriptSubmission submissionOf(ScriptCreateRqDto rq, String clientId) {
+        var options = ExecutionOptions.DEFAULT
+                .withPriority(rq.getPriority() != null ? ExecutionOptions.Priority.valueOf(rq.getPriority().name()) : null)
+                .withSubmitter(clientId)
+                .withStartAt(startAtOf(rq))
+                .withRecurrence(rq.getCron() != null ? CronRecurrence.parse(rq.getCron()) : null);
+        var limits = ScriptLimits.DEFAULT
+                .withMaxStatements(rq.getMaxStatements())
+                .withMaxWallTime(rq.getMaxWallTimeMillis() != null ? Duration.ofMillis(rq.getMaxWallTimeMillis()) : null)
+                .withMaxCpuTime(rq.getMaxCpuTimeMillis() != null ? Duration.ofMillis(rq.getMaxCpuTimeMillis()) : null)
+                .withMaxAllocatedBytes(rq.getMaxAllocatedBytes());
+        var outputMode = rq.getOutputMode() != null ? ScriptOutputMode.valueOf(rq.getOutputMode().name()) : null;
+        return new ScriptSubmission(rq.getCode(), rq.getName(), limits, outputMode, options);
+    }
+
+    private static Instant startAtOf(ScriptCreateRqDto rq) {
+        if (rq.getRunAt() != null && rq.getDelayMillis() != null)
+            throw new IllegalArgumentException("only one of runAt and delayMillis can be provided");
+        if (rq.getDelayMillis() != null && rq.getDelayMillis() < 0)
+            throw new IllegalArgumentException("delayMillis must not be negative");
+
+        if (rq.getRunAt() != null)
+            return rq.getRunAt().toInstant();
+        if (rq.getDelayMillis() != null)
+            return Instant.now(CurrentClock.get()).plusMillis(rq.getDelayMillis());
+        return null;
+    }
+
+    /**
+     * Fails once more than the allowed number of bytes is read
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private final Supplier<? extends RuntimeException> tooLarge;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long maxBytes, Supplier<? extends RuntimeException> tooLarge) {
+            super(in);
+            this.remaining = maxBytes;
+            this.tooLarge = tooLarge;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1)
+                this.consumed(1);
+            return read;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                this.consumed(read);
+            return read;
+        }
+
+        private void consumed(int bytes) {
+            this.remaining -= bytes;
+            if (this.remaining < 0)
+                throw this.tooLarge.get();
+        }
+
+    }
+
 }
@@ -0,0 +1,44 @@
+package pragmasoft.andriilupynos.js_executioner.application.api;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque cursor of a scripts page, encodes position of the script the page starts after or before
+ */
+public class ScriptCursor {
+
+    private ScriptCursor() {}
+
+    public static String encode(ScriptPosition position) {
+        // Name goes last, so it may contain the separator
+        var value = position.status.name() + "|" +
+                position.created.getEpochSecond() + "|" +
+                position.created.getNano() + "|" +
+                position.name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ScriptPosition decode(String cursor) {
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var parts = value.split("\\|", 4);
+            if (parts.length != 4)
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            return new ScriptPosition(
+                    parts[3],
+                    Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2])),
+                    ScriptInfo.Status.valueOf(parts[0])
+            );
+        } catch (java.lang.IllegalArgumentException e) {
+            // Malformed base64, number or status
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+}
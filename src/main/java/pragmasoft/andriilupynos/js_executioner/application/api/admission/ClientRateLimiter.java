@@ -0,0 +1,93 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket per client. Bucket holds up to {@code capacity} tokens and is refilled by
+ * {@code refillPerSecond} tokens every second, every request takes a token. Request carrying several items
+ * takes a token for every item and is admitted while the client has a token left, tokens it takes beyond
+ * the balance are refilled before the next request of the client is admitted.
+ */
+public class ClientRateLimiter {
+
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final long capacity;
+    private final double refillPerSecond;
+    private final long idleTimeoutNanos;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param idleTimeout time after which bucket of a client without requests is forgotten
+     */
+    public ClientRateLimiter(long capacity, double refillPerSecond, Duration idleTimeout, MeterRegistry meterRegistry) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        meterRegistry.gaugeMapSize("scripts.admission.rate-limit.clients", Tags.empty(), this.buckets);
+    }
+
+    /**
+     * @return zero if request is admitted, otherwise time after which a token will be available
+     */
+    public Duration tryAcquire(String client) {
+        return this.tryAcquire(client, 1);
+    }
+
+    /**
+     * @param tokens number of items of the request
+     * @return zero if request is admitted, otherwise time after which a token will be available
+     */
+    public Duration tryAcquire(String client, long tokens) {
+        long now = System.nanoTime();
+        long waitNanos = this.buckets
+                .computeIfAbsent(client, key -> new TokenBucket(this.capacity, now))
+                .tryAcquire(now, tokens);
+        return Duration.ofNanos(waitNanos);
+    }
+
+    /**
+     * Forgets clients that have not sent requests for the idle timeout, their buckets are full anyway
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        this.buckets.values().removeIf(bucket -> bucket.isIdle(now, this.idleTimeoutNanos));
+    }
+
+    private class TokenBucket {
+
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(long tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefillNanos = now;
+        }
+
+        synchronized long tryAcquire(long now, long tokens) {
+            this.refill(now);
+            if (this.tokens >= 1) {
+                this.tokens -= tokens;
+                return 0;
+            }
+            return (long) Math.ceil((1 - this.tokens) / refillPerSecond * NANOS_PER_SECOND);
+        }
+
+        synchronized boolean isIdle(long now, long idleTimeoutNanos) {
+            return now - this.lastRefillNanos > idleTimeoutNanos;
+        }
+
+        private void refill(long now) {
+            double refilled = (now - this.lastRefillNanos) * refillPerSecond / NANOS_PER_SECOND;
+            this.tokens = Math.min(capacity, this.tokens + refilled);
+            this.lastRefillNanos = now;
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.admission;
+
+import java.time.Duration;
+
+public class RateLimitExceededException extends RuntimeException {
+
+    /**
+     * Time after which request of the client will be admitted
+     */
+    public final Duration retryAfter;
+
+    public RateLimitExceededException(String client, Duration retryAfter) {
+        super("Rate limit exceeded for client " + client);
+        this.retryAfter = retryAfter;
+    }
+
+}
@@ -0,0 +1,102 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import pragmasoft.andriilupynos.js_executioner.application.api.ScriptController;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Rejects script submissions of clients that exceeded their rate limit. Client is identified by
+ * the authenticated principal, falling back to the remote address. Since the
+ * {@link ScriptController#CLIENT_ID_HEADER} header is supplied by the client itself, it only splits
+ * the budget of an authenticated principal between its own clients and is ignored for anonymous ones.
+ * <p>
+ * Request carrying several items is admitted by its handler through {@link #acquire(HttpServletRequest, int)}
+ * once the items are counted, so that it takes a token for every item.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final String ADMISSION_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".admission";
+
+    private final ClientRateLimiter rateLimiter;
+    private final Counter rejected;
+    private final boolean itemized;
+
+    public RateLimitInterceptor(ClientRateLimiter rateLimiter, MeterRegistry meterRegistry) {
+        this(rateLimiter, meterRegistry, false);
+    }
+
+    /**
+     * @param itemized whether requests are admitted by their handlers by the number of their items
+     */
+    public RateLimitInterceptor(ClientRateLimiter rateLimiter, MeterRegistry meterRegistry, boolean itemized) {
+        this.rateLimiter = rateLimiter;
+        this.itemized = itemized;
+        this.rejected = Counter.builder("scripts.admission.rejected")
+                .description("Script submissions rejected by admission control")
+                .tag("reason", "rate-limit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(
+            @Nonnull HttpServletRequest request,
+            @Nonnull HttpServletResponse response,
+            @Nonnull Object handler
+    ) {
+        if (!HttpMethod.POST.matches(request.getMethod()))
+            return true;
+
+        var admission = new Admission(clientOf(request));
+        if (this.itemized)
+            request.setAttribute(ADMISSION_ATTRIBUTE, admission);
+        else
+            admission.acquire(1);
+        return true;
+    }
+
+    /**
+     * Admits request by the number of its items, request that is not rate limited is admitted right away
+     *
+     * @throws RateLimitExceededException if client exceeded its rate limit
+     */
+    public static void acquire(HttpServletRequest request, int items) {
+        var admission = (Admission) request.getAttribute(ADMISSION_ATTRIBUTE);
+        if (admission != null)
+            admission.acquire(Math.max(items, 1));
+    }
+
+    static String clientOf(HttpServletRequest request) {
+        var principal = request.getUserPrincipal();
+        if (principal == null)
+            return request.getRemoteAddr();
+        var clientId = request.getHeader(ScriptController.CLIENT_ID_HEADER);
+        return clientId != null
+                ? principal.getName() + "/" + clientId
+                : principal.getName();
+    }
+
+    private class Admission {
+
+        private final String client;
+
+        Admission(String client) {
+            this.client = client;
+        }
+
+        void acquire(int tokens) {
+            var retryAfter = rateLimiter.tryAcquire(this.client, tokens);
+            if (!retryAfter.isZero()) {
+                rejected.increment();
+                throw new RateLimitExceededException(this.client, retryAfter);
+            }
+        }
+
+    }
+
+}
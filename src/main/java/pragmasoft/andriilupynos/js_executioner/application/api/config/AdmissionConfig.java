@@ -0,0 +1,47 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import pragmasoft.andriilupynos.js_executioner.application.api.admission.ClientRateLimiter;
+import pragmasoft.andriilupynos.js_executioner.application.api.admission.RateLimitInterceptor;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "scripts.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfig implements WebMvcConfigurer {
+
+    private final ClientRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionConfig(
+            MeterRegistry meterRegistry,
+            @Value("${scripts.rate-limit.capacity:20}") long capacity,
+            @Value("${scripts.rate-limit.refill-per-second:10}") double refillPerSecond,
+            @Value("${scripts.rate-limit.idle-timeout:10m}") Duration idleTimeout
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.rateLimiter = new ClientRateLimiter(capacity, refillPerSecond, idleTimeout, meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(@Nonnull InterceptorRegistry registry) {
+        registry.addInterceptor(new RateLimitInterceptor(this.rateLimiter, this.meterRegistry))
+                .addPathPatterns("/scripts");
+        // Batch takes a token for every script, so it is admitted once its scripts are counted
+        registry.addInterceptor(new RateLimitInterceptor(this.rateLimiter, this.meterRegistry, true))
+                .addPathPatterns("/scripts/batch");
+    }
+
+    @Scheduled(fixedDelayString = "${scripts.rate-limit.eviction-interval:PT1M}")
+    public void evictIdleClients() {
+        this.rateLimiter.evictIdle();
+    }
+
+}
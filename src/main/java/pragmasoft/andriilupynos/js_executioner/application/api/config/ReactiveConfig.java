@@ -0,0 +1,27 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pragmasoft.andriilupynos.js_executioner.application.api.reactive.ReactiveScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class ReactiveConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler scriptServiceScheduler(
+            @Value("${scripts.reactive.threads:16}") int threads,
+            @Value("${scripts.reactive.queue-size:100000}") int queueSize
+    ) {
+        return Schedulers.newBoundedElastic(threads, queueSize, "script-service", 60, true);
+    }
+
+    @Bean
+    public ReactiveScriptService reactiveScriptService(ScriptService scriptService, Scheduler scriptServiceScheduler) {
+        return new ReactiveScriptService(scriptService, scriptServiceScheduler);
+    }
+
+}
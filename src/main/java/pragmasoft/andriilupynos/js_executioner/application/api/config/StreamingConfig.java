@@ -0,0 +1,46 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pragmasoft.andriilupynos.js_executioner.application.api.stream.ScriptEventStreamer;
+import pragmasoft.andriilupynos.js_executioner.application.api.stream.ScriptOutputStreamer;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class StreamingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ScriptOutputStreamer scriptOutputStreamer(
+            @Value("${scripts.output.stream.senders:4}") int senders,
+            @Value("${scripts.output.stream.timeout:30m}") Duration timeout
+    ) {
+        var counter = new AtomicInteger();
+        var sender = Executors.newFixedThreadPool(senders, runnable -> {
+            var thread = new Thread(runnable, "script-output-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new ScriptOutputStreamer(sender, timeout);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ScriptEventStreamer scriptEventStreamer(
+            ScriptEventBus scriptEventBus,
+            @Value("${scripts.events.stream.senders:4}") int senders,
+            @Value("${scripts.events.stream.timeout:30m}") Duration timeout
+    ) {
+        var counter = new AtomicInteger();
+        var sender = Executors.newFixedThreadPool(senders, runnable -> {
+            var thread = new Thread(runnable, "script-events-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new ScriptEventStreamer(scriptEventBus, sender, timeout);
+    }
+
+}
@@ -0,0 +1,61 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import org.zalando.problem.Problem;
+
+import java.net.URI;
+
+/**
+ * Result of one script of a batch, with the status a separate request for the script would have got
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScriptBatchItemDto {
+
+    /**
+     * Position of the script in the batch
+     */
+    private final int index;
+    private final int status;
+    private final String name;
+    private final URI type;
+    private final String title;
+    private final String detail;
+    private final Long retryAfterSeconds;
+
+    private ScriptBatchItemDto(
+            int index,
+            int status,
+            String name,
+            URI type,
+            String title,
+            String detail,
+            Long retryAfterSeconds
+    ) {
+        this.index = index;
+        this.status = status;
+        this.name = name;
+        this.type = type;
+        this.title = title;
+        this.detail = detail;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public static ScriptBatchItemDto submitted(int index, String name) {
+        return new ScriptBatchItemDto(index, 202, name, null, null, null, null);
+    }
+
+    public static ScriptBatchItemDto failed(int index, Problem problem, Long retryAfterSeconds) {
+        return new ScriptBatchItemDto(
+                index,
+                problem.getStatus() != null ? problem.getStatus().getStatusCode() : 500,
+                null,
+                problem.getType(),
+                problem.getTitle(),
+                problem.getDetail(),
+                retryAfterSeconds
+        );
+    }
+
+}
@@ -3,6 +3,9 @@ package pragmasoft.andriilupynos.js_executioner.application.api.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.util.Date;
 
 @Data
 @NoArgsConstructor
@@ -10,4 +13,15 @@ import lombok.NoArgsConstructor;
 public class ScriptCreateRqDto {
     private String code;
     private String name;
+    private ScriptPriorityDto priority;
+    // Format of runAt bound from query parameters of plain and multipart requests
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private Date runAt;
+    private Long delayMillis;
+    private String cron;
+    private Long maxStatements;
+    private Long maxWallTimeMillis;
+    private Long maxCpuTimeMillis;
+    private Long maxAllocatedBytes;
+    private ScriptOutputModeDto outputMode;
 }
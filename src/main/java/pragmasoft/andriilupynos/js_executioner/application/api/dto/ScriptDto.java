@@ -14,11 +14,11 @@ public class ScriptDto {
     private final Date createdDate;
     private final ScriptExecutionDto execution;
 
-    public ScriptDto(ScriptInfo scriptInfo, ScriptExecution scriptExecution) {
+    public ScriptDto(ScriptInfo scriptInfo, ScriptExecution scriptExecution, int inlineOutputLimit) {
         this.name = scriptInfo.name;
         this.code = scriptInfo.script.code;
         this.createdDate = new Date(scriptInfo.created.toEpochMilli());
-        this.execution = new ScriptExecutionDto(scriptInfo, scriptExecution);
+        this.execution = new ScriptExecutionDto(scriptInfo, scriptExecution, inlineOutputLimit);
     }
 
 }
@@ -0,0 +1,29 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEvent;
+
+import java.util.Date;
+
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScriptEventDto {
+
+    private final long sequence;
+    private final String name;
+    private final ScriptExecutionStatusDto previousStatus;
+    private final ScriptExecutionStatusDto status;
+    private final Date time;
+
+    public ScriptEventDto(ScriptEvent event) {
+        this.sequence = event.sequence;
+        this.name = event.name;
+        this.previousStatus = event.previousStatus != null
+                ? ScriptExecutionStatusDto.valueOf(event.previousStatus.name())
+                : null;
+        this.status = ScriptExecutionStatusDto.valueOf(event.status.name());
+        this.time = new Date(event.time.toEpochMilli());
+    }
+
+}
@@ -4,32 +4,62 @@ import lombok.Getter;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Date;
 
 @Getter
 public class ScriptExecutionDto {
 
+    /**
+     * Beginning of the output, whole output is available from the output resource
+     */
     private final String output;
     private final String error;
+    private final long outputSize;
+    private final long errorSize;
+    private final long outputTruncatedBytes;
+    private final long errorTruncatedBytes;
     private final ScriptExecutionStatusDto status;
+    private final Date scheduledDate;
     private final Date beginExecDate;
     private final Date endExecDate;
     private final Long executionDurationMillis;
+    private final Integer queuePosition;
+    private final Date estimatedStartDate;
 
-    public ScriptExecutionDto(ScriptInfo scriptInfo, ScriptExecution execution) {
-        this.output = scriptInfo.getOut();
-        this.error = scriptInfo.getErr();
+    /**
+     * @param inlineOutputLimit bytes of output and error output included into the DTO
+     */
+    public ScriptExecutionDto(ScriptInfo scriptInfo, ScriptExecution execution, int inlineOutputLimit) {
+        this.output = inline(scriptInfo.getOutput(), inlineOutputLimit);
+        this.error = inline(scriptInfo.getErrorOutput(), inlineOutputLimit);
+        this.outputSize = scriptInfo.getOutput().size();
+        this.errorSize = scriptInfo.getErrorOutput().size();
+        this.outputTruncatedBytes = scriptInfo.getOutput().truncatedBytes();
+        this.errorTruncatedBytes = scriptInfo.getErrorOutput().truncatedBytes();
         this.status = ScriptExecutionStatusDto.valueOf(scriptInfo.getStatus().name());
         if (execution != null) {
+            this.scheduledDate = execution.getScheduledAt().map(instant -> new Date(instant.toEpochMilli())).orElse(null);
             this.beginExecDate = execution.getStarted().map(instant -> new Date(instant.toEpochMilli())).orElse(null);
             this.endExecDate = execution.getFinished().map(instant -> new Date(instant.toEpochMilli())).orElse(null);
             this.executionDurationMillis = execution.getDuration().map(Duration::toMillis).orElse(null);
+            this.queuePosition = execution.getQueuePosition().orElse(null);
+            this.estimatedStartDate = execution.getEstimatedStart().map(instant -> new Date(instant.toEpochMilli())).orElse(null);
         } else {
+            this.scheduledDate = null;
             this.beginExecDate = null;
             this.endExecDate = null;
             this.executionDurationMillis = null;
+            this.queuePosition = null;
+            this.estimatedStartDate = null;
         }
     }
 
+    private static String inline(ScriptInfo.ScriptOutput output, int limit) {
+        var chunk = output.read(0, limit);
+        int length = chunk.bytes.length < limit ? chunk.bytes.length : chunk.completeUtf8Length();
+        return new String(chunk.bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
 }
@@ -2,5 +2,5 @@ package pragmasoft.andriilupynos.js_executioner.application.api.dto;
 
 @SuppressWarnings("unused")
 public enum ScriptExecutionStatusDto {
-    SCHEDULED, RUNNING, COMPLETED, ERROR
+    SCHEDULED, RUNNING, COMPLETED, ERROR, TIMED_OUT, MEMORY_EXCEEDED, CANCELLED
 }
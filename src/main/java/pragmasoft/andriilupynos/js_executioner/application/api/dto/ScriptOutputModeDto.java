@@ -0,0 +1,6 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.dto;
+
+@SuppressWarnings("unused")
+public enum ScriptOutputModeDto {
+    UNBOUNDED, HEAD_TAIL, SPILL
+}
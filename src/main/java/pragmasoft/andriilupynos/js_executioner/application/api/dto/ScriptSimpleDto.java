@@ -1,23 +1,35 @@
 package pragmasoft.andriilupynos.js_executioner.application.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
 
 import java.util.Date;
+import java.util.Set;
 
 @Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ScriptSimpleDto {
 
+    public static final Set<String> FIELDS = Set.of("name", "code", "createdDate", "status");
+
     private final String name;
     private final String code;
     private final Date createdDate;
     private final ScriptExecutionStatusDto status;
 
     public ScriptSimpleDto(ScriptInfo script) {
+        this(script, FIELDS);
+    }
+
+    /**
+     * @param fields fields included into the DTO, name is always included
+     */
+    public ScriptSimpleDto(ScriptInfo script, Set<String> fields) {
         this.name = script.name;
-        this.code = script.script.code;
-        this.createdDate = new Date(script.created.toEpochMilli());
-        this.status = ScriptExecutionStatusDto.valueOf(script.getStatus().name());
+        this.code = fields.contains("code") ? script.script.code : null;
+        this.createdDate = fields.contains("createdDate") ? new Date(script.created.toEpochMilli()) : null;
+        this.status = fields.contains("status") ? ScriptExecutionStatusDto.valueOf(script.getStatus().name()) : null;
     }
 
 }
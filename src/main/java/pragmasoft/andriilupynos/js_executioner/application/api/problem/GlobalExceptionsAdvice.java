@@ -3,23 +3,29 @@ package pragmasoft.andriilupynos.js_executioner.application.api.problem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.zalando.problem.Problem;
 import org.zalando.problem.spring.web.advice.ProblemHandling;
+import pragmasoft.andriilupynos.js_executioner.application.api.admission.RateLimitExceededException;
 import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.IllegalArgumentProblem;
 import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.InvalidExecutionStateProblem;
 import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.InvalidScriptProvidedProblem;
+import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.RateLimitExceededProblem;
 import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.ScriptNotFoundProblem;
+import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.ScriptRejectedProblem;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidExecutionStateException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidScriptProvidedException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptRejectedException;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 
 @RestControllerAdvice
 public class GlobalExceptionsAdvice implements ProblemHandling {
@@ -71,6 +77,33 @@ public class GlobalExceptionsAdvice implements ProblemHandling {
         );
     }
 
+    @ExceptionHandler(ScriptRejectedException.class)
+    public ResponseEntity<Problem> convertScriptRejectedExToProblem(ScriptRejectedException ex, NativeWebRequest request) {
+        this.logException(ex);
+        return withRetryAfter(
+                ProblemHandling.super.handleThrowable(new ScriptRejectedProblem(baseProblemUri, ex.getMessage()), request),
+                ex.retryAfter
+        );
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Problem> convertRateLimitExceededExToProblem(RateLimitExceededException ex, NativeWebRequest request) {
+        log.warn("API_REJECT({}): {}", ex.getClass().getSimpleName(), ex.getMessage());
+        return withRetryAfter(
+                ProblemHandling.super.handleThrowable(new RateLimitExceededProblem(baseProblemUri, ex.getMessage()), request),
+                ex.retryAfter
+        );
+    }
+
+    private static ResponseEntity<Problem> withRetryAfter(ResponseEntity<Problem> response, Duration retryAfter) {
+        // Retry-After is in whole seconds, so it is rounded up to not invite retries that will be rejected again
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(response.getBody());
+    }
+
     private void logException(Throwable ex) {
         if (ScriptException.class.isAssignableFrom(ex.getClass())) {
             log.warn("BSN_EX({}): {}", ex.getClass().getSimpleName(), ex.getMessage());
@@ -0,0 +1,36 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.problem;
+
+import org.zalando.problem.Problem;
+import org.zalando.problem.Status;
+import org.zalando.problem.ThrowableProblem;
+import pragmasoft.andriilupynos.js_executioner.application.api.problem.problem.*;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidExecutionStateException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidScriptProvidedException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptRejectedException;
+
+/**
+ * Problems domain exceptions are answered with, for places where they are not thrown out of a handler,
+ * such as items of a batch
+ */
+public class ScriptProblems {
+
+    private ScriptProblems() {}
+
+    public static ThrowableProblem of(String baseProblemUri, ScriptException ex) {
+        if (ex instanceof IllegalArgumentException)
+            return new IllegalArgumentProblem(baseProblemUri, ex.getMessage());
+        if (ex instanceof InvalidExecutionStateException)
+            return new InvalidExecutionStateProblem(baseProblemUri, ex.getMessage());
+        if (ex instanceof InvalidScriptProvidedException)
+            return new InvalidScriptProvidedProblem(baseProblemUri, ex.getMessage());
+        if (ex instanceof ScriptNotFoundException)
+            return new ScriptNotFoundProblem(baseProblemUri, ex.getMessage());
+        if (ex instanceof ScriptRejectedException)
+            return new ScriptRejectedProblem(baseProblemUri, ex.getMessage());
+        return Problem.valueOf(Status.INTERNAL_SERVER_ERROR, ex.getMessage());
+    }
+
+}
@@ -0,0 +1,22 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.problem.problem;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.zalando.problem.AbstractThrowableProblem;
+import org.zalando.problem.Status;
+
+import java.net.URI;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+// Here we do not care about too deep of an inheritance
+@SuppressWarnings("java:S110")
+public class RateLimitExceededProblem extends AbstractThrowableProblem {
+    public RateLimitExceededProblem(String baseProblemUri, String detail) {
+        super(
+                URI.create(baseProblemUri + "/rate-limit-exceeded"),
+                Status.TOO_MANY_REQUESTS.getReasonPhrase(),
+                Status.TOO_MANY_REQUESTS,
+                detail
+        );
+    }
+}
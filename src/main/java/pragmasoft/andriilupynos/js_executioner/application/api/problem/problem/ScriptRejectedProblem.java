@@ -0,0 +1,22 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.problem.problem;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.zalando.problem.AbstractThrowableProblem;
+import org.zalando.problem.Status;
+
+import java.net.URI;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+// Here we do not care about too deep of an inheritance
+@SuppressWarnings("java:S110")
+public class ScriptRejectedProblem extends AbstractThrowableProblem {
+    public ScriptRejectedProblem(String baseProblemUri, String detail) {
+        super(
+                URI.create(baseProblemUri + "/script-rejected"),
+                Status.SERVICE_UNAVAILABLE.getReasonPhrase(),
+                Status.SERVICE_UNAVAILABLE,
+                detail
+        );
+    }
+}
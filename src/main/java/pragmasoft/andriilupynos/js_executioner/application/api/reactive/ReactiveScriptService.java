@@ -0,0 +1,117 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.reactive;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ExecutionOptions;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPage;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptSubmission;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Exposes {@link ScriptService} operations as {@link Mono} and {@link Flux}, so that controllers return
+ * without holding a request thread.
+ * <p>
+ * Operations of the service may block on parsing or on a persistent repository, so they are performed
+ * on the provided scheduler. Waiting for completion of an execution takes no thread at all,
+ * it is signalled by the execution itself.
+ */
+public class ReactiveScriptService {
+
+    private final ScriptService scriptService;
+    private final Scheduler scheduler;
+
+    /**
+     * @param scheduler performs blocking operations of the service
+     */
+    public ReactiveScriptService(ScriptService scriptService, Scheduler scheduler) {
+        this.scriptService = scriptService;
+        this.scheduler = scheduler;
+    }
+
+    public Mono<ScriptInfo> create(String code, String name, ScriptLimits limits) {
+        return this.blocking(() -> this.scriptService.create(code, name, limits));
+    }
+
+    public Mono<ScriptExecution> execute(ScriptInfo scriptInfo, ExecutionOptions options) {
+        return this.blocking(() -> this.scriptService.execute(scriptInfo, options));
+    }
+
+    /**
+     * @return results in the order of submissions
+     */
+    public Flux<ScriptSubmission.Result> submitAll(List<ScriptSubmission> submissions) {
+        return this.blocking(() -> this.scriptService.submitAll(submissions)).flatMapIterable(results -> results);
+    }
+
+    public Mono<ScriptInfo> get(String name) {
+        return this.blocking(() -> this.scriptService.get(name));
+    }
+
+    /**
+     * Empty if script was never executed
+     */
+    public Mono<ScriptExecution> executionOf(ScriptInfo scriptInfo) {
+        return this.blocking(() -> this.scriptService.executionOf(scriptInfo).orElse(null));
+    }
+
+    public Flux<ScriptInfo> all(ScriptService.SortBy by, ScriptInfo.Status status) {
+        return this.blocking(() -> this.scriptService.all(by, status)).flatMapIterable(scripts -> scripts);
+    }
+
+    public Mono<ScriptPage> page(
+            ScriptService.SortBy by,
+            ScriptInfo.Status status,
+            ScriptPosition after,
+            ScriptPosition before,
+            int limit
+    ) {
+        return this.blocking(() -> this.scriptService.page(by, status, after, before, limit));
+    }
+
+    public Mono<Void> stopExecution(String name) {
+        return this.blocking(() -> {
+            this.scriptService.stopExecution(name);
+            return null;
+        });
+    }
+
+    public Mono<Void> delete(String name) {
+        return this.blocking(() -> {
+            this.scriptService.delete(name);
+            return null;
+        });
+    }
+
+    /**
+     * Emits the execution once it finishes or is cancelled. Cancelling the subscription stops only waiting,
+     * the execution itself goes on.
+     */
+    public Mono<ScriptExecution> completion(ScriptExecution execution) {
+        return Mono.defer(() -> Mono.fromFuture(execution.completion()));
+    }
+
+    /**
+     * Emits execution of the named script once it finishes, empty if script was never executed
+     */
+    public Mono<ScriptExecution> completionOf(String name) {
+        return this.get(name)
+                .flatMap(this::executionOf)
+                .flatMap(this::completion);
+    }
+
+    /**
+     * Operation returning null completes empty
+     */
+    private <T> Mono<T> blocking(Callable<T> operation) {
+        return Mono.fromCallable(operation).subscribeOn(this.scheduler);
+    }
+
+}
@@ -0,0 +1,177 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pragmasoft.andriilupynos.js_executioner.application.api.dto.ScriptEventDto;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEvent;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes status changes of scripts to clients as server-sent events.
+ * <p>
+ * Every {@code status} event carries one change and its id is the sequence of the change, so a reconnecting
+ * client resumes after the {@code Last-Event-ID} as long as the bus still keeps the following changes.
+ * Changes that client missed are announced by a {@code dropped} event with their number.
+ * <p>
+ * Bus dispatcher only queues events of a stream and schedules sending, so a slow client delays neither
+ * the dispatcher nor other subscribers. Client falling more than {@value MAX_PENDING_EVENTS} events behind
+ * misses the following ones.
+ */
+public class ScriptEventStreamer implements AutoCloseable {
+
+    private static final int MAX_PENDING_EVENTS = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(ScriptEventStreamer.class);
+
+    private final ScriptEventBus eventBus;
+    private final ExecutorService sender;
+    private final Duration timeout;
+
+    /**
+     * @param timeout time after which stream is closed, client is expected to reconnect
+     */
+    public ScriptEventStreamer(ScriptEventBus eventBus, ExecutorService sender, Duration timeout) {
+        this.eventBus = eventBus;
+        this.sender = sender;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param lastEventId id of the last event received by the client, null to stream only new changes
+     */
+    public SseEmitter stream(String lastEventId) {
+        var emitter = new SseEmitter(this.timeout.toMillis());
+        var session = new Session(emitter);
+        var from = parseEventId(lastEventId);
+        session.attach(from != null
+                ? this.eventBus.subscribe(session, from + 1)
+                : this.eventBus.subscribe(session));
+        emitter.onCompletion(session::detach);
+        emitter.onTimeout(session::detach);
+        emitter.onError(e -> session.detach());
+        return emitter;
+    }
+
+    @Override
+    public void close() {
+        this.sender.shutdownNow();
+    }
+
+    private static SseEmitter.SseEventBuilder dropped(long count) {
+        return SseEmitter.event().name("dropped").data(count);
+    }
+
+    private static Long parseEventId(String eventId) {
+        if (eventId == null)
+            return null;
+        try {
+            return Long.parseLong(eventId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private class Session implements ScriptEventBus.Subscriber {
+
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        // Events that did not fit into the pending ones, announced once the pending ones are sent
+        private final AtomicLong overflowed = new AtomicLong();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private volatile ScriptEventBus.Subscription subscription;
+        private volatile boolean closed = false;
+
+        Session(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void attach(ScriptEventBus.Subscription subscription) {
+            this.subscription = subscription;
+            // Stream may have been closed before it was subscribed
+            if (this.closed)
+                subscription.close();
+        }
+
+        @Override
+        public void onEvents(List<ScriptEvent> events) {
+            for (var event : events) {
+                this.enqueue(SseEmitter.event()
+                        .id(String.valueOf(event.sequence))
+                        .name("status")
+                        .data(new ScriptEventDto(event), MediaType.APPLICATION_JSON));
+            }
+            this.scheduleFlush();
+        }
+
+        @Override
+        public void onDropped(long count) {
+            // Announced in order with the events, so it is queued even if the stream is behind
+            this.pendingCount.incrementAndGet();
+            this.pending.add(dropped(count));
+            this.scheduleFlush();
+        }
+
+        private void enqueue(SseEmitter.SseEventBuilder event) {
+            if (this.pendingCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+                this.pendingCount.decrementAndGet();
+                this.overflowed.incrementAndGet();
+                return;
+            }
+            this.pending.add(event);
+        }
+
+        private void scheduleFlush() {
+            if (this.closed || !this.flushScheduled.compareAndSet(false, true))
+                return;
+            try {
+                sender.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Service is shutting down
+                this.detach();
+                this.emitter.complete();
+            }
+        }
+
+        private synchronized void flush() {
+            this.flushScheduled.set(false);
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!this.closed && (event = this.pending.poll()) != null) {
+                    this.pendingCount.decrementAndGet();
+                    this.emitter.send(event);
+                }
+                long overflowed = this.overflowed.getAndSet(0);
+                if (!this.closed && overflowed > 0)
+                    this.emitter.send(dropped(overflowed));
+            } catch (IOException | IllegalStateException e) {
+                // Client has gone away
+                log.debug("Stopped streaming script events: {}", e.getMessage());
+                this.detach();
+            }
+        }
+
+        private void detach() {
+            this.closed = true;
+            var subscription = this.subscription;
+            if (subscription != null)
+                subscription.close();
+            this.pending.clear();
+        }
+
+    }
+
+}
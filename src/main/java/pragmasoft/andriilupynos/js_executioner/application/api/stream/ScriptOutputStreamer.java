@@ -0,0 +1,168 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes script output to clients as server-sent events.
+ * <p>
+ * Every event carries only bytes written after the previous one: {@code out} and {@code err} events contain
+ * new bytes of standard and error output, and their id is {@code <outOffset>-<errOffset>} of the next unsent bytes,
+ * so a reconnecting client resumes from the {@code Last-Event-ID}. When script reaches terminal status and all
+ * output was sent, {@code end} event with the status is sent and the stream is completed.
+ * <p>
+ * Writes of the script only schedule sending, so slow clients never block the script.
+ */
+public class ScriptOutputStreamer implements AutoCloseable {
+
+    private static final int MAX_EVENT_BYTES = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(ScriptOutputStreamer.class);
+
+    private final ExecutorService sender;
+    private final Duration timeout;
+
+    /**
+     * @param timeout time after which stream of a script that has not finished is closed
+     */
+    public ScriptOutputStreamer(ExecutorService sender, Duration timeout) {
+        this.sender = sender;
+        this.timeout = timeout;
+    }
+
+    public SseEmitter stream(ScriptInfo scriptInfo, long outOffset, long errOffset) {
+        var emitter = new SseEmitter(this.timeout.toMillis());
+        new Session(emitter, scriptInfo, outOffset, errOffset).start();
+        return emitter;
+    }
+
+    /**
+     * Parses id of the last event received by the client
+     *
+     * @return output and error offsets or null if id is absent or malformed
+     */
+    public static long[] parseEventId(String eventId) {
+        if (eventId == null)
+            return null;
+        var parts = eventId.split("-");
+        if (parts.length != 2)
+            return null;
+        try {
+            return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.sender.shutdownNow();
+    }
+
+    private class Session {
+
+        private final SseEmitter emitter;
+        private final ScriptInfo scriptInfo;
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final Runnable writeListener = this::scheduleFlush;
+        private final ScriptInfo.StatusListener statusListener = (script, previousStatus, status) -> this.scheduleFlush();
+        private volatile boolean closed = false;
+        // Guarded by flush
+        private long outOffset;
+        private long errOffset;
+
+        Session(SseEmitter emitter, ScriptInfo scriptInfo, long outOffset, long errOffset) {
+            this.emitter = emitter;
+            this.scriptInfo = scriptInfo;
+            this.outOffset = outOffset;
+            this.errOffset = errOffset;
+        }
+
+        void start() {
+            this.scriptInfo.getOutput().addWriteListener(this.writeListener);
+            this.scriptInfo.getErrorOutput().addWriteListener(this.writeListener);
+            this.scriptInfo.addStatusListener(this.statusListener);
+            this.emitter.onCompletion(this::detach);
+            this.emitter.onTimeout(this::detach);
+            this.emitter.onError(e -> this.detach());
+            this.scheduleFlush();
+        }
+
+        private void scheduleFlush() {
+            if (this.closed || !this.flushScheduled.compareAndSet(false, true))
+                return;
+            try {
+                sender.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Service is shutting down
+                this.detach();
+                this.emitter.complete();
+            }
+        }
+
+        private synchronized void flush() {
+            this.flushScheduled.set(false);
+            if (this.closed)
+                return;
+            try {
+                // Status is read before output, so output written before the script finished is always sent
+                var status = this.scriptInfo.getStatus();
+                this.outOffset = this.send("out", this.scriptInfo.getOutput(), this.outOffset, status.isTerminal());
+                this.errOffset = this.send("err", this.scriptInfo.getErrorOutput(), this.errOffset, status.isTerminal());
+                if (status.isTerminal()
+                        && this.outOffset >= this.scriptInfo.getOutput().size()
+                        && this.errOffset >= this.scriptInfo.getErrorOutput().size()) {
+                    this.emitter.send(SseEmitter.event().id(this.eventId()).name("end").data(status.name()));
+                    this.detach();
+                    this.emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client has gone away
+                log.debug("Stopped streaming output of script {}: {}", this.scriptInfo.name, e.getMessage());
+                this.detach();
+            }
+        }
+
+        /**
+         * @return offset of the next unsent byte
+         */
+        private long send(String name, ScriptInfo.ScriptOutput output, long offset, boolean finished) throws IOException {
+            while (true) {
+                var chunk = output.read(offset, MAX_EVENT_BYTES);
+                // Incomplete character at the end is sent with the next chunk, unless nothing more will be written
+                int length = finished ? chunk.bytes.length : chunk.completeUtf8Length();
+                if (length == 0)
+                    return offset;
+                offset = chunk.offset + length;
+                this.emitter.send(
+                        SseEmitter.event()
+                                .id(name.equals("out") ? offset + "-" + this.errOffset : this.outOffset + "-" + offset)
+                                .name(name)
+                                .data(new String(chunk.bytes, 0, length, StandardCharsets.UTF_8))
+                );
+            }
+        }
+
+        private String eventId() {
+            return this.outOffset + "-" + this.errOffset;
+        }
+
+        private void detach() {
+            this.closed = true;
+            this.scriptInfo.getOutput().removeWriteListener(this.writeListener);
+            this.scriptInfo.getErrorOutput().removeWriteListener(this.writeListener);
+            this.scriptInfo.removeStatusListener(this.statusListener);
+        }
+
+    }
+
+}
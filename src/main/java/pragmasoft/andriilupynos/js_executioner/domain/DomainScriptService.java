@@ -1,65 +1,331 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InternalScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
-import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
 import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 public class DomainScriptService implements ScriptService {
 
+    // Length of #<occurrence> appended to names of occurrences of a recurring script
+    private static final int MAX_OCCURRENCE_SUFFIX_LENGTH = 1 + String.valueOf(Long.MAX_VALUE).length();
+
+    private final Logger log = LoggerFactory.getLogger(DomainScriptService.class);
+
     private final ScriptFactory scriptFactory;
     private final ScriptInfoRepository scriptInfoRepository;
     private final ScriptExecutionRepository scriptExecutionRepository;
-    private final ExecutorService executor;
+    private final ScriptScheduler scheduler;
+    private final TaskTimer timer;
+    private final ScriptLimits defaultLimits;
+    private final ScriptOutputFactory outputFactory;
+    private final ScriptEventBus eventBus;
+    private final Executor preparationExecutor;
+    // Recurring series by the names of their first script and of their pending occurrence
+    private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
 
+    /**
+     * @param timer               starts delayed executions and stops executions exceeding their time limits
+     * @param defaultLimits       limits of scripts that do not specify their own
+     * @param outputFactory       creates outputs of scripts according to their output mode
+     * @param eventBus            publishes status changes of created scripts
+     * @param preparationExecutor parses scripts of a batch in parallel
+     */
     public DomainScriptService(
             ScriptFactory scriptFactory,
             ScriptInfoRepository scriptInfoRepository,
-            ExecutorService executor,
-            ScriptExecutionRepository scriptExecutionRepository
+            ScriptScheduler scheduler,
+            TaskTimer timer,
+            ScriptLimits defaultLimits,
+            ScriptOutputFactory outputFactory,
+            ScriptExecutionRepository scriptExecutionRepository,
+            ScriptEventBus eventBus,
+            Executor preparationExecutor
     ) {
         this.scriptFactory = scriptFactory;
         this.scriptInfoRepository = scriptInfoRepository;
         this.scriptExecutionRepository = scriptExecutionRepository;
-        this.executor = executor;
+        this.scheduler = scheduler;
+        this.timer = timer;
+        this.defaultLimits = defaultLimits;
+        this.outputFactory = outputFactory;
+        this.eventBus = eventBus;
+        this.preparationExecutor = preparationExecutor;
     }
 
     @Override
-    public ScriptInfo create(String code, String name) throws ScriptException {
+    public ScriptInfo create(String code, String name, ScriptLimits limits, ScriptOutputMode outputMode) throws ScriptException {
         if (code == null)
             throw new IllegalArgumentException("code is required");
+        if (name != null && name.length() > ScriptInfo.MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("name must be at most " + ScriptInfo.MAX_NAME_LENGTH + " characters");
 
-        ScriptInfo.ScriptOutput scriptOut = new ByteArrayScriptOutput();
-        ScriptInfo.ScriptOutput scriptErr = new ByteArrayScriptOutput();
-        var script = scriptFactory.createScript(code, scriptOut.asStream(), scriptErr.asStream());
+        var effectiveLimits = (limits != null ? limits : ScriptLimits.DEFAULT).orDefaults(this.defaultLimits);
+        var effectiveOutputMode = outputMode != null ? outputMode : this.outputFactory.defaultMode();
+        ScriptInfo.ScriptOutput scriptOut = this.outputFactory.create(effectiveOutputMode);
+        ScriptInfo.ScriptOutput scriptErr = this.outputFactory.create(effectiveOutputMode);
+        // Script is created only when it starts, so scripts waiting for their time do not hold contexts
+        this.scriptFactory.validate(code, effectiveLimits);
+        var script = new LazyScript(this.scriptFactory, code, scriptOut.asStream(), scriptErr.asStream(), effectiveLimits);
         var scriptInfo = new ScriptInfo(
                 script,
                 name != null ? name : UUID.randomUUID().toString(),
                 ScriptInfo.Status.SCHEDULED,
-                Instant.now(CurrentClock.get()),
+                // Precision stores keep, so a script read back from a store has the same creation time
+                Instant.now(CurrentClock.get()).truncatedTo(ChronoUnit.MICROS),
+                effectiveLimits,
+                effectiveOutputMode,
                 scriptOut,
                 scriptErr
         );
-        scriptInfoRepository.store(scriptInfo);
+        try {
+            scriptInfoRepository.store(scriptInfo);
+        } catch (RuntimeException e) {
+            // Repository may have kept the script before it failed, so the script is not left behind
+            this.forgetUnstored(scriptInfo);
+            if (e instanceof ScriptException)
+                throw e;
+            throw new InternalScriptException("Failed to store script " + scriptInfo.name, e);
+        }
+        this.eventBus.watch(scriptInfo);
         return scriptInfo;
     }
 
     @Override
-    public ScriptExecution execute(ScriptInfo scriptInfo) throws ScriptException {
-        var execution = new ScriptExecution(scriptInfo);
-        this.executor.submit(execution);
+    public ScriptExecution execute(ScriptInfo scriptInfo, ExecutionOptions options) throws ScriptException {
+        // Names of occurrences must fit the limit as well
+        if (options.recurrence != null && scriptInfo.name.length() > ScriptInfo.MAX_NAME_LENGTH - MAX_OCCURRENCE_SUFFIX_LENGTH)
+            throw new IllegalArgumentException(
+                    "name of a recurring script must be at most "
+                            + (ScriptInfo.MAX_NAME_LENGTH - MAX_OCCURRENCE_SUFFIX_LENGTH) + " characters"
+            );
+        var startAt = options.startAt;
+        if (startAt == null && options.recurrence != null)
+            startAt = options.recurrence.nextAfter(Instant.now(CurrentClock.get()))
+                    .orElseThrow(() -> new IllegalArgumentException("recurrence has no upcoming executions"));
+
+        var execution = new ScriptExecution(scriptInfo, this.scheduler, this.timer);
         this.scriptExecutionRepository.store(execution);
+        if (startAt == null) {
+            this.scheduler.submit(execution, options);
+        } else if (options.recurrence == null) {
+            this.submitAt(execution, options.withStartAt(startAt), null);
+        } else {
+            var series = new Series(scriptInfo.name);
+            this.series.put(scriptInfo.name, series);
+            series.pending = execution;
+            this.submitAt(execution, options.withStartAt(startAt), series);
+        }
         return execution;
     }
 
+    @Override
+    public List<ScriptSubmission.Result> submitAll(List<ScriptSubmission> submissions) throws ScriptException {
+        // Script stored later would replace the earlier one with the same name, whichever is created first
+        var names = new HashSet<String>();
+        var preparations = new ArrayList<CompletableFuture<ScriptSubmission.Result>>(submissions.size());
+        for (var submission : submissions) {
+            if (submission.name != null && !names.add(submission.name)) {
+                preparations.add(CompletableFuture.completedFuture(ScriptSubmission.Result.failed(
+                        new IllegalArgumentException("name " + submission.name + " is used by another script of the batch")
+                )));
+                continue;
+            }
+            // Parsing takes most of the time of a submission, so scripts are created in parallel
+            preparations.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    var script = this.create(submission.code, submission.name, submission.limits, submission.outputMode);
+                    return ScriptSubmission.Result.submitted(script, null);
+                } catch (RuntimeException e) {
+                    // Failure of one script must not fail the batch, scripts created before are still submitted
+                    return ScriptSubmission.Result.failed(scriptExceptionOf(e));
+                }
+            }, this.preparationExecutor));
+        }
+        var results = preparations.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+
+        var immediate = new LinkedHashMap<ScriptExecution, ExecutionOptions>();
+        for (int i = 0; i < results.size(); i++) {
+            var script = results.get(i).script;
+            if (script == null)
+                continue;
+            var options = submissions.get(i).options;
+            try {
+                ScriptExecution execution;
+                if (options.startAt == null && options.recurrence == null) {
+                    execution = new ScriptExecution(script, this.scheduler, this.timer);
+                    this.scriptExecutionRepository.store(execution);
+                    immediate.put(execution, options);
+                } else {
+                    execution = this.execute(script, options);
+                }
+                results.set(i, ScriptSubmission.Result.submitted(script, execution));
+            } catch (RuntimeException e) {
+                this.discard(script);
+                results.set(i, ScriptSubmission.Result.failed(scriptExceptionOf(e)));
+            }
+        }
+
+        var rejected = this.scheduler.submitAll(immediate);
+        for (int i = 0; i < results.size(); i++) {
+            var error = rejected.get(results.get(i).execution);
+            if (error != null) {
+                this.discard(results.get(i).script);
+                results.set(i, ScriptSubmission.Result.failed(error));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Script that could not be submitted is not left behind, so that it can be submitted again
+     */
+    private void discard(ScriptInfo script) {
+        try {
+            this.delete(script.name);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete script {} that was not submitted", script.name, e);
+        }
+    }
+
+    /**
+     * Removes script whose storing failed, it is not watched and has no execution yet
+     */
+    private void forgetUnstored(ScriptInfo scriptInfo) {
+        try {
+            this.scriptInfoRepository.delete(scriptInfo);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete script {} that was not stored", scriptInfo.name, e);
+        }
+        this.release(scriptInfo);
+    }
+
+    private static ScriptException scriptExceptionOf(RuntimeException e) {
+        if (e instanceof ScriptException)
+            return (ScriptException) e;
+        return new InternalScriptException("Failed to submit script: " + e.getMessage(), e);
+    }
+
+    /**
+     * Keeps execution in the timer until its start time, next occurrence of a recurring script
+     * is scheduled when the current one starts
+     */
+    private void submitAt(ScriptExecution execution, ExecutionOptions options, Series series) {
+        execution.scheduledAt = options.startAt;
+        var delay = Duration.between(Instant.now(CurrentClock.get()), options.startAt);
+        execution.pendingStart = this.timer.schedule(delay, () -> {
+            execution.pendingStart = null;
+            if (execution.isCancelled())
+                return;
+            if (series != null)
+                this.scheduleNextOccurrence(series, execution.scriptInfo, options);
+            try {
+                this.scheduler.submit(execution, options);
+            } catch (ScriptException e) {
+                log.warn("Failed to submit scheduled execution of script {}", execution.getScriptName(), e);
+                execution.reject(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Every occurrence of a recurring script is a separate script named {@code <name>#<occurrence>},
+     * so that output and status of previous occurrences stay available. Names taken by other scripts
+     * are skipped.
+     */
+    private void scheduleNextOccurrence(Series series, ScriptInfo previous, ExecutionOptions options) {
+        // Occurrences missed while the service was busy are skipped instead of being started all at once
+        var now = Instant.now(CurrentClock.get());
+        var after = options.startAt.isAfter(now) ? options.startAt : now;
+        var next = options.recurrence.nextAfter(after);
+        if (series.cancelled || next.isEmpty()) {
+            this.endSeries(series);
+            return;
+        }
+        try {
+            var scriptInfo = this.create(
+                    previous.script.code,
+                    this.nextOccurrenceName(series),
+                    previous.limits,
+                    previous.outputMode
+            );
+            var execution = new ScriptExecution(scriptInfo, this.scheduler, this.timer);
+            this.scriptExecutionRepository.store(execution);
+            this.advanceSeries(series, scriptInfo.name, execution);
+            this.submitAt(execution, options.withStartAt(next.get()), series);
+            // Series may have been stopped before the occurrence became its pending one
+            if (series.cancelled)
+                execution.cancelPending();
+        } catch (ScriptException e) {
+            log.warn("Failed to schedule next occurrence of script {}", series.name, e);
+            this.endSeries(series);
+        }
+    }
+
+    private String nextOccurrenceName(Series series) {
+        String name;
+        do {
+            name = series.name + "#" + (++series.occurrence);
+        } while (this.scriptInfoRepository.get(name) != null);
+        return name;
+    }
+
+    /**
+     * Series is found by the name of its first script and of its pending occurrence
+     */
+    private void advanceSeries(Series series, String name, ScriptExecution execution) {
+        var previous = series.pending;
+        series.pending = execution;
+        this.series.put(name, series);
+        if (previous != null && !previous.getScriptName().equals(series.name))
+            this.series.remove(previous.getScriptName(), series);
+    }
+
+    private void endSeries(Series series) {
+        this.series.remove(series.name, series);
+        var pending = series.pending;
+        if (pending != null)
+            this.series.remove(pending.getScriptName(), series);
+    }
+
+    /**
+     * Stops a recurring series its first script or pending occurrence belongs to,
+     * the pending occurrence is cancelled unless it is already running
+     */
+    private boolean stopSeries(String name) {
+        var series = this.series.get(name);
+        if (series == null)
+            return false;
+        series.cancelled = true;
+        this.endSeries(series);
+        var pending = series.pending;
+        if (pending != null)
+            pending.cancelPending();
+        return true;
+    }
+
     @Override
     public ScriptInfo get(String name) {
         return Optional.ofNullable(this.scriptInfoRepository.get(name))
@@ -68,19 +334,79 @@ public class DomainScriptService implements ScriptService {
 
     @Override
     public Collection<ScriptInfo> all(SortBy by, ScriptInfo.Status status) throws ScriptException {
-        return StreamSupport.stream(this.scriptInfoRepository.all(by).spliterator(), false)
+        return StreamSupport.stream(this.scriptInfoRepository.all(by, status).spliterator(), false)
+                // Status may change while the index is iterated
                 .filter(scriptInfo -> status == null || status == scriptInfo.getStatus())
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public ScriptPage page(
+            SortBy by,
+            ScriptInfo.Status status,
+            ScriptPosition after,
+            ScriptPosition before,
+            int limit
+    ) throws ScriptException {
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+        if (after != null && before != null)
+            throw new IllegalArgumentException("only one of after and before can be provided");
+
+        var backwards = before != null;
+        // One more script tells whether there is another page
+        var scripts = StreamSupport.stream(
+                        this.scriptInfoRepository.all(by, status, backwards ? before : after, backwards).spliterator(),
+                        false
+                )
+                // Status may change while the index is iterated
+                .filter(scriptInfo -> status == null || status == scriptInfo.getStatus())
+                .limit(limit + 1L)
+                .collect(Collectors.toList());
+        var hasMore = scripts.size() > limit;
+        if (hasMore)
+            scripts.remove(limit);
+        if (!backwards)
+            return new ScriptPage(scripts, hasMore, after != null);
+        Collections.reverse(scripts);
+        return new ScriptPage(scripts, true, hasMore);
+    }
+
     @Override
     public void delete(String name) {
         var script = this.get(name);
         if (!this.scriptInfoRepository.delete(script))
             throw new ScriptNotFoundException(name);
+        this.stopSeries(name);
         try {
             this.stopExecution(name);
         } catch(ScriptException ignored) { /* Should be ignored */ }
+        this.release(script);
+    }
+
+    @Override
+    public boolean evict(ScriptInfo scriptInfo) throws ScriptException {
+        if (!scriptInfo.getStatus().isTerminal() || !this.scriptInfoRepository.delete(scriptInfo))
+            return false;
+        // Execution stored under the name may already belong to a newer script with the same name
+        var execution = this.scriptExecutionRepository.get(scriptInfo.name);
+        if (execution != null && execution.isDone() && this.scriptInfoRepository.get(scriptInfo.name) == null)
+            this.scriptExecutionRepository.remove(execution);
+        this.release(scriptInfo);
+        return true;
+    }
+
+    /**
+     * Closes the deleted script, its context is held until it is closed
+     */
+    private void release(ScriptInfo scriptInfo) {
+        try {
+            scriptInfo.script.close();
+        } catch (Exception e) {
+            log.warn("Failed to close script {}", scriptInfo.name, e);
+        }
+        scriptInfo.getOutput().close();
+        scriptInfo.getErrorOutput().close();
     }
 
     @Override
@@ -88,12 +414,36 @@ public class DomainScriptService implements ScriptService {
         return Optional.ofNullable(this.scriptExecutionRepository.get(scriptInfo.name));
     }
 
+    /**
+     * Stopping the first script or the pending occurrence of a recurring script stops the whole series
+     */
     @Override
     public void stopExecution(String name) {
-        var execution =
-                Optional.ofNullable(this.scriptExecutionRepository.getAndRemove(name))
-                        .orElseThrow(() -> new ScriptNotFoundException(name));
-
+        var seriesStopped = this.stopSeries(name);
+        var execution = this.scriptExecutionRepository.getAndRemove(name);
+        if (execution == null) {
+            if (seriesStopped)
+                return;
+            throw new ScriptNotFoundException(name);
+        }
         execution.cancel(true);
     }
+
+    /**
+     * Occurrences of a recurring script that follow its first one
+     */
+    private static class Series {
+
+        final String name;
+        volatile boolean cancelled = false;
+        volatile ScriptExecution pending = null;
+        // Changed only by the timer task of the pending occurrence
+        long occurrence = 1;
+
+        Series(String name) {
+            this.name = name;
+        }
+
+    }
+
 }
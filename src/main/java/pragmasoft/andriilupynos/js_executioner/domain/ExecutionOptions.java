@@ -0,0 +1,66 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Immutable parameters of a single script execution
+ */
+public class ExecutionOptions {
+
+    public static final ExecutionOptions DEFAULT = new ExecutionOptions(Priority.NORMAL, null, null, null);
+
+    public final Priority priority;
+    /**
+     * Key by which executions are fairly shared between submitters, null for anonymous submitter
+     */
+    public final String submitter;
+    /**
+     * Time before which execution must not be started, null to start as soon as possible
+     */
+    public final Instant startAt;
+    /**
+     * Schedule of following executions of the same code, null if script is executed once
+     */
+    public final Recurrence recurrence;
+
+    private ExecutionOptions(Priority priority, String submitter, Instant startAt, Recurrence recurrence) {
+        this.priority = priority;
+        this.submitter = submitter;
+        this.startAt = startAt;
+        this.recurrence = recurrence;
+    }
+
+    public ExecutionOptions withPriority(Priority priority) {
+        return new ExecutionOptions(priority != null ? priority : Priority.NORMAL, this.submitter, this.startAt, this.recurrence);
+    }
+
+    public ExecutionOptions withSubmitter(String submitter) {
+        return new ExecutionOptions(this.priority, submitter, this.startAt, this.recurrence);
+    }
+
+    public ExecutionOptions withStartAt(Instant startAt) {
+        return new ExecutionOptions(this.priority, this.submitter, startAt, this.recurrence);
+    }
+
+    public ExecutionOptions withRecurrence(Recurrence recurrence) {
+        return new ExecutionOptions(this.priority, this.submitter, this.startAt, recurrence);
+    }
+
+    /**
+     * Priority classes in ascending order
+     */
+    public enum Priority {
+        LOW, NORMAL, HIGH
+    }
+
+    public interface Recurrence {
+
+        /**
+         * Time of the next execution strictly after the provided one, empty if there are no more executions
+         */
+        Optional<Instant> nextAfter(Instant time);
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.io.OutputStream;
+
+/**
+ * Script that is created by the factory only when it is run, so a script waiting for its start time
+ * holds nothing but its code. Code is expected to be validated by the factory beforehand.
+ */
+class LazyScript extends Script {
+
+    private final ScriptFactory scriptFactory;
+    private final ScriptLimits limits;
+    // Guarded by this
+    private Script delegate = null;
+    private boolean closed = false;
+
+    LazyScript(ScriptFactory scriptFactory, String code, OutputStream out, OutputStream err, ScriptLimits limits) {
+        super(code, out, err);
+        this.scriptFactory = scriptFactory;
+        this.limits = limits;
+    }
+
+    /**
+     * Whether the script was created by the factory and holds its resources
+     */
+    synchronized boolean isPrepared() {
+        return this.delegate != null;
+    }
+
+    @Override
+    public void run() {
+        Script script;
+        synchronized (this) {
+            if (this.closed)
+                throw new IllegalStateException("Script was closed");
+            if (this.delegate == null)
+                this.delegate = this.scriptFactory.createScript(this.code, this.out, this.err, this.limits);
+            script = this.delegate;
+        }
+        // Not run under the lock, so the script can be closed while it runs
+        script.run();
+    }
+
+    /**
+     * Closes created script, stopping its execution if it is being performed
+     */
+    @Override
+    public void close() throws Exception {
+        Script script;
+        synchronized (this) {
+            this.closed = true;
+            script = this.delegate;
+            this.delegate = null;
+        }
+        if (script != null)
+            script.close();
+    }
+
+}
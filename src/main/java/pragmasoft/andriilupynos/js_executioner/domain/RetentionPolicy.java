@@ -0,0 +1,44 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Duration;
+
+/**
+ * Immutable limits of finished scripts kept by the service, non-positive limit means
+ * finished scripts are not evicted because of it.
+ */
+public class RetentionPolicy {
+
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(Duration.ZERO, 0, 0);
+
+    /**
+     * Time after finishing after which script is evicted
+     */
+    public final Duration maxAge;
+    /**
+     * Number of finished scripts kept, the oldest ones are evicted first
+     */
+    public final int maxCount;
+    /**
+     * Total size of outputs of finished scripts kept, the oldest ones are evicted first
+     */
+    public final long maxOutputBytes;
+
+    public RetentionPolicy(Duration maxAge, int maxCount, long maxOutputBytes) {
+        this.maxAge = maxAge;
+        this.maxCount = maxCount;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    public boolean hasAgeLimit() {
+        return this.maxAge != null && !this.maxAge.isNegative() && !this.maxAge.isZero();
+    }
+
+    public boolean hasCountLimit() {
+        return this.maxCount > 0;
+    }
+
+    public boolean hasOutputLimit() {
+        return this.maxOutputBytes > 0;
+    }
+
+}
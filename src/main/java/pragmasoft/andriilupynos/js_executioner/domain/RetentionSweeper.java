@@ -0,0 +1,199 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
+import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evicts finished scripts exceeding the retention policy, which closes their contexts and frees their outputs.
+ * <p>
+ * Finished scripts are tracked in the order of finishing from the events of the bus, so a sweep only looks at
+ * scripts finished since the previous one and at the oldest tracked ones, which are evicted first. Scripts are
+ * listed from the service only on the first sweep and after events were dropped by the bus.
+ * Only the tracked instance of a script is evicted, a newer script with the same name and the recurring series
+ * the script belongs to are left untouched.
+ */
+public class RetentionSweeper implements ScriptEventBus.Subscriber, AutoCloseable {
+
+    private final Logger log = LoggerFactory.getLogger(RetentionSweeper.class);
+
+    private final ScriptService scriptService;
+    private final RetentionPolicy policy;
+    private final ScriptEventBus.Subscription subscription;
+    // Names of scripts that finished since the previous sweep
+    private final Queue<String> finishedNames = new ConcurrentLinkedQueue<>();
+    private volatile boolean listingNeeded = true;
+    // Tracked finished scripts from the earliest finished one, guarded by this
+    private final Map<String, Finished> tracked = new LinkedHashMap<>();
+    private long trackedOutputBytes = 0;
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    public RetentionSweeper(ScriptService scriptService, ScriptEventBus eventBus, RetentionPolicy policy) {
+        this.scriptService = scriptService;
+        this.policy = policy;
+        this.subscription = eventBus.subscribe(this);
+    }
+
+    @Override
+    public void onEvents(List<ScriptEvent> events) {
+        for (var event : events)
+            if (event.status.isTerminal())
+                this.finishedNames.add(event.name);
+    }
+
+    @Override
+    public void onDropped(long count) {
+        this.listingNeeded = true;
+    }
+
+    /**
+     * @return number of evicted scripts
+     */
+    public synchronized int sweep() {
+        if (this.listingNeeded)
+            this.listFinished();
+        else
+            this.trackFinished();
+
+        var now = Instant.now(CurrentClock.get());
+        var oldestKept = this.policy.hasAgeLimit() ? now.minus(this.policy.maxAge) : Instant.MIN;
+        int evicted = 0;
+        long reclaimed = 0;
+        var iterator = this.tracked.values().iterator();
+        while (iterator.hasNext()) {
+            var finished = iterator.next();
+            boolean exceeded = this.policy.hasCountLimit() && this.tracked.size() > this.policy.maxCount
+                    || this.policy.hasOutputLimit() && this.trackedOutputBytes > this.policy.maxOutputBytes;
+            if (!exceeded && !finished.finished.isBefore(oldestKept))
+                break;
+            iterator.remove();
+            this.trackedOutputBytes -= finished.outputBytes;
+            if (this.evict(finished)) {
+                evicted++;
+                reclaimed += finished.outputBytes;
+            }
+        }
+
+        this.evictedCount.addAndGet(evicted);
+        this.reclaimedBytes.addAndGet(reclaimed);
+        if (evicted > 0)
+            log.info("Evicted {} finished scripts, reclaimed {} bytes of output", evicted, reclaimed);
+        return evicted;
+    }
+
+    public long getEvictedCount() {
+        return this.evictedCount.get();
+    }
+
+    /**
+     * Total size of outputs of evicted scripts
+     */
+    public long getReclaimedBytes() {
+        return this.reclaimedBytes.get();
+    }
+
+    @Override
+    public void close() {
+        this.subscription.close();
+    }
+
+    /**
+     * Replaces tracked scripts with finished scripts listed from the service
+     */
+    private void listFinished() {
+        // Cleared before listing, so events dropped meanwhile lead to another listing
+        this.listingNeeded = false;
+        this.finishedNames.clear();
+        var listed = new ArrayList<Finished>();
+        for (var status : ScriptInfo.Status.values()) {
+            if (!status.isTerminal())
+                continue;
+            for (var scriptInfo : this.scriptService.all(ScriptService.SortBy.CREATED, status))
+                if (scriptInfo.getStatus().isTerminal())
+                    listed.add(this.finished(scriptInfo));
+        }
+        listed.sort(Comparator.comparing((Finished it) -> it.finished));
+        this.tracked.clear();
+        this.trackedOutputBytes = 0;
+        listed.forEach(this::track);
+    }
+
+    /**
+     * Tracks scripts that finished since the previous sweep
+     */
+    private void trackFinished() {
+        String name;
+        while ((name = this.finishedNames.poll()) != null) {
+            ScriptInfo scriptInfo;
+            try {
+                scriptInfo = this.scriptService.get(name);
+            } catch (ScriptNotFoundException ignored) {
+                // Script was deleted meanwhile
+                continue;
+            }
+            var previous = this.tracked.get(name);
+            if (!scriptInfo.getStatus().isTerminal() || previous != null && previous.created.equals(scriptInfo.created))
+                continue;
+            if (previous != null) {
+                // Script was replaced by a newer one with the same name
+                this.tracked.remove(name);
+                this.trackedOutputBytes -= previous.outputBytes;
+            }
+            this.track(this.finished(scriptInfo));
+        }
+    }
+
+    private void track(Finished finished) {
+        this.tracked.put(finished.name, finished);
+        this.trackedOutputBytes += finished.outputBytes;
+    }
+
+    private Finished finished(ScriptInfo scriptInfo) {
+        var finished = this.scriptService.executionOf(scriptInfo)
+                .flatMap(ScriptExecution::getFinished)
+                .orElse(scriptInfo.created);
+        long outputBytes = scriptInfo.getOutput().size() + scriptInfo.getErrorOutput().size();
+        return new Finished(scriptInfo.name, scriptInfo.created, finished, outputBytes);
+    }
+
+    /**
+     * @return false if tracked script was deleted or replaced meanwhile
+     */
+    private boolean evict(Finished finished) {
+        try {
+            var scriptInfo = this.scriptService.get(finished.name);
+            return scriptInfo.created.equals(finished.created) && this.scriptService.evict(scriptInfo);
+        } catch (ScriptNotFoundException ignored) {
+            return false;
+        }
+    }
+
+    private static class Finished {
+
+        final String name;
+        final Instant created;
+        final Instant finished;
+        final long outputBytes;
+
+        Finished(String name, Instant created, Instant finished, long outputBytes) {
+            this.name = name;
+            this.created = created;
+            this.finished = finished;
+            this.outputBytes = outputBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Instant;
+
+/**
+ * Change of the status of a script, published by {@link ScriptEventBus}
+ */
+public class ScriptEvent {
+
+    /**
+     * Position of the event among all published events, consecutive events differ by one
+     */
+    public final long sequence;
+    public final String name;
+    /**
+     * Null if script was just created
+     */
+    public final ScriptInfo.Status previousStatus;
+    public final ScriptInfo.Status status;
+    public final Instant time;
+
+    public ScriptEvent(long sequence, String name, ScriptInfo.Status previousStatus, ScriptInfo.Status status, Instant time) {
+        this.sequence = sequence;
+        this.name = name;
+        this.previousStatus = previousStatus;
+        this.status = status;
+        this.time = time;
+    }
+
+}
@@ -0,0 +1,216 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans status changes of scripts out to subscribers.
+ * <p>
+ * Events are kept in a ring buffer of the last {@code capacity} events. Publishing claims the next sequence,
+ * stores the event into its slot and only schedules delivery, so the worker changing the status never waits
+ * for a lock or for a subscriber. Every subscriber reads the ring from its own cursor on the dispatcher,
+ * never concurrently with itself. Subscriber falling more than {@code capacity} events behind skips
+ * the overwritten events and is told how many were dropped.
+ */
+public class ScriptEventBus implements AutoCloseable {
+
+    private static final int MAX_BATCH = 256;
+
+    private final Logger log = LoggerFactory.getLogger(ScriptEventBus.class);
+
+    private final AtomicReferenceArray<ScriptEvent> ring;
+    private final int mask;
+    // Sequence of the next published event
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+    private final ScriptInfo.StatusListener statusListener =
+            (scriptInfo, previousStatus, status) -> this.publish(scriptInfo.name, previousStatus, status);
+
+    /**
+     * @param capacity   number of the last events kept for subscribers, rounded up to a power of two
+     * @param dispatcher delivers events to subscribers
+     */
+    public ScriptEventBus(int capacity, ExecutorService dispatcher) {
+        if (capacity <= 0)
+            throw new java.lang.IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Publishes every status change of the script
+     */
+    public void watch(ScriptInfo scriptInfo) {
+        scriptInfo.addStatusListener(this.statusListener);
+        this.publish(scriptInfo.name, null, scriptInfo.getStatus());
+    }
+
+    public void publish(String name, ScriptInfo.Status previousStatus, ScriptInfo.Status status) {
+        long sequence = this.next.getAndIncrement();
+        this.ring.set(this.indexOf(sequence), new ScriptEvent(sequence, name, previousStatus, status, Instant.now(CurrentClock.get())));
+        for (var subscription : this.subscriptions)
+            subscription.signal();
+    }
+
+    /**
+     * Subscriber receives events published after the subscription
+     */
+    public Subscription subscribe(Subscriber subscriber) {
+        return this.subscribe(subscriber, this.next.get());
+    }
+
+    /**
+     * Subscriber receives events starting from the provided sequence, events that are no longer kept are dropped
+     */
+    public Subscription subscribe(Subscriber subscriber, long fromSequence) {
+        var subscription = new Subscription(subscriber, Math.max(0, Math.min(fromSequence, this.next.get())));
+        this.subscriptions.add(subscription);
+        subscription.signal();
+        return subscription;
+    }
+
+    public long getPublishedCount() {
+        return this.next.get();
+    }
+
+    /**
+     * Events skipped by subscribers that fell too far behind, counted once for every subscriber
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        this.subscriptions.forEach(Subscription::close);
+        this.dispatcher.shutdownNow();
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence & this.mask);
+    }
+
+    public interface Subscriber {
+
+        /**
+         * Receives consecutive events in the order of publishing, never concurrently
+         */
+        void onEvents(List<ScriptEvent> events);
+
+        /**
+         * Receives number of events that were overwritten before the subscriber read them
+         */
+        default void onDropped(long count) {}
+
+    }
+
+    public class Subscription implements AutoCloseable {
+
+        private final Subscriber subscriber;
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+        // Guarded by drainScheduled
+        private long cursor;
+
+        private Subscription(Subscriber subscriber, long cursor) {
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (this.closed || !this.drainScheduled.compareAndSet(false, true))
+                return;
+            try {
+                dispatcher.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Bus is closing
+                this.drainScheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            do {
+                this.deliverAvailable();
+                this.drainScheduled.set(false);
+                // Event published after the last read but before the flag was cleared did not schedule a drain
+            } while (!this.closed && this.hasAvailable() && this.drainScheduled.compareAndSet(false, true));
+        }
+
+        private void deliverAvailable() {
+            var batch = new ArrayList<ScriptEvent>();
+            while (!this.closed) {
+                var event = ring.get(indexOf(this.cursor));
+                // Slot still holds an older event until the publisher of the awaited one stores it
+                if (event == null || event.sequence < this.cursor)
+                    break;
+                if (event.sequence > this.cursor) {
+                    this.deliver(batch);
+                    batch = new ArrayList<>();
+                    this.skipOverwritten();
+                    continue;
+                }
+                batch.add(event);
+                this.cursor++;
+                if (batch.size() == MAX_BATCH) {
+                    this.deliver(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            this.deliver(batch);
+        }
+
+        private boolean hasAvailable() {
+            var event = ring.get(indexOf(this.cursor));
+            return event != null && event.sequence >= this.cursor;
+        }
+
+        /**
+         * Moves the cursor to the oldest event that may still be kept
+         */
+        private void skipOverwritten() {
+            long oldest = Math.max(next.get() - ring.length(), this.cursor + 1);
+            long count = oldest - this.cursor;
+            this.cursor = oldest;
+            dropped.add(count);
+            try {
+                this.subscriber.onDropped(count);
+            } catch (RuntimeException e) {
+                log.warn("Subscriber failed to handle dropped events", e);
+            }
+        }
+
+        private void deliver(List<ScriptEvent> batch) {
+            if (batch.isEmpty() || this.closed)
+                return;
+            try {
+                this.subscriber.onEvents(batch);
+            } catch (RuntimeException e) {
+                log.warn("Subscriber failed to handle script events", e);
+            }
+        }
+
+    }
+
+}
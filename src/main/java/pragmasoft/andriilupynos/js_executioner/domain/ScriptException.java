@@ -9,4 +9,8 @@ public abstract class ScriptException extends RuntimeException {
         super(msg);
     }
 
+    protected ScriptException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
 }
@@ -1,9 +1,15 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptMemoryExceededException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptTimedOutException;
 import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
@@ -14,28 +20,143 @@ import java.util.stream.Collectors;
 
 public class ScriptExecution implements RunnableFuture<Void> {
 
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Duration MEMORY_CHECK_INTERVAL = Duration.ofMillis(50);
+
+    private final Logger log = LoggerFactory.getLogger(ScriptExecution.class);
+
     protected final ScriptInfo scriptInfo;
     Instant started = null;
     Instant finished = null;
+    Instant scheduledAt = null;
+    // Timer task which submits execution to the scheduler, null if execution was submitted immediately
+    volatile TaskTimer.Timeout pendingStart = null;
 
     private final FutureTask<Void> execution;
+    // Completed once the final status is set, so waiting for it does not take a thread.
+    // The task itself is done as soon as it is cancelled, while an interrupted script may still be running.
+    private final CompletableFuture<ScriptExecution> completion = new CompletableFuture<>();
+    private final ScriptScheduler scheduler;
+    private final TaskTimer timer;
+    // Set by the watchdog before it stops the script
+    private volatile ExceededLimit exceededLimit = null;
 
     public ScriptExecution(ScriptInfo scriptInfo) {
+        this(scriptInfo, null, null);
+    }
+
+    ScriptExecution(ScriptInfo scriptInfo, ScriptScheduler scheduler) {
+        this(scriptInfo, scheduler, null);
+    }
+
+    /**
+     * @param timer used to stop script exceeding its time and memory limits, they are not enforced if it is null
+     */
+    ScriptExecution(ScriptInfo scriptInfo, ScriptScheduler scheduler, TaskTimer timer) {
         this.execution = new FutureTask<>(this::exec, null);
         this.scriptInfo = scriptInfo;
+        this.scheduler = scheduler;
+        this.timer = timer;
+    }
+
+    /**
+     * Execution that finished before the service was restarted
+     */
+    private ScriptExecution(ScriptInfo scriptInfo, Instant scheduledAt, Instant started, Instant finished) {
+        this.execution = new FutureTask<>(() -> {}, null);
+        this.execution.run();
+        this.scriptInfo = scriptInfo;
+        this.scheduler = null;
+        this.timer = null;
+        this.scheduledAt = scheduledAt;
+        this.started = started;
+        this.finished = finished;
+        this.completion.complete(this);
+    }
+
+    public static ScriptExecution restore(ScriptInfo scriptInfo, Instant scheduledAt, Instant started, Instant finished) {
+        return new ScriptExecution(scriptInfo, scheduledAt, started, finished);
     }
 
     private void exec() {
+        this.started = Instant.now(CurrentClock.get());
+        this.scriptInfo.setStatus(ScriptInfo.Status.RUNNING);
+        var watchdog = this.startWatchdog();
+        // Errors of the JVM are not handled, but the script is still failed and released
+        var status = ScriptInfo.Status.ERROR;
         try {
-            this.started = Instant.now(CurrentClock.get());
-            this.scriptInfo.setStatus(ScriptInfo.Status.RUNNING);
             this.scriptInfo.script.run();
-            this.scriptInfo.setStatus(ScriptInfo.Status.COMPLETED);
+            status = ScriptInfo.Status.COMPLETED;
         } catch (Exception e) {
-            this.scriptInfo.setStatus(ScriptInfo.Status.ERROR);
-            this.writeScriptErrorWithStackTrace(e);
+            var limit = this.exceededLimit;
+            if (limit == null && e instanceof ScriptTimedOutException)
+                limit = new ExceededLimit(ScriptInfo.Status.TIMED_OUT, e.getMessage());
+            if (limit == null && e instanceof ScriptMemoryExceededException)
+                limit = new ExceededLimit(ScriptInfo.Status.MEMORY_EXCEEDED, e.getMessage());
+
+            if (limit != null) {
+                status = limit.status;
+                this.writeScriptError(limit.message);
+            } else {
+                this.writeScriptErrorWithStackTrace(e);
+            }
         } finally {
+            if (watchdog != null)
+                watchdog.stop();
             this.finished = Instant.now(CurrentClock.get());
+            // Finished script keeps only its code, outputs and times, its context is released right away
+            this.closeScript();
+            this.scriptInfo.getOutput().seal();
+            this.scriptInfo.getErrorOutput().seal();
+            // Terminal status is set last, so its listeners see complete output and execution times
+            this.scriptInfo.setStatus(status);
+            this.completion.complete(this);
+        }
+    }
+
+    /**
+     * Fails execution that could not be started, e.g. because it was rejected by the executor.
+     * Does nothing if execution has already started.
+     */
+    public void reject(String reason) {
+        var timeout = this.pendingStart;
+        if (timeout != null)
+            timeout.cancel();
+        // Claimed status makes both the worker that is about to start the execution and a concurrent cancel give up
+        if (!this.scriptInfo.compareAndSetStatus(ScriptInfo.Status.SCHEDULED, ScriptInfo.Status.ERROR))
+            return;
+        this.finished = Instant.now(CurrentClock.get());
+        this.writeScriptError(reason);
+        this.closeScript();
+        this.scriptInfo.getOutput().seal();
+        this.scriptInfo.getErrorOutput().seal();
+        this.execution.cancel(false);
+        this.completion.complete(this);
+    }
+
+    private Watchdog startWatchdog() {
+        var limits = this.scriptInfo.limits;
+        if (this.timer == null || !(limits.hasWallTimeLimit() || limits.hasCpuTimeLimit() || limits.hasMemoryLimit()))
+            return null;
+
+        var watchdog = new Watchdog(limits);
+        watchdog.run();
+        return watchdog;
+    }
+
+    private void closeScript() {
+        try {
+            this.scriptInfo.script.close();
+        } catch (Exception e) {
+            log.warn("Failed to close script {}", this.scriptInfo.name, e);
+        }
+    }
+
+    private void writeScriptError(String message) {
+        try {
+            this.scriptInfo.script.err.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            log.warn("Failed to write error output of script {}", this.scriptInfo.name, ex);
         }
     }
 
@@ -54,10 +175,17 @@ public class ScriptExecution implements RunnableFuture<Void> {
                     this.scriptInfo.script.err.write((stackTraceEl + "\n").getBytes(StandardCharsets.UTF_8));
             }
         } catch (IOException ex) {
-            ex.printStackTrace();
+            log.warn("Failed to write error output of script {}", this.scriptInfo.name, ex);
         }
     }
 
+    /**
+     * Time before which execution will not be started, empty if it is started as soon as possible
+     */
+    public Optional<Instant> getScheduledAt() {
+        return Optional.ofNullable(this.scheduledAt);
+    }
+
     public Optional<Instant> getStarted() {
         return Optional.ofNullable(this.started);
     }
@@ -73,6 +201,17 @@ public class ScriptExecution implements RunnableFuture<Void> {
         return Optional.empty();
     }
 
+    /**
+     * Number of executions that will be started before this one, empty if execution is not waiting in the queue
+     */
+    public Optional<Integer> getQueuePosition() {
+        return this.scheduler != null ? this.scheduler.queuePositionOf(this) : Optional.empty();
+    }
+
+    public Optional<Instant> getEstimatedStart() {
+        return this.scheduler != null ? this.scheduler.estimatedStartOf(this) : Optional.empty();
+    }
+
     ScriptInfo.Status getStatus() {
         return scriptInfo.getStatus();
     }
@@ -82,9 +221,34 @@ public class ScriptExecution implements RunnableFuture<Void> {
         this.execution.run();
     }
 
+    /**
+     * Execution that has not started yet ends with {@link ScriptInfo.Status#CANCELLED},
+     * running one is interrupted if allowed
+     */
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        return this.execution.cancel(mayInterruptIfRunning);
+        return this.cancelPending() || this.execution.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Cancels execution that has not started yet, started execution is left to finish
+     *
+     * @return whether execution was cancelled
+     */
+    boolean cancelPending() {
+        var timeout = this.pendingStart;
+        if (timeout != null)
+            timeout.cancel();
+        // Claimed status makes the worker that is about to start the execution give up
+        if (!this.scriptInfo.compareAndSetStatus(ScriptInfo.Status.SCHEDULED, ScriptInfo.Status.CANCELLED))
+            return false;
+        this.finished = Instant.now(CurrentClock.get());
+        this.closeScript();
+        this.scriptInfo.getOutput().seal();
+        this.scriptInfo.getErrorOutput().seal();
+        this.execution.cancel(false);
+        this.completion.complete(this);
+        return true;
     }
 
     @Override
@@ -107,8 +271,128 @@ public class ScriptExecution implements RunnableFuture<Void> {
         return this.execution.get(timeout, unit);
     }
 
+    /**
+     * Completes with this execution once its final status is set, never exceptionally.
+     * Every call returns a new future, so completing or cancelling it does not affect the execution.
+     */
+    public CompletableFuture<ScriptExecution> completion() {
+        return this.completion.copy();
+    }
+
     public String getScriptName() {
         return this.scriptInfo.name;
     }
 
+    private static class ExceededLimit {
+
+        final ScriptInfo.Status status;
+        final String message;
+
+        ExceededLimit(ScriptInfo.Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+    }
+
+    /**
+     * Stops the script when it exceeds its wall time, CPU time or memory limit. Time limits are not polled,
+     * the check is rescheduled after the smallest remaining budget: CPU time of a thread can not grow faster
+     * than wall time, so no time limit can be exceeded before the next check. Allocation rate is not bounded,
+     * so memory limit is checked every {@link #MEMORY_CHECK_INTERVAL}.
+     * <p>
+     * Memory limit is a budget of bytes allocated by the executing thread, garbage included, since retained heap
+     * of a single script can not be measured without sandbox options of GraalVM Enterprise. It is therefore
+     * disabled by default and meant for stopping runaway allocation rather than for bounding the heap.
+     */
+    private class Watchdog implements Runnable {
+
+        private final ScriptLimits limits;
+        private final Thread thread = Thread.currentThread();
+        private final long startNanos = System.nanoTime();
+        // Worker threads are reused, so CPU time spent on previous executions is subtracted
+        private final long startCpuNanos = this.threadCpuTimeNanos();
+        private final long startAllocatedBytes = this.threadAllocatedBytes();
+        private volatile boolean stopped = false;
+        private volatile TaskTimer.Timeout next = null;
+
+        Watchdog(ScriptLimits limits) {
+            this.limits = limits;
+        }
+
+        @Override
+        public void run() {
+            if (this.stopped)
+                return;
+
+            long remaining = Long.MAX_VALUE;
+            long wallNanos = System.nanoTime() - this.startNanos;
+            if (this.limits.hasWallTimeLimit()) {
+                remaining = this.limits.maxWallTime.toNanos() - wallNanos;
+                if (remaining <= 0) {
+                    this.stopScript(ScriptInfo.Status.TIMED_OUT,
+                            "Wall time limit of " + this.limits.maxWallTime.toMillis() + "ms exceeded");
+                    return;
+                }
+            }
+            if (this.limits.hasCpuTimeLimit()) {
+                long cpuNanos = this.cpuTimeNanos(wallNanos);
+                long cpuRemaining = this.limits.maxCpuTime.toNanos() - cpuNanos;
+                if (cpuRemaining <= 0) {
+                    this.stopScript(ScriptInfo.Status.TIMED_OUT,
+                            "CPU time limit of " + this.limits.maxCpuTime.toMillis() + "ms exceeded");
+                    return;
+                }
+                remaining = Math.min(remaining, cpuRemaining);
+            }
+            if (this.limits.hasMemoryLimit() && this.startAllocatedBytes >= 0) {
+                if (this.threadAllocatedBytes() - this.startAllocatedBytes > this.limits.maxAllocatedBytes) {
+                    this.stopScript(ScriptInfo.Status.MEMORY_EXCEEDED,
+                            "Memory limit of " + this.limits.maxAllocatedBytes + " bytes exceeded");
+                    return;
+                }
+                remaining = Math.min(remaining, MEMORY_CHECK_INTERVAL.toNanos());
+            }
+            this.next = timer.schedule(Duration.ofNanos(remaining), this);
+        }
+
+        void stop() {
+            this.stopped = true;
+            var timeout = this.next;
+            if (timeout != null)
+                timeout.cancel();
+        }
+
+        /**
+         * Falls back to wall time for threads whose CPU time can not be measured, e.g. virtual threads
+         */
+        private long cpuTimeNanos(long wallNanos) {
+            long cpuNanos = this.threadCpuTimeNanos();
+            return cpuNanos >= 0 && this.startCpuNanos >= 0 ? cpuNanos - this.startCpuNanos : wallNanos;
+        }
+
+        private long threadCpuTimeNanos() {
+            return THREADS.isThreadCpuTimeSupported() ? THREADS.getThreadCpuTime(this.thread.getId()) : -1;
+        }
+
+        /**
+         * Negative if allocation of the thread can not be measured
+         */
+        private long threadAllocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                var threads = (com.sun.management.ThreadMXBean) THREADS;
+                if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                    return threads.getThreadAllocatedBytes(this.thread.getId());
+            }
+            return -1;
+        }
+
+        private void stopScript(ScriptInfo.Status status, String message) {
+            exceededLimit = new ExceededLimit(status, message);
+            if (!this.stopped)
+                closeScript();
+        }
+
+    }
+
 }
@@ -8,4 +8,9 @@ public interface ScriptExecutionRepository {
 
     ScriptExecution getAndRemove(String name);
 
+    /**
+     * Removes the execution if it is still the one stored under the name of its script
+     */
+    boolean remove(ScriptExecution scriptExecution);
+
 }
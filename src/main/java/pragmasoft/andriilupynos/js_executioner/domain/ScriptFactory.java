@@ -6,7 +6,31 @@ import java.io.OutputStream;
  * Anti-corruption layer around GraalJS
  */
 public interface ScriptFactory {
-    Script createScript(String sourceCode, OutputStream stdOut, OutputStream stdErr) throws ScriptException;
+
+    /**
+     * Statement limit is enforced by the created script itself, its {@link Script#run()} throws
+     * {@link pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptTimedOutException} when it is exceeded
+     */
+    Script createScript(String sourceCode, OutputStream stdOut, OutputStream stdErr, ScriptLimits limits) throws ScriptException;
+
+    /**
+     * Checks that the code can be parsed without keeping anything for its execution
+     *
+     * @throws pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidScriptProvidedException if it can not
+     */
+    default void validate(String sourceCode, ScriptLimits limits) throws ScriptException {
+        try (var script = createScript(sourceCode, OutputStream.nullOutputStream(), OutputStream.nullOutputStream(), limits)) {
+            // Parsed script is discarded right away
+        } catch (ScriptException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to close validated script", e);
+        }
+    }
+
+    default Script createScript(String sourceCode, OutputStream stdOut, OutputStream stdErr) throws ScriptException {
+        return createScript(sourceCode, stdOut, stdErr, ScriptLimits.UNLIMITED);
+    }
 
     @SuppressWarnings({"unused", "java:S106"})
     // to simplify testing
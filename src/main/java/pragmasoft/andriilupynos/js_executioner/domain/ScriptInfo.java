@@ -1,45 +1,129 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidExecutionStateException;
 
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.time.Instant;
-import java.util.Collection;
-import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
 
 public class ScriptInfo {
 
+    private static final AtomicReferenceFieldUpdater<ScriptInfo, Status> STATUS =
+            AtomicReferenceFieldUpdater.newUpdater(ScriptInfo.class, Status.class, "status");
+    private static final AtomicReferenceFieldUpdater<ScriptInfo, StatusListener[]> LISTENERS =
+            AtomicReferenceFieldUpdater.newUpdater(ScriptInfo.class, StatusListener[].class, "listeners");
+    private static final StatusListener[] NO_LISTENERS = new StatusListener[0];
+
+    /**
+     * Statuses a script may change to a status from, shared by all scripts
+     */
+    private static final Map<Status, Set<Status>> ALLOWED_PREVIOUS_STATUSES = new EnumMap<>(Map.of(
+            Status.SCHEDULED, EnumSet.noneOf(Status.class),
+            Status.RUNNING, EnumSet.of(Status.SCHEDULED),
+            Status.COMPLETED, EnumSet.of(Status.RUNNING),
+            // Execution that could not be started fails without running
+            Status.ERROR, EnumSet.of(Status.SCHEDULED, Status.RUNNING),
+            Status.TIMED_OUT, EnumSet.of(Status.RUNNING),
+            Status.MEMORY_EXCEEDED, EnumSet.of(Status.RUNNING),
+            Status.CANCELLED, EnumSet.of(Status.SCHEDULED)
+    ));
+
+    /**
+     * Longest name of a script, in characters, which stores are expected to keep
+     */
+    public static final int MAX_NAME_LENGTH = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(ScriptInfo.class);
+
     public final Script script;
     public final String name;
-    protected final AtomicReference<Status> status;
+    protected volatile Status status;
     public final Instant created;
+    /**
+     * Effective limits of the script, with defaults already applied
+     */
+    public final ScriptLimits limits;
+    /**
+     * Effective output mode of the script, with default already applied
+     */
+    public final ScriptOutputMode outputMode;
     private final ScriptOutput out;
     private final ScriptOutput err;
-    private final PropertyChangeSupport observable = new PropertyChangeSupport(this);
-
-    private final Map<Status, Collection<Status>> allowedStatusTransfer = Map.of(
-            Status.SCHEDULED, List.of(),
-            Status.RUNNING, List.of(Status.SCHEDULED),
-            Status.COMPLETED, List.of(Status.RUNNING),
-            Status.ERROR, List.of(Status.RUNNING)
-    );
+    // Copied on every change, so notifying takes neither a lock nor an allocation
+    private volatile StatusListener[] listeners = NO_LISTENERS;
 
     ScriptInfo(Script script, String name, Status status, Instant created, ScriptOutput out, ScriptOutput err) {
+        this(script, name, status, created, ScriptLimits.UNLIMITED, ScriptOutputMode.UNBOUNDED, out, err);
+    }
+
+    ScriptInfo(
+            Script script,
+            String name,
+            Status status,
+            Instant created,
+            ScriptLimits limits,
+            ScriptOutputMode outputMode,
+            ScriptOutput out,
+            ScriptOutput err
+    ) {
         this.script = script;
         this.name = name;
-        this.status = new AtomicReference<>(status);
+        this.status = status;
         this.out = out;
         this.err = err;
         this.created = created;
+        this.limits = limits;
+        this.outputMode = outputMode;
+    }
+
+    /**
+     * Script loaded from storage, its status is taken as is
+     */
+    public static ScriptInfo restore(
+            Script script,
+            String name,
+            Status status,
+            Instant created,
+            ScriptLimits limits,
+            ScriptOutputMode outputMode,
+            ScriptOutput out,
+            ScriptOutput err
+    ) {
+        return new ScriptInfo(script, name, status, created, limits, outputMode, out, err);
     }
 
     public enum Status {
-        SCHEDULED, RUNNING, COMPLETED, ERROR
+        SCHEDULED, RUNNING, COMPLETED, ERROR,
+        /**
+         * Script was stopped because it exceeded one of its limits
+         */
+        TIMED_OUT,
+        /**
+         * Script was stopped because it exceeded its memory limit or ran out of memory
+         */
+        MEMORY_EXCEEDED,
+        /**
+         * Execution was stopped before it started, so the script never ran
+         */
+        CANCELLED;
+
+        /**
+         * Whether script can not change its status anymore
+         */
+        public boolean isTerminal() {
+            return this != SCHEDULED && this != RUNNING;
+        }
     }
 
     public String getOut() {
@@ -50,50 +134,216 @@ public class ScriptInfo {
         return err.toString();
     }
 
+    public ScriptOutput getOutput() {
+        return out;
+    }
+
+    public ScriptOutput getErrorOutput() {
+        return err;
+    }
+
+    /**
+     * Listeners are called by the changing thread after the status was changed, so they must not block
+     */
     protected final void setStatus(Status status) {
+        var allowed = ALLOWED_PREVIOUS_STATUSES.get(status);
         Status currentStatus;
+        // Failed swap means another thread changed the status first, which may still allow the change
         do {
-            currentStatus = this.status.get();
-            this.checkStatusChangePossible(currentStatus, status);
-        } while(!this.status.compareAndSet(currentStatus, status));
-        Status old = this.status.getAndSet(status);
-        this.observable.firePropertyChange("status", old, status);
-    }
-
-    private void checkStatusChangePossible(Status currentStatus, Status newStatus) {
-        var allowed = this.allowedStatusTransfer.get(newStatus);
-
-        if (!allowed.contains(currentStatus)) {
-            throw new InvalidExecutionStateException(
-                    this.name,
-                    newStatus.name(),
-                    currentStatus.name(),
-                    allowed.stream().map(Enum::name).collect(Collectors.toList())
-            );
+            currentStatus = this.status;
+            if (!allowed.contains(currentStatus))
+                throw this.statusChangeImpossible(currentStatus, status, allowed);
+        } while (!this.compareAndSetStatus(currentStatus, status));
+    }
+
+    /**
+     * Changes the status only if it is the expected one and the change is allowed.
+     * Failure of a listener is logged, so neither other listeners nor the changing thread are affected by it
+     *
+     * @return whether the status was changed
+     */
+    protected final boolean compareAndSetStatus(Status expected, Status status) {
+        if (!ALLOWED_PREVIOUS_STATUSES.get(status).contains(expected) || !STATUS.compareAndSet(this, expected, status))
+            return false;
+        for (var listener : this.listeners) {
+            try {
+                listener.onStatusChange(this, expected, status);
+            } catch (RuntimeException e) {
+                log.warn("Listener failed to handle status change of script {} from {} to {}", this.name, expected, status, e);
+            }
         }
+        return true;
+    }
+
+    private InvalidExecutionStateException statusChangeImpossible(
+            Status currentStatus,
+            Status newStatus,
+            Set<Status> allowed
+    ) {
+        return new InvalidExecutionStateException(
+                this.name,
+                newStatus.name(),
+                currentStatus.name(),
+                allowed.stream().map(Enum::name).collect(Collectors.toList())
+        );
     }
 
     public Status getStatus() {
-        return status.get();
+        return this.status;
     }
 
-    @SuppressWarnings("unused")
-    public void addPropertyChangeListener(PropertyChangeListener listener) {
-        observable.addPropertyChangeListener(listener);
+    public void addStatusListener(StatusListener listener) {
+        StatusListener[] current;
+        StatusListener[] updated;
+        do {
+            current = this.listeners;
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+        } while (!LISTENERS.compareAndSet(this, current, updated));
     }
 
-    @SuppressWarnings("unused")
-    public void removePropertyChangeListener(PropertyChangeListener listener) {
-        observable.removePropertyChangeListener(listener);
+    /**
+     * Removes one registration of the listener, does nothing if it is not registered
+     */
+    public void removeStatusListener(StatusListener listener) {
+        StatusListener[] current;
+        StatusListener[] updated;
+        do {
+            current = this.listeners;
+            int index = Arrays.asList(current).indexOf(listener);
+            if (index < 0)
+                return;
+            if (current.length == 1) {
+                updated = NO_LISTENERS;
+            } else {
+                updated = new StatusListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            }
+        } while (!LISTENERS.compareAndSet(this, current, updated));
+    }
+
+    @FunctionalInterface
+    public interface StatusListener {
+
+        void onStatusChange(ScriptInfo scriptInfo, Status previousStatus, Status status);
+
     }
 
     public interface ScriptOutput {
 
         OutputStream asStream();
 
+        /**
+         * Number of bytes written to the output
+         */
+        long size();
+
+        /**
+         * Reads at most {@code maxBytes} bytes starting at the offset.
+         * Returned chunk is empty if there are no bytes after the offset yet.
+         */
+        Chunk read(long offset, int maxBytes);
+
+        /**
+         * Writes at most {@code length} bytes starting at the offset to the channel.
+         * Bytes are written without building a string of the output, implementations
+         * avoid copying them where output layout allows.
+         *
+         * @return number of bytes written
+         */
+        default long transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+            long position = Math.max(offset, 0);
+            long end = position + Math.max(Math.min(length, this.size() - position), 0);
+            long transferred = 0;
+            while (position < end) {
+                var chunk = this.read(position, (int) Math.min(end - position, 64 * 1024));
+                if (chunk.bytes.length == 0)
+                    break;
+                var buffer = ByteBuffer.wrap(chunk.bytes);
+                while (buffer.hasRemaining())
+                    target.write(buffer);
+                transferred += chunk.bytes.length;
+                position = chunk.offset + chunk.bytes.length;
+            }
+            return transferred;
+        }
+
+        /**
+         * Listener is called by the writing thread after every write, so it must not block
+         */
+        void addWriteListener(Runnable listener);
+
+        void removeWriteListener(Runnable listener);
+
+        /**
+         * Number of written bytes that were dropped because output is bounded
+         */
+        default long truncatedBytes() {
+            return 0;
+        }
+
+        /**
+         * First kept byte at or after the offset, bytes in between were dropped
+         */
+        default long keptFrom(long offset) {
+            return offset;
+        }
+
+        /**
+         * End of the run of kept bytes the offset belongs to, bytes after it up to the next kept byte were dropped
+         */
+        default long keptUntil(long offset) {
+            return this.size();
+        }
+
+        /**
+         * Called once the script finished, so nothing is written to the output anymore.
+         * Implementations give back memory reserved for further writes, output stays readable.
+         */
+        default void seal() {
+        }
+
+        /**
+         * Releases resources held by the output
+         */
+        default void close() {
+        }
+
         @Override
         String toString();
 
+        class Chunk {
+
+            /**
+             * Offset of the first byte of the chunk in the output
+             */
+            public final long offset;
+            public final byte[] bytes;
+
+            public Chunk(long offset, byte[] bytes) {
+                this.offset = offset;
+                this.bytes = bytes;
+            }
+
+            /**
+             * Length of the longest prefix that does not end in the middle of a UTF-8 encoded character
+             */
+            public int completeUtf8Length() {
+                int length = this.bytes.length;
+                // Start of the last character is at most 3 bytes before the end
+                for (int i = length - 1; i >= 0 && i >= length - 4; i--) {
+                    int b = this.bytes[i] & 0xFF;
+                    if ((b & 0xC0) == 0x80)
+                        continue; // Continuation byte
+                    int charLength = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+                    return i + charLength <= length ? length : i;
+                }
+                return length;
+            }
+
+        }
+
     }
 
 }
@@ -1,5 +1,8 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -13,6 +16,40 @@ public interface ScriptInfoRepository {
 
     Iterable<ScriptInfo> all(ScriptService.SortBy by) throws ScriptException;
 
+    /**
+     * Scripts with the provided status in the provided order, iterated lazily where repository allows
+     *
+     * @param status status of returned scripts or null for all scripts
+     */
+    default Iterable<ScriptInfo> all(ScriptService.SortBy by, ScriptInfo.Status status) throws ScriptException {
+        if (status == null)
+            return all(by);
+        return () -> allAsStream(by, false).filter(it -> it.getStatus() == status).iterator();
+    }
+
+    /**
+     * Scripts with the provided status that follow the position in the order of the sort,
+     * or that precede it in the reversed order if {@code backwards}
+     *
+     * @param from position to start from or null to start from the first (or the last) script
+     */
+    default Iterable<ScriptInfo> all(
+            ScriptService.SortBy by,
+            ScriptInfo.Status status,
+            ScriptPosition from,
+            boolean backwards
+    ) throws ScriptException {
+        Comparator<ScriptPosition> order = ScriptPosition.order(by);
+        Comparator<ScriptPosition> direction = backwards ? order.reversed() : order;
+        return StreamSupport.stream(all(by, status).spliterator(), false)
+                // Position is taken once, so that status changes do not break sorting
+                .map(it -> Map.entry(ScriptPosition.of(it), it))
+                .filter(it -> from == null || direction.compare(it.getKey(), from) > 0)
+                .sorted(Map.Entry.comparingByKey(direction))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
     @SuppressWarnings("unused")
     default Stream<ScriptInfo> allAsStream(ScriptService.SortBy by, boolean parallel) throws ScriptException {
         return StreamSupport.stream(all(by).spliterator(), parallel);
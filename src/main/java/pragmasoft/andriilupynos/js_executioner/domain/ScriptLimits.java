@@ -0,0 +1,91 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Duration;
+
+/**
+ * Immutable resource limits of a script. Null limit is taken from defaults,
+ * non-positive limit means that resource is not limited.
+ */
+public class ScriptLimits {
+
+    public static final ScriptLimits DEFAULT = new ScriptLimits(null, null, null, null);
+    public static final ScriptLimits UNLIMITED = new ScriptLimits(0L, Duration.ZERO, Duration.ZERO, 0L);
+
+    /**
+     * Number of JS statements script is allowed to execute
+     */
+    public final Long maxStatements;
+    /**
+     * Time after which running script is stopped
+     */
+    public final Duration maxWallTime;
+    /**
+     * CPU time of the executing thread after which running script is stopped
+     */
+    public final Duration maxCpuTime;
+    /**
+     * Bytes the executing thread is allowed to allocate in total, garbage included, after which running script is stopped
+     */
+    public final Long maxAllocatedBytes;
+
+    private ScriptLimits(
+            Long maxStatements,
+            Duration maxWallTime,
+            Duration maxCpuTime,
+            Long maxAllocatedBytes
+    ) {
+        this.maxStatements = maxStatements;
+        this.maxWallTime = maxWallTime;
+        this.maxCpuTime = maxCpuTime;
+        this.maxAllocatedBytes = maxAllocatedBytes;
+    }
+
+    public ScriptLimits withMaxStatements(Long maxStatements) {
+        return new ScriptLimits(maxStatements, this.maxWallTime, this.maxCpuTime, this.maxAllocatedBytes);
+    }
+
+    public ScriptLimits withMaxWallTime(Duration maxWallTime) {
+        return new ScriptLimits(this.maxStatements, maxWallTime, this.maxCpuTime, this.maxAllocatedBytes);
+    }
+
+    public ScriptLimits withMaxCpuTime(Duration maxCpuTime) {
+        return new ScriptLimits(this.maxStatements, this.maxWallTime, maxCpuTime, this.maxAllocatedBytes);
+    }
+
+    public ScriptLimits withMaxAllocatedBytes(Long maxAllocatedBytes) {
+        return new ScriptLimits(this.maxStatements, this.maxWallTime, this.maxCpuTime, maxAllocatedBytes);
+    }
+
+    /**
+     * Limits where every missing limit is taken from the provided defaults
+     */
+    public ScriptLimits orDefaults(ScriptLimits defaults) {
+        return new ScriptLimits(
+                this.maxStatements != null ? this.maxStatements : defaults.maxStatements,
+                this.maxWallTime != null ? this.maxWallTime : defaults.maxWallTime,
+                this.maxCpuTime != null ? this.maxCpuTime : defaults.maxCpuTime,
+                this.maxAllocatedBytes != null ? this.maxAllocatedBytes : defaults.maxAllocatedBytes
+        );
+    }
+
+    public boolean hasStatementLimit() {
+        return this.maxStatements != null && this.maxStatements > 0;
+    }
+
+    public boolean hasWallTimeLimit() {
+        return isPositive(this.maxWallTime);
+    }
+
+    public boolean hasCpuTimeLimit() {
+        return isPositive(this.maxCpuTime);
+    }
+
+    public boolean hasMemoryLimit() {
+        return this.maxAllocatedBytes != null && this.maxAllocatedBytes > 0;
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return duration != null && !duration.isZero() && !duration.isNegative();
+    }
+
+}
@@ -0,0 +1,15 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+/**
+ * Creates outputs of scripts according to their output mode
+ */
+public interface ScriptOutputFactory {
+
+    /**
+     * Mode of outputs of scripts that do not specify one
+     */
+    ScriptOutputMode defaultMode();
+
+    ScriptInfo.ScriptOutput create(ScriptOutputMode mode);
+
+}
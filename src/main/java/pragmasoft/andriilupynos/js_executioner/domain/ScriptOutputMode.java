@@ -0,0 +1,19 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+/**
+ * How much of the script output is retained
+ */
+public enum ScriptOutputMode {
+    /**
+     * Whole output is kept in memory
+     */
+    UNBOUNDED,
+    /**
+     * Only the beginning and the end of the output are kept
+     */
+    HEAD_TAIL,
+    /**
+     * Output above a threshold is kept in a temporary file
+     */
+    SPILL
+}
@@ -0,0 +1,17 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.util.List;
+
+public class ScriptPage {
+
+    public final List<ScriptInfo> scripts;
+    public final boolean hasNext;
+    public final boolean hasPrevious;
+
+    public ScriptPage(List<ScriptInfo> scripts, boolean hasNext, boolean hasPrevious) {
+        this.scripts = scripts;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+    }
+
+}
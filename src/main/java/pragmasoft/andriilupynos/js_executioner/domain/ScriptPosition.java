@@ -0,0 +1,41 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Instant;
+import java.util.Comparator;
+
+/**
+ * Sort key of a script, pages of scripts start right after or right before a position.
+ * Status is the one script had when position was taken.
+ */
+public class ScriptPosition {
+
+    public final String name;
+    public final Instant created;
+    public final ScriptInfo.Status status;
+
+    public ScriptPosition(String name, Instant created, ScriptInfo.Status status) {
+        this.name = name;
+        this.created = created;
+        this.status = status;
+    }
+
+    public static ScriptPosition of(ScriptInfo scriptInfo) {
+        return new ScriptPosition(scriptInfo.name, scriptInfo.created, scriptInfo.getStatus());
+    }
+
+    /**
+     * Total order of positions for the sort, scripts without sort are ordered by name
+     */
+    public static Comparator<ScriptPosition> order(ScriptService.SortBy by) {
+        Comparator<ScriptPosition> byName = Comparator.comparing(it -> it.name);
+        // Newest scripts first
+        Comparator<ScriptPosition> byCreated =
+                Comparator.<ScriptPosition, Instant>comparing(it -> it.created).reversed().thenComparing(byName);
+        if (by == ScriptService.SortBy.CREATED)
+            return byCreated;
+        if (by == ScriptService.SortBy.STATUS)
+            return Comparator.<ScriptPosition, ScriptInfo.Status>comparing(it -> it.status).thenComparing(byCreated);
+        return byName;
+    }
+
+}
@@ -0,0 +1,43 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides in which order submitted executions are passed to workers
+ */
+public interface ScriptScheduler {
+
+    void submit(ScriptExecution execution, ExecutionOptions options) throws ScriptException;
+
+    /**
+     * Submits executions as a group, every execution is accepted or rejected on its own
+     *
+     * @return executions that were rejected, with the reason
+     */
+    default Map<ScriptExecution, ScriptException> submitAll(Map<ScriptExecution, ExecutionOptions> executions) {
+        var rejected = new LinkedHashMap<ScriptExecution, ScriptException>();
+        executions.forEach((execution, options) -> {
+            try {
+                this.submit(execution, options);
+            } catch (ScriptException e) {
+                rejected.put(execution, e);
+            }
+        });
+        return rejected;
+    }
+
+    /**
+     * Number of executions that will be started before the provided one,
+     * empty if execution is not waiting in the queue
+     */
+    Optional<Integer> queuePositionOf(ScriptExecution execution);
+
+    /**
+     * Empty if execution is not waiting in the queue or there is not enough data to estimate
+     */
+    Optional<Instant> estimatedStartOf(ScriptExecution execution);
+
+}
@@ -1,18 +1,44 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface ScriptService {
 
-    ScriptInfo create(String code, String name) throws ScriptException;
+    /**
+     * @param limits     limits of the script, missing ones are taken from the service defaults
+     * @param outputMode how much of the output is retained, null to take the service default
+     */
+    ScriptInfo create(String code, String name, ScriptLimits limits, ScriptOutputMode outputMode) throws ScriptException;
+
+    default ScriptInfo create(String code, String name, ScriptLimits limits) throws ScriptException {
+        return create(code, name, limits, null);
+    }
+
+    default ScriptInfo create(String code, String name) throws ScriptException {
+        return create(code, name, ScriptLimits.DEFAULT);
+    }
 
     default ScriptInfo create(String code) throws ScriptException {
         return create(code, UUID.randomUUID().toString());
     }
 
-    ScriptExecution execute(ScriptInfo scriptInfo) throws ScriptException;
+    ScriptExecution execute(ScriptInfo scriptInfo, ExecutionOptions options) throws ScriptException;
+
+    /**
+     * Creates and executes a group of scripts. Scripts are parsed in parallel and executions are submitted
+     * to the scheduler together, every submission succeeds or fails on its own. Submission named the same as
+     * an earlier submission of the group fails.
+     *
+     * @return results in the order of submissions
+     */
+    List<ScriptSubmission.Result> submitAll(List<ScriptSubmission> submissions) throws ScriptException;
+
+    default ScriptExecution execute(ScriptInfo scriptInfo) throws ScriptException {
+        return execute(scriptInfo, ExecutionOptions.DEFAULT);
+    }
 
     void stopExecution(String name);
 
@@ -25,12 +51,33 @@ public interface ScriptService {
      */
     Collection<ScriptInfo> all(SortBy by, ScriptInfo.Status status) throws ScriptException;
 
+    /**
+     * Page of at most {@code limit} scripts that follow {@code after} or precede {@code before} in the order of the sort.
+     * Scripts are found through the repository indexes, so the cost depends on the page size rather than
+     * on the number of stored scripts. If parameter is null, then it does not affect returned data.
+     */
+    ScriptPage page(
+            SortBy by,
+            ScriptInfo.Status status,
+            ScriptPosition after,
+            ScriptPosition before,
+            int limit
+    ) throws ScriptException;
+
     default Iterable<ScriptInfo> all() throws ScriptException {
         return all(SortBy.CREATED, null);
     }
 
     void delete(String name);
 
+    /**
+     * Deletes the finished script if it is still the one stored under its name. Unlike {@link #delete(String)},
+     * it leaves the recurring series the script belongs to running.
+     *
+     * @return false if script is not finished, or was deleted or replaced by another one with the same name
+     */
+    boolean evict(ScriptInfo scriptInfo) throws ScriptException;
+
     enum SortBy {
         NAME, STATUS, CREATED
     }
@@ -0,0 +1,63 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+/**
+ * Immutable request to create a script and execute it, one of the group submitted together
+ */
+public class ScriptSubmission {
+
+    public final String code;
+    /**
+     * Name of the script, null to generate a random one
+     */
+    public final String name;
+    public final ScriptLimits limits;
+    /**
+     * Output mode of the script, null to take the service default
+     */
+    public final ScriptOutputMode outputMode;
+    public final ExecutionOptions options;
+
+    public ScriptSubmission(
+            String code,
+            String name,
+            ScriptLimits limits,
+            ScriptOutputMode outputMode,
+            ExecutionOptions options
+    ) {
+        this.code = code;
+        this.name = name;
+        this.limits = limits;
+        this.outputMode = outputMode;
+        this.options = options;
+    }
+
+    /**
+     * Outcome of a single submission, either the submitted script or the reason it was not submitted
+     */
+    public static class Result {
+
+        public final ScriptInfo script;
+        public final ScriptExecution execution;
+        public final ScriptException error;
+
+        private Result(ScriptInfo script, ScriptExecution execution, ScriptException error) {
+            this.script = script;
+            this.execution = execution;
+            this.error = error;
+        }
+
+        public static Result submitted(ScriptInfo script, ScriptExecution execution) {
+            return new Result(script, execution, null);
+        }
+
+        public static Result failed(ScriptException error) {
+            return new Result(null, null, error);
+        }
+
+        public boolean isSubmitted() {
+            return this.error == null;
+        }
+
+    }
+
+}
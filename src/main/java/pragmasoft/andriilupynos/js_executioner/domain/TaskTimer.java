@@ -0,0 +1,24 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import java.time.Duration;
+
+/**
+ * Runs tasks after a delay without dedicating a thread to every pending task
+ */
+public interface TaskTimer {
+
+    /**
+     * Runs the task not earlier than after the provided delay, non-positive delay runs it as soon as possible
+     */
+    Timeout schedule(Duration delay, Runnable task);
+
+    interface Timeout {
+
+        /**
+         * @return false if task has already been started or cancelled
+         */
+        boolean cancel();
+
+    }
+
+}
@@ -0,0 +1,15 @@
+package pragmasoft.andriilupynos.js_executioner.domain.exception;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+
+/**
+ * Thrown when a script could not be handled because of a failure of the service, such as of its storage,
+ * rather than of the script itself
+ */
+public class InternalScriptException extends ScriptException {
+
+    public InternalScriptException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
+}
@@ -0,0 +1,14 @@
+package pragmasoft.andriilupynos.js_executioner.domain.exception;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+
+/**
+ * Thrown by a running script which was stopped because it ran out of memory
+ */
+public class ScriptMemoryExceededException extends ScriptException {
+
+    public ScriptMemoryExceededException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,23 @@
+package pragmasoft.andriilupynos.js_executioner.domain.exception;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+
+import java.time.Duration;
+
+/**
+ * Thrown when execution can not be accepted because service is saturated
+ */
+public class ScriptRejectedException extends ScriptException {
+
+    /**
+     * Estimated time after which submission may be accepted
+     */
+    public final Duration retryAfter;
+
+    public ScriptRejectedException(String scriptName, int queueCapacity, Duration retryAfter) {
+        super("Execution of script " + scriptName + " was rejected: " +
+                "queue of " + queueCapacity + " executions is full");
+        this.retryAfter = retryAfter;
+    }
+
+}
@@ -0,0 +1,14 @@
+package pragmasoft.andriilupynos.js_executioner.domain.exception;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+
+/**
+ * Thrown by a running script which was stopped because it exceeded one of its limits
+ */
+public class ScriptTimedOutException extends ScriptException {
+
+    public ScriptTimedOutException(String msg) {
+        super(msg);
+    }
+
+}
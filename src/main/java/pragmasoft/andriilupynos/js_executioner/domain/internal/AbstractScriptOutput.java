@@ -0,0 +1,50 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base of script outputs, notifies write listeners after every write to the stream
+ */
+abstract class AbstractScriptOutput implements ScriptInfo.ScriptOutput {
+
+    private final List<Runnable> writeListeners = new CopyOnWriteArrayList<>();
+    private final OutputStream stream = new OutputStream() {
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            append(b, off, len);
+            for (var listener : writeListeners)
+                listener.run();
+        }
+
+    };
+
+    protected abstract void append(byte[] b, int off, int len) throws IOException;
+
+    @Override
+    public OutputStream asStream() {
+        return this.stream;
+    }
+
+    @Override
+    public void addWriteListener(Runnable listener) {
+        this.writeListeners.add(listener);
+    }
+
+    @Override
+    public void removeWriteListener(Runnable listener) {
+        this.writeListeners.remove(listener);
+    }
+
+}
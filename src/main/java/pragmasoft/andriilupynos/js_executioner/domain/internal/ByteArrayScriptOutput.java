@@ -1,21 +1,85 @@
 package pragmasoft.andriilupynos.js_executioner.domain.internal;
 
-import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
-
 import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps the whole output in memory
+ */
+public class ByteArrayScriptOutput extends AbstractScriptOutput {
+
+    private final Buffer outputStream = new Buffer();
+
+    @Override
+    protected void append(byte[] b, int off, int len) {
+        this.outputStream.write(b, off, len);
+    }
 
-public class ByteArrayScriptOutput implements ScriptInfo.ScriptOutput {
+    @Override
+    public long size() {
+        return this.outputStream.size();
+    }
+
+    @Override
+    public Chunk read(long offset, int maxBytes) {
+        return this.outputStream.read(offset, maxBytes);
+    }
 
-    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    /**
+     * Writes straight from the internal buffer, the script is not blocked while the channel is written
+     */
+    @Override
+    public long transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+        var buffer = this.outputStream.view(offset, length);
+        int transferred = buffer.remaining();
+        while (buffer.hasRemaining())
+            target.write(buffer);
+        return transferred;
+    }
 
+    /**
+     * Buffer grows by doubling, so up to a half of it is unused
+     */
     @Override
-    public OutputStream asStream() {
-        return this.outputStream;
+    public void seal() {
+        this.outputStream.trim();
     }
 
     @Override
     public String toString() {
-        return this.outputStream.toString();
+        return this.outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gives access to the internal buffer, so reading a range does not copy the whole output
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        synchronized Chunk read(long offset, int maxBytes) {
+            int from = (int) Math.min(Math.max(offset, 0), this.count);
+            int length = Math.min(Math.max(maxBytes, 0), this.count - from);
+            return new Chunk(from, Arrays.copyOfRange(this.buf, from, from + length));
+        }
+
+        /**
+         * Written bytes are never changed, and growing replaces the array instead of changing it,
+         * so the view stays valid after the lock is released
+         */
+        synchronized ByteBuffer view(long offset, long maxBytes) {
+            int from = (int) Math.min(Math.max(offset, 0), this.count);
+            int length = (int) Math.min(Math.max(maxBytes, 0), this.count - from);
+            return ByteBuffer.wrap(this.buf, from, length).asReadOnlyBuffer();
+        }
+
+        synchronized void trim() {
+            if (this.buf.length > this.count)
+                this.buf = Arrays.copyOf(this.buf, this.count);
+        }
+
     }
+
 }
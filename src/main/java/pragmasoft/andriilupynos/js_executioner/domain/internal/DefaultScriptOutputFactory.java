@@ -0,0 +1,65 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+
+import java.nio.file.Path;
+
+public class DefaultScriptOutputFactory implements ScriptOutputFactory {
+
+    private final ScriptOutputMode defaultMode;
+    private final int headSize;
+    private final int tailSize;
+    private final long spillThreshold;
+    private final long spillMaxSize;
+    private final Path spillDirectory;
+
+    /**
+     * @param defaultMode    mode of outputs of scripts that do not specify one
+     * @param headSize       bytes kept from the beginning of {@link ScriptOutputMode#HEAD_TAIL} output
+     * @param tailSize       bytes kept from the end of {@link ScriptOutputMode#HEAD_TAIL} output, must be positive
+     * @param spillThreshold bytes of {@link ScriptOutputMode#SPILL} output kept in memory
+     * @param spillMaxSize   bytes of {@link ScriptOutputMode#SPILL} output kept at all
+     */
+    public DefaultScriptOutputFactory(
+            ScriptOutputMode defaultMode,
+            int headSize,
+            int tailSize,
+            long spillThreshold,
+            long spillMaxSize,
+            Path spillDirectory
+    ) {
+        // Checked up front, so misconfiguration fails on startup instead of on the first script
+        if (headSize < 0)
+            throw new java.lang.IllegalArgumentException("Head size of head-tail output must not be negative");
+        if (tailSize <= 0)
+            throw new java.lang.IllegalArgumentException("Tail size of head-tail output must be positive");
+        if (spillThreshold < 0 || spillMaxSize < 0)
+            throw new java.lang.IllegalArgumentException("Sizes of spilling output must not be negative");
+        this.defaultMode = defaultMode != null ? defaultMode : ScriptOutputMode.UNBOUNDED;
+        this.headSize = headSize;
+        this.tailSize = tailSize;
+        this.spillThreshold = spillThreshold;
+        this.spillMaxSize = spillMaxSize;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public ScriptOutputMode defaultMode() {
+        return this.defaultMode;
+    }
+
+    @Override
+    public ScriptInfo.ScriptOutput create(ScriptOutputMode mode) {
+        switch (mode != null ? mode : this.defaultMode) {
+            case HEAD_TAIL:
+                return new HeadTailScriptOutput(this.headSize, this.tailSize);
+            case SPILL:
+                return new SpillingScriptOutput(this.spillThreshold, this.spillMaxSize, this.spillDirectory);
+            default:
+                return new ByteArrayScriptOutput();
+        }
+    }
+
+}
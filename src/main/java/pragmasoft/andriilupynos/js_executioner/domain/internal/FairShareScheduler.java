@@ -0,0 +1,344 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ExecutionOptions;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptScheduler;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptRejectedException;
+import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Passes at most {@code maxConcurrency} executions to the executor at a time, holding the rest.
+ * <p>
+ * Held executions are picked by priority class first. Every {@code agingInterval} of waiting promotes
+ * an execution by one class, so low priority executions are not starved. Inside a class executions
+ * are ordered by weighted fair queueing between submitters: each execution gets a virtual finish tag
+ * that grows by {@code 1 / weight} of its submitter, so a submitter with many queued executions
+ * can not delay executions of other submitters by more than its share.
+ * <p>
+ * At most {@code queueCapacity} executions are held, further submissions are rejected
+ * instead of growing the queue without bound.
+ */
+public class FairShareScheduler implements ScriptScheduler {
+
+    private static final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final Duration RANKING_TTL = Duration.ofMillis(100);
+    private static final Comparator<Queued> BY_TAG =
+            Comparator.<Queued>comparingDouble(q -> q.tag).thenComparingLong(q -> q.seq);
+
+    private final Logger log = LoggerFactory.getLogger(FairShareScheduler.class);
+
+    private final ExecutorService executor;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final long agingNanos;
+    private final Map<String, Integer> weights;
+
+    private final Object lock = new Object();
+    @SuppressWarnings("unchecked")
+    private final PriorityQueue<Queued>[] classes = new PriorityQueue[ExecutionOptions.Priority.values().length];
+    private final Map<ScriptExecution, Queued> queued = new IdentityHashMap<>();
+    private final Map<String, Double> lastTags = new HashMap<>();
+    private double virtualTime = 0;
+    private long seq = 0;
+    private int running = 0;
+    private double averageExecutionNanos = Double.NaN;
+    private long rejected = 0;
+    // Queued executions in the order of start, used to answer queue positions
+    private Queued[] ranked = new Queued[0];
+    private long rankedNanos = 0;
+
+    public FairShareScheduler(
+            ExecutorService executor,
+            int maxConcurrency,
+            Duration agingInterval,
+            Map<String, Integer> weights
+    ) {
+        this(executor, maxConcurrency, Integer.MAX_VALUE, agingInterval, weights);
+    }
+
+    /**
+     * @param queueCapacity maximum number of executions waiting to be started
+     * @param agingInterval waiting time after which execution is promoted to the next priority class,
+     *                      zero disables aging
+     * @param weights       weights of submitters, submitters that are not present have weight 1
+     */
+    public FairShareScheduler(
+            ExecutorService executor,
+            int maxConcurrency,
+            int queueCapacity,
+            Duration agingInterval,
+            Map<String, Integer> weights
+    ) {
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.agingNanos = agingInterval.toNanos();
+        this.weights = Map.copyOf(weights);
+        for (int i = 0; i < this.classes.length; i++)
+            this.classes[i] = new PriorityQueue<>(BY_TAG);
+    }
+
+    @Override
+    public void submit(ScriptExecution execution, ExecutionOptions options) {
+        synchronized (this.lock) {
+            this.enqueue(execution, options);
+        }
+        this.dispatch();
+    }
+
+    /**
+     * Whole group is queued under one lock and dispatched once, so workers start on it only after it is queued
+     * and executions of the group are ordered by priority and fair share among themselves
+     */
+    @Override
+    public Map<ScriptExecution, ScriptException> submitAll(Map<ScriptExecution, ExecutionOptions> executions) {
+        var rejected = new LinkedHashMap<ScriptExecution, ScriptException>();
+        synchronized (this.lock) {
+            executions.forEach((execution, options) -> {
+                try {
+                    this.enqueue(execution, options);
+                } catch (ScriptRejectedException e) {
+                    rejected.put(execution, e);
+                }
+            });
+        }
+        this.dispatch();
+        return rejected;
+    }
+
+    /**
+     * Whole queue is ranked at once and the ranking is reused for {@link #RANKING_TTL}, so clients polling
+     * their executions do not scan the queue on every request. Position may therefore include executions
+     * that were started within that time, executions queued after the ranking are placed by binary search.
+     */
+    @Override
+    public Optional<Integer> queuePositionOf(ScriptExecution execution) {
+        synchronized (this.lock) {
+            var target = this.queued.get(execution);
+            if (target == null || execution.isDone())
+                return Optional.empty();
+
+            long now = System.nanoTime();
+            if (now - this.rankedNanos > RANKING_TTL.toNanos() || this.ranked.length == 0) {
+                this.ranked = this.queued.values().stream()
+                        .filter(item -> !item.execution.isDone())
+                        .sorted(this.orderAt(now))
+                        .toArray(Queued[]::new);
+                this.rankedNanos = now;
+            }
+            int index = Arrays.binarySearch(this.ranked, target, this.orderAt(this.rankedNanos));
+            return Optional.of(index >= 0 ? index : -index - 1);
+        }
+    }
+
+    @Override
+    public Optional<Instant> estimatedStartOf(ScriptExecution execution) {
+        int running;
+        double average;
+        synchronized (this.lock) {
+            running = this.running;
+            average = this.averageExecutionNanos;
+        }
+        return this.queuePositionOf(execution).flatMap(position -> {
+            // Number of full rounds of workers that have to finish before the execution starts
+            long rounds = (running + position) / this.maxConcurrency;
+            if (rounds == 0)
+                return Optional.of(Instant.now(CurrentClock.get()));
+            if (Double.isNaN(average))
+                return Optional.empty();
+            return Optional.of(Instant.now(CurrentClock.get()).plusNanos((long) (rounds * average)));
+        });
+    }
+
+    public int getQueuedCount() {
+        synchronized (this.lock) {
+            return this.queued.size();
+        }
+    }
+
+    public int getRunningCount() {
+        synchronized (this.lock) {
+            return this.running;
+        }
+    }
+
+    public long getRejectedCount() {
+        synchronized (this.lock) {
+            return this.rejected;
+        }
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    private void enqueue(ScriptExecution execution, ExecutionOptions options) {
+        if (this.queued.size() >= this.queueCapacity && this.purgeDone() >= this.queueCapacity) {
+            this.rejected++;
+            throw new ScriptRejectedException(execution.getScriptName(), this.queueCapacity, this.retryAfter());
+        }
+
+        var submitter = options.submitter != null ? options.submitter : "";
+        var weight = Math.max(this.weights.getOrDefault(submitter, 1), 1);
+        var tag = Math.max(this.lastTags.getOrDefault(submitter, 0d), this.virtualTime) + 1d / weight;
+        this.lastTags.put(submitter, tag);
+
+        var item = new Queued(execution, options.priority.ordinal(), submitter, tag, this.seq++);
+        this.classes[item.priority].add(item);
+        this.queued.put(execution, item);
+    }
+
+    /**
+     * Removes executions that were cancelled while waiting, they are otherwise dropped only when reaching the head
+     *
+     * @return number of executions left in the queue
+     */
+    private int purgeDone() {
+        for (var queue : this.classes)
+            queue.removeIf(item -> item.execution.isDone());
+        this.queued.values().removeIf(item -> item.execution.isDone());
+        return this.queued.size();
+    }
+
+    /**
+     * Time in which a worker is expected to free up, but not less than a second to not be flooded by retries
+     */
+    private Duration retryAfter() {
+        if (Double.isNaN(this.averageExecutionNanos))
+            return MIN_RETRY_AFTER;
+        var average = Duration.ofNanos((long) this.averageExecutionNanos);
+        return average.compareTo(MIN_RETRY_AFTER) > 0 ? average : MIN_RETRY_AFTER;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Queued next;
+            synchronized (this.lock) {
+                if (this.running >= this.maxConcurrency)
+                    return;
+                next = this.pollNext();
+                if (next == null)
+                    return;
+                this.running++;
+            }
+            try {
+                this.executor.execute(() -> this.runAndRelease(next));
+            } catch (RejectedExecutionException e) {
+                synchronized (this.lock) {
+                    this.running--;
+                }
+                log.warn("Executor rejected execution of script {}", next.execution.getScriptName(), e);
+                next.execution.reject("Script could not be started: executor rejected it");
+            }
+        }
+    }
+
+    private void runAndRelease(Queued item) {
+        long start = System.nanoTime();
+        try {
+            item.execution.run();
+        } finally {
+            long duration = System.nanoTime() - start;
+            synchronized (this.lock) {
+                this.running--;
+                this.averageExecutionNanos = Double.isNaN(this.averageExecutionNanos)
+                        ? duration
+                        : 0.8 * this.averageExecutionNanos + 0.2 * duration;
+            }
+            this.dispatch();
+        }
+    }
+
+    private Queued pollNext() {
+        long now = System.nanoTime();
+        Queued best = null;
+        for (var queue : this.classes) {
+            var head = this.headOf(queue);
+            if (head != null && (best == null || this.isBefore(head, best, now)))
+                best = head;
+        }
+        if (best == null)
+            return null;
+
+        this.classes[best.priority].poll();
+        this.queued.remove(best.execution);
+        if (this.queued.isEmpty())
+            this.ranked = new Queued[0];
+        this.virtualTime = Math.max(this.virtualTime, best.tag);
+        // Submitter has nothing queued after this execution, so there is no need to remember it
+        var lastTag = this.lastTags.get(best.submitter);
+        if (lastTag != null && lastTag == best.tag)
+            this.lastTags.remove(best.submitter);
+        return best;
+    }
+
+    /**
+     * Head of the queue skipping executions that were cancelled while waiting
+     */
+    private Queued headOf(PriorityQueue<Queued> queue) {
+        var head = queue.peek();
+        while (head != null && head.execution.isDone()) {
+            queue.poll();
+            this.queued.remove(head.execution);
+            head = queue.peek();
+        }
+        return head;
+    }
+
+    /**
+     * Order in which executions would be started at the provided time, the first one goes first
+     */
+    private Comparator<Queued> orderAt(long now) {
+        return Comparator.<Queued>comparingLong(item -> -this.levelOf(item, now)).thenComparing(BY_TAG);
+    }
+
+    private boolean isBefore(Queued a, Queued b, long now) {
+        long levelA = this.levelOf(a, now);
+        long levelB = this.levelOf(b, now);
+        if (levelA != levelB)
+            return levelA > levelB;
+        return BY_TAG.compare(a, b) < 0;
+    }
+
+    private long levelOf(Queued item, long now) {
+        if (this.agingNanos <= 0)
+            return item.priority;
+        return item.priority + (now - item.enqueuedNanos) / this.agingNanos;
+    }
+
+    private static class Queued {
+
+        final ScriptExecution execution;
+        final int priority;
+        final String submitter;
+        final double tag;
+        final long seq;
+        final long enqueuedNanos = System.nanoTime();
+
+        Queued(ScriptExecution execution, int priority, String submitter, double tag, long seq) {
+            this.execution = execution;
+            this.priority = priority;
+            this.submitter = submitter;
+            this.tag = tag;
+            this.seq = seq;
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps the first {@code headSize} and the last {@code tailSize} bytes of the output, dropping the middle.
+ * Memory taken by the output does not depend on how much the script writes beyond the two sizes.
+ * <p>
+ * Tail is a ring buffer: byte at position {@code p} of the output is kept at {@code (p - headSize) % tailSize}
+ * until it is overwritten by a byte written {@code tailSize} bytes later. Buffers grow with the output up to
+ * their sizes, the tail does not wrap before it reaches its size. Sealed output keeps only written bytes,
+ * with the tail unrolled, so byte at position {@code p} of the tail is kept at {@code p - tailStart}.
+ */
+public class HeadTailScriptOutput extends AbstractScriptOutput {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int headSize;
+    private final int tailSize;
+    private byte[] head = EMPTY;
+    private byte[] tail = EMPTY;
+    private long size = 0;
+    private boolean sealed = false;
+
+    /**
+     * @param headSize bytes kept from the beginning of the output, may be zero
+     * @param tailSize bytes kept from the end of the output, must be positive
+     */
+    public HeadTailScriptOutput(int headSize, int tailSize) {
+        if (headSize < 0)
+            throw new java.lang.IllegalArgumentException("headSize must not be negative");
+        if (tailSize <= 0)
+            throw new java.lang.IllegalArgumentException("tailSize must be positive");
+        this.headSize = headSize;
+        this.tailSize = tailSize;
+    }
+
+    /**
+     * Writes to a sealed output are dropped
+     */
+    @Override
+    protected synchronized void append(byte[] b, int off, int len) {
+        if (this.sealed)
+            return;
+        int toHead = (int) Math.min(len, this.headSize - Math.min(this.size, this.headSize));
+        if (toHead > 0) {
+            this.head = grow(this.head, (int) this.size + toHead, this.headSize);
+            System.arraycopy(b, off, this.head, (int) this.size, toHead);
+            this.size += toHead;
+            off += toHead;
+            len -= toHead;
+        }
+        if (len > this.tailSize) {
+            // Only the last bytes would survive in the tail anyway
+            this.size += len - this.tailSize;
+            off += len - this.tailSize;
+            len = this.tailSize;
+        }
+        if (len == 0)
+            return;
+
+        // Tail that has not wrapped yet holds bytes from its start, so only the written part is needed
+        this.tail = grow(this.tail, (int) Math.min(this.size - this.headSize + len, this.tailSize), this.tailSize);
+        int position = this.tailIndexOf(this.size);
+        int first = Math.min(len, this.tail.length - position);
+        System.arraycopy(b, off, this.tail, position, first);
+        System.arraycopy(b, off + first, this.tail, 0, len - first);
+        this.size += len;
+    }
+
+    @Override
+    public synchronized long size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized long truncatedBytes() {
+        return Math.max(0, this.size - this.headSize - this.tailSize);
+    }
+
+    @Override
+    public synchronized long keptFrom(long offset) {
+        return offset < Math.min(this.size, this.headSize) ? offset : Math.max(offset, this.tailStart());
+    }
+
+    @Override
+    public synchronized long keptUntil(long offset) {
+        long headEnd = Math.min(this.size, this.headSize);
+        return offset < headEnd && this.tailStart() > headEnd ? headEnd : this.size;
+    }
+
+    /**
+     * Sealing shrinks buffers to the bytes that were written
+     */
+    @Override
+    public synchronized void seal() {
+        if (this.sealed)
+            return;
+        long tailStart = this.tailStart();
+        var tail = this.copyTail(tailStart, (int) (this.size - tailStart));
+        this.head = Arrays.copyOf(this.head, (int) Math.min(this.size, this.headSize));
+        this.tail = tail;
+        this.sealed = true;
+    }
+
+    /**
+     * Bytes that were dropped are skipped, so returned chunk may start after the requested offset
+     */
+    @Override
+    public synchronized Chunk read(long offset, int maxBytes) {
+        offset = Math.max(offset, 0);
+        long headEnd = Math.min(this.size, this.headSize);
+        if (offset < headEnd) {
+            int length = (int) Math.min(Math.max(maxBytes, 0), headEnd - offset);
+            var bytes = new byte[length];
+            System.arraycopy(this.head, (int) offset, bytes, 0, length);
+            return new Chunk(offset, bytes);
+        }
+
+        long from = Math.min(Math.max(offset, this.tailStart()), this.size);
+        int length = (int) Math.min(Math.max(maxBytes, 0), this.size - from);
+        return new Chunk(from, this.copyTail(from, length));
+    }
+
+    @Override
+    public synchronized String toString() {
+        var result = new ByteArrayOutputStream((int) Math.min(this.size, (long) this.headSize + this.tailSize));
+        result.write(this.head, 0, (int) Math.min(this.size, this.headSize));
+        long tailStart = this.tailStart();
+        result.writeBytes(this.copyTail(tailStart, (int) (this.size - tailStart)));
+        return result.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Position of the first byte kept in the tail, output size if tail is empty
+     */
+    private long tailStart() {
+        return Math.min(this.size, Math.max(this.headSize, this.size - this.tailSize));
+    }
+
+    private byte[] copyTail(long from, int length) {
+        var bytes = new byte[length];
+        if (length == 0)
+            return bytes;
+        int position = this.tailIndexOf(from);
+        int first = Math.min(length, this.tail.length - position);
+        System.arraycopy(this.tail, position, bytes, 0, first);
+        System.arraycopy(this.tail, 0, bytes, first, length - first);
+        return bytes;
+    }
+
+    /**
+     * Buffer of at least the required length, doubled to amortize copying but never longer than the maximum
+     */
+    private static byte[] grow(byte[] buffer, int required, int max) {
+        if (buffer.length >= required)
+            return buffer;
+        int capacity = (int) Math.min(Math.max((long) buffer.length * 2, Math.max(required, INITIAL_CAPACITY)), max);
+        return Arrays.copyOf(buffer, capacity);
+    }
+
+    private int tailIndexOf(long position) {
+        if (this.sealed)
+            return (int) (position - this.tailStart());
+        return (int) ((position - this.headSize) % this.tailSize);
+    }
+
+}
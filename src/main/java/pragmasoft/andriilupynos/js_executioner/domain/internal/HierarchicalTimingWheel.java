@@ -0,0 +1,280 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import pragmasoft.andriilupynos.js_executioner.domain.TaskTimer;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Timer based on hierarchical timing wheels.
+ * <p>
+ * Adding and cancelling a task costs O(1) regardless of number of pending tasks. Only buckets that
+ * contain tasks are put into a delay queue, so a single thread sleeps until the nearest non-empty bucket
+ * expires instead of ticking on every {@code tick}. Tasks whose delay exceeds the range of a wheel are kept
+ * in coarser overflow wheels and move down to finer ones as time passes. Expired tasks are run on the
+ * provided executor, so slow tasks do not delay the timer.
+ */
+public class HierarchicalTimingWheel implements TaskTimer, AutoCloseable {
+
+    private final ExecutorService taskExecutor;
+    private final long tickMs;
+    private final DelayQueue<Bucket> delayQueue = new DelayQueue<>();
+    private final Wheel wheel;
+    // Adding tasks and advancing the clock must not interleave, otherwise a task may get into a stale bucket
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Thread reaper;
+    private volatile boolean closed = false;
+
+    /**
+     * @param tick      precision of the timer
+     * @param wheelSize number of buckets of every wheel
+     */
+    public HierarchicalTimingWheel(Duration tick, int wheelSize, ExecutorService taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        this.tickMs = Math.max(tick.toMillis(), 1);
+        this.wheel = new Wheel(this.tickMs, wheelSize, nowMs(), this.delayQueue);
+        this.reaper = new Thread(this::advanceWhileOpen, "timing-wheel-reaper");
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    @Override
+    public Timeout schedule(Duration delay, Runnable task) {
+        // Expiration is rounded up to the tick, so that buckets which expire at the start of the tick
+        // never run a task earlier than requested
+        long delayMs = Math.max(TimeUnit.NANOSECONDS.toMillis(delay.toNanos() + 999_999), 0);
+        long expirationMs = nowMs() + delayMs;
+        expirationMs = (expirationMs + this.tickMs - 1) / this.tickMs * this.tickMs;
+        var entry = new Entry(task, expirationMs);
+        this.lock.readLock().lock();
+        try {
+            this.addOrRun(entry);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return entry;
+    }
+
+    /**
+     * Stops the timer, pending tasks are dropped
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.reaper.interrupt();
+        this.taskExecutor.shutdownNow();
+    }
+
+    private void advanceWhileOpen() {
+        while (!this.closed) {
+            try {
+                var bucket = this.delayQueue.take();
+                this.lock.writeLock().lock();
+                try {
+                    while (bucket != null) {
+                        this.wheel.advanceClock(bucket.getExpiration());
+                        // Tasks are either run or moved down to a finer wheel
+                        bucket.flush(this::addOrRun);
+                        bucket = this.delayQueue.poll();
+                    }
+                } finally {
+                    this.lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void addOrRun(Entry entry) {
+        if (!this.wheel.add(entry) && entry.start()) {
+            try {
+                this.taskExecutor.execute(entry.task);
+            } catch (RejectedExecutionException ignored) { /* Timer is closed */ }
+        }
+    }
+
+    private static long nowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static class Wheel {
+
+        private final long tickMs;
+        private final int wheelSize;
+        private final long intervalMs;
+        private final Bucket[] buckets;
+        private final DelayQueue<Bucket> delayQueue;
+        private long currentTimeMs;
+        private volatile Wheel overflowWheel;
+
+        Wheel(long tickMs, int wheelSize, long startMs, DelayQueue<Bucket> delayQueue) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.intervalMs = tickMs * wheelSize;
+            this.delayQueue = delayQueue;
+            this.currentTimeMs = startMs - (startMs % tickMs);
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++)
+                this.buckets[i] = new Bucket();
+        }
+
+        /**
+         * @return false if entry is already due or cancelled
+         */
+        boolean add(Entry entry) {
+            long expiration = entry.expirationMs;
+            if (entry.isCancelled()) {
+                return false;
+            } else if (expiration < this.currentTimeMs + this.tickMs) {
+                return false;
+            } else if (expiration < this.currentTimeMs + this.intervalMs) {
+                long virtualId = expiration / this.tickMs;
+                var bucket = this.buckets[(int) (virtualId % this.wheelSize)];
+                bucket.add(entry);
+                // Bucket is reused for the next round of the wheel, so it has to be queued again
+                if (bucket.setExpiration(virtualId * this.tickMs))
+                    this.delayQueue.offer(bucket);
+                return true;
+            } else {
+                return this.overflowWheel().add(entry);
+            }
+        }
+
+        void advanceClock(long timeMs) {
+            if (timeMs >= this.currentTimeMs + this.tickMs) {
+                this.currentTimeMs = timeMs - (timeMs % this.tickMs);
+                var overflow = this.overflowWheel;
+                if (overflow != null)
+                    overflow.advanceClock(this.currentTimeMs);
+            }
+        }
+
+        private Wheel overflowWheel() {
+            if (this.overflowWheel == null) {
+                synchronized (this) {
+                    if (this.overflowWheel == null)
+                        this.overflowWheel = new Wheel(this.intervalMs, this.wheelSize, this.currentTimeMs, this.delayQueue);
+                }
+            }
+            return this.overflowWheel;
+        }
+
+    }
+
+    private static class Bucket implements Delayed {
+
+        private final AtomicLong expirationMs = new AtomicLong(-1);
+        // Sentinel of a circular doubly linked list
+        private final Entry root = new Entry(null, -1);
+
+        Bucket() {
+            this.root.next = this.root;
+            this.root.prev = this.root;
+        }
+
+        synchronized void add(Entry entry) {
+            entry.bucket = this;
+            entry.next = this.root;
+            entry.prev = this.root.prev;
+            this.root.prev.next = entry;
+            this.root.prev = entry;
+        }
+
+        synchronized void remove(Entry entry) {
+            if (entry.bucket != this)
+                return;
+            entry.next.prev = entry.prev;
+            entry.prev.next = entry.next;
+            entry.next = null;
+            entry.prev = null;
+            entry.bucket = null;
+        }
+
+        synchronized void flush(Consumer<Entry> consumer) {
+            var entry = this.root.next;
+            while (entry != this.root) {
+                var next = entry.next;
+                this.remove(entry);
+                consumer.accept(entry);
+                entry = next;
+            }
+            this.expirationMs.set(-1);
+        }
+
+        /**
+         * @return true if expiration has changed
+         */
+        boolean setExpiration(long expirationMs) {
+            return this.expirationMs.getAndSet(expirationMs) != expirationMs;
+        }
+
+        long getExpiration() {
+            return this.expirationMs.get();
+        }
+
+        @Override
+        public long getDelay(@Nonnull TimeUnit unit) {
+            return unit.convert(Math.max(this.getExpiration() - nowMs(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(@Nonnull Delayed other) {
+            return Long.compare(this.getExpiration(), ((Bucket) other).getExpiration());
+        }
+
+    }
+
+    private static class Entry implements Timeout {
+
+        final Runnable task;
+        final long expirationMs;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        // Guarded by the bucket
+        Bucket bucket;
+        Entry next;
+        Entry prev;
+
+        Entry(Runnable task, long expirationMs) {
+            this.task = task;
+            this.expirationMs = expirationMs;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!this.done.compareAndSet(false, true))
+                return false;
+            // Entry may be moved to another bucket concurrently, so removal is retried until it is detached
+            var current = this.bucket;
+            while (current != null) {
+                current.remove(this);
+                current = this.bucket;
+            }
+            return true;
+        }
+
+        boolean isCancelled() {
+            return this.done.get();
+        }
+
+        /**
+         * @return false if entry was cancelled
+         */
+        boolean start() {
+            return this.done.compareAndSet(false, true);
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps output in fixed-size heap segments up to {@code memoryThreshold} bytes, the rest is written
+ * to memory-mapped regions of a temporary file. Growing the output never copies already written bytes,
+ * and only the threshold is taken from the heap. Bytes above {@code maxSize} are dropped.
+ */
+public class SpillingScriptOutput extends AbstractScriptOutput {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int REGION_SIZE = 8 * 1024 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(SpillingScriptOutput.class);
+
+    private final long memoryCapacity;
+    private final long maxSize;
+    private final Path directory;
+
+    private final List<byte[]> segments = new ArrayList<>();
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private FileChannel file = null;
+    private Path path = null;
+    private long size = 0;
+    private long truncated = 0;
+    private boolean closed = false;
+    private boolean sealed = false;
+
+    /**
+     * @param directory directory of the temporary file, it is created only when output exceeds the threshold
+     */
+    public SpillingScriptOutput(long memoryThreshold, long maxSize, Path directory) {
+        // Threshold is rounded up to whole segments
+        this.memoryCapacity = (memoryThreshold + SEGMENT_SIZE - 1) / SEGMENT_SIZE * SEGMENT_SIZE;
+        this.maxSize = maxSize;
+        this.directory = directory;
+    }
+
+    /**
+     * Writes to a sealed output are dropped
+     */
+    @Override
+    protected synchronized void append(byte[] b, int off, int len) throws IOException {
+        if (this.closed || this.sealed)
+            return;
+        int writable = (int) Math.min(len, Math.max(this.maxSize - this.size, 0));
+        this.truncated += len - writable;
+        while (writable > 0) {
+            int written = this.writeAt(this.size, b, off, writable);
+            this.size += written;
+            off += written;
+            writable -= written;
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized long truncatedBytes() {
+        return this.truncated;
+    }
+
+    @Override
+    public synchronized Chunk read(long offset, int maxBytes) {
+        long from = Math.min(Math.max(offset, 0), this.size);
+        if (this.closed)
+            return new Chunk(from, new byte[0]);
+        int length = (int) Math.min(Math.max(maxBytes, 0), this.size - from);
+        var bytes = new byte[length];
+        int copied = 0;
+        while (copied < length)
+            copied += this.readAt(from + copied, bytes, copied, length - copied);
+        return new Chunk(from, bytes);
+    }
+
+    /**
+     * Writes straight from heap segments and mapped regions, the script is not blocked while the channel is written
+     */
+    @Override
+    public long transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+        var views = this.views(offset, length);
+        long transferred = 0;
+        for (var view : views) {
+            transferred += view.remaining();
+            while (view.hasRemaining())
+                target.write(view);
+        }
+        return transferred;
+    }
+
+    /**
+     * Last heap segment is trimmed to the written bytes, so short outputs do not hold a whole segment
+     */
+    @Override
+    public synchronized void seal() {
+        if (this.sealed || this.closed)
+            return;
+        this.sealed = true;
+        if (this.size == 0 || this.size >= this.memoryCapacity)
+            return;
+        int last = (int) ((this.size - 1) / SEGMENT_SIZE);
+        int used = (int) (this.size - (long) last * SEGMENT_SIZE);
+        this.segments.set(last, Arrays.copyOf(this.segments.get(last), used));
+    }
+
+    /**
+     * Releases the temporary file, output can not be read afterwards
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.segments.clear();
+        // Mapped regions are unmapped by GC, file is already deleted by then
+        this.regions.clear();
+        if (this.file != null) {
+            try {
+                this.file.close();
+                Files.deleteIfExists(this.path);
+            } catch (IOException e) {
+                log.warn("Failed to delete spilled output {}", this.path, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        var result = new ByteArrayOutputStream((int) Math.min(this.size, Integer.MAX_VALUE - 8));
+        long position = 0;
+        while (position < this.size) {
+            var chunk = this.read(position, SEGMENT_SIZE);
+            result.writeBytes(chunk.bytes);
+            position += chunk.bytes.length;
+        }
+        return result.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Written bytes are never changed, so views stay valid after the lock is released
+     */
+    private synchronized List<ByteBuffer> views(long offset, long length) {
+        var views = new ArrayList<ByteBuffer>();
+        if (this.closed)
+            return views;
+        long position = Math.min(Math.max(offset, 0), this.size);
+        long end = position + Math.min(Math.max(length, 0), this.size - position);
+        while (position < end) {
+            ByteBuffer view;
+            if (position < this.memoryCapacity) {
+                int inSegment = (int) (position % SEGMENT_SIZE);
+                int count = (int) Math.min(end - position, SEGMENT_SIZE - inSegment);
+                view = ByteBuffer.wrap(this.segments.get((int) (position / SEGMENT_SIZE)), inSegment, count);
+            } else {
+                long filePosition = position - this.memoryCapacity;
+                int inRegion = (int) (filePosition % REGION_SIZE);
+                int count = (int) Math.min(end - position, REGION_SIZE - inRegion);
+                view = this.regions.get((int) (filePosition / REGION_SIZE)).duplicate();
+                view.position(inRegion).limit(inRegion + count);
+            }
+            views.add(view.asReadOnlyBuffer());
+            position += view.remaining();
+        }
+        return views;
+    }
+
+    /**
+     * @return number of bytes written, they never cross a segment or region boundary
+     */
+    private int writeAt(long position, byte[] b, int off, int len) throws IOException {
+        if (position < this.memoryCapacity) {
+            int index = (int) (position / SEGMENT_SIZE);
+            if (index == this.segments.size())
+                this.segments.add(new byte[SEGMENT_SIZE]);
+            int inSegment = (int) (position % SEGMENT_SIZE);
+            int count = Math.min(len, SEGMENT_SIZE - inSegment);
+            System.arraycopy(b, off, this.segments.get(index), inSegment, count);
+            return count;
+        }
+
+        long filePosition = position - this.memoryCapacity;
+        int index = (int) (filePosition / REGION_SIZE);
+        if (index == this.regions.size())
+            this.regions.add(this.mapRegion(index));
+        int inRegion = (int) (filePosition % REGION_SIZE);
+        int count = Math.min(len, REGION_SIZE - inRegion);
+        this.regions.get(index).duplicate().position(inRegion).put(b, off, count);
+        return count;
+    }
+
+    private int readAt(long position, byte[] bytes, int off, int len) {
+        if (position < this.memoryCapacity) {
+            int inSegment = (int) (position % SEGMENT_SIZE);
+            int count = Math.min(len, SEGMENT_SIZE - inSegment);
+            System.arraycopy(this.segments.get((int) (position / SEGMENT_SIZE)), inSegment, bytes, off, count);
+            return count;
+        }
+
+        long filePosition = position - this.memoryCapacity;
+        int inRegion = (int) (filePosition % REGION_SIZE);
+        int count = Math.min(len, REGION_SIZE - inRegion);
+        this.regions.get((int) (filePosition / REGION_SIZE)).duplicate().position(inRegion).get(bytes, off, count);
+        return count;
+    }
+
+    private MappedByteBuffer mapRegion(int index) throws IOException {
+        if (this.file == null) {
+            this.path = Files.createTempFile(this.directory, "script-output-", ".bin");
+            this.file = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return this.file.map(FileChannel.MapMode.READ_WRITE, (long) index * REGION_SIZE, REGION_SIZE);
+    }
+
+}
@@ -0,0 +1,117 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Output of a finished script stored in a file. Nothing is written to it anymore, and the file is opened
+ * only while it is read, so stored outputs take neither heap nor file descriptors.
+ */
+public class FileScriptOutput implements ScriptInfo.ScriptOutput {
+
+    private final Path path;
+    private final long size;
+    private final long truncated;
+
+    public FileScriptOutput(Path path, long size, long truncated) {
+        this.path = path;
+        this.size = size;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Writes kept bytes of the output to the file without syncing it, so that syncs of several files can be
+     * done together, e.g. by {@link SegmentLog#put(String, byte[], java.util.Collection)}
+     */
+    public static FileScriptOutput write(ScriptInfo.ScriptOutput output, Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long written = output.transferTo(0, output.size(), channel);
+            // Bytes missing from the file are exactly the dropped ones, whether output counts them in its size or not
+            return new FileScriptOutput(path, written, output.truncatedBytes());
+        }
+    }
+
+    @Override
+    public OutputStream asStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public long truncatedBytes() {
+        return this.truncated;
+    }
+
+    @Override
+    public Chunk read(long offset, int maxBytes) {
+        long from = Math.min(Math.max(offset, 0), this.size);
+        var buffer = ByteBuffer.allocate((int) Math.min(Math.max(maxBytes, 0), this.size - from));
+        try (var channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0) {
+                // Reading until the buffer is full
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // File shorter than when it was written yields only the bytes it still has
+        if (buffer.hasRemaining())
+            return new Chunk(from, Arrays.copyOf(buffer.array(), buffer.position()));
+        return new Chunk(from, buffer.array());
+    }
+
+    /**
+     * Bytes go from the file straight to the channel, which is done by the kernel if channel is a socket
+     */
+    @Override
+    public long transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+        long from = Math.min(Math.max(offset, 0), this.size);
+        long count = Math.min(Math.max(length, 0), this.size - from);
+        long transferred = 0;
+        try (var channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            while (transferred < count) {
+                long sent = channel.transferTo(from + transferred, count - transferred, target);
+                // Nothing is transferred only past the end of file, which is then shorter than when it was written
+                if (sent == 0)
+                    throw new EOFException("Output file " + this.path + " ends before its size " + this.size);
+                transferred += sent;
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public void addWriteListener(Runnable listener) {
+        // Nothing is written anymore
+    }
+
+    @Override
+    public void removeWriteListener(Runnable listener) {
+        // Nothing is written anymore
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new String(Files.readAllBytes(this.path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.ResourceLimits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-created and pre-initialized JS contexts bound to one shared engine.
+ * <p>
+ * Global scope of a JS context can not be cleanly reset after a script was run in it,
+ * so contexts are never returned to the pool: each checked out context is discarded when
+ * its script is closed, and the pool is refilled in background up to {@code minIdle} contexts.
+ * <p>
+ * Resource limits of a context are fixed when it is built, so pooled contexts have the default statement
+ * limit and a script requiring another limit gets a dedicated context built on checkout.
+ */
+public class GraalJSContextPool implements AutoCloseable {
+
+    private static final String LANGUAGE = "js";
+
+    private final Logger log = LoggerFactory.getLogger(GraalJSContextPool.class);
+
+    private final Engine engine;
+    private final int minIdle;
+    private final int maxIdle;
+    private final Duration idleTimeout;
+    private final long defaultStatementLimit;
+
+    // Most recently created contexts are at the head, the oldest ones are evicted from the tail
+    private final BlockingDeque<PooledContext> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger pendingRefills = new AtomicInteger();
+    private final ScheduledExecutorService maintenance;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter dedicated;
+    private final Timer checkoutTimer;
+
+    public GraalJSContextPool(
+            Engine engine,
+            int minIdle,
+            int maxIdle,
+            Duration idleTimeout,
+            long defaultStatementLimit,
+            MeterRegistry meterRegistry
+    ) {
+        if (minIdle < 0 || maxIdle < minIdle)
+            throw new IllegalArgumentException(
+                    "Context pool requires 0 <= minIdle <= maxIdle, got " + minIdle + " and " + maxIdle);
+
+        this.engine = engine;
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+        this.defaultStatementLimit = Math.max(defaultStatementLimit, 0);
+
+        this.hits = Counter.builder("scripts.context.pool.checkouts")
+                .description("Checkouts of JS contexts from the pool")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("scripts.context.pool.checkouts")
+                .description("Checkouts of JS contexts from the pool")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.dedicated = Counter.builder("scripts.context.pool.checkouts")
+                .description("Checkouts of JS contexts from the pool")
+                .tag("result", "dedicated")
+                .register(meterRegistry);
+        this.checkoutTimer = Timer.builder("scripts.context.pool.checkout.wait")
+                .description("Time spent obtaining a JS context, including creation on pool miss")
+                .register(meterRegistry);
+        meterRegistry.gauge("scripts.context.pool.idle", this.idle, BlockingDeque::size);
+
+        var executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            var thread = new Thread(runnable, "js-context-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.maintenance = executor;
+
+        this.refill();
+        if (!idleTimeout.isZero() && !idleTimeout.isNegative()) {
+            long period = Math.max(idleTimeout.toMillis() / 2, 1);
+            this.maintenance.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a ready context with the default statement limit from the pool or creates a new one if the pool is empty.
+     * Output of the returned context is written to the provided streams.
+     */
+    public PooledContext checkout(OutputStream out, OutputStream err) {
+        return this.checkout(out, err, this.defaultStatementLimit);
+    }
+
+    /**
+     * @param statementLimit number of statements context is allowed to execute, non-positive for no limit
+     */
+    public PooledContext checkout(OutputStream out, OutputStream err, long statementLimit) {
+        long start = System.nanoTime();
+        PooledContext pooled;
+        if (Math.max(statementLimit, 0) != this.defaultStatementLimit) {
+            this.dedicated.increment();
+            pooled = this.createContext(statementLimit);
+        } else if ((pooled = this.idle.pollFirst()) != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+            pooled = this.createContext(this.defaultStatementLimit);
+        }
+        this.checkoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        pooled.out.bind(out);
+        pooled.err.bind(err);
+        this.refill();
+        return pooled;
+    }
+
+    /**
+     * Gives back a context that was used only to parse code. Such context has not run anything, so it is
+     * kept for the next checkout unless the pool is full or the context has a dedicated statement limit.
+     */
+    public void release(PooledContext pooled) {
+        pooled.out.bind(OutputStream.nullOutputStream());
+        pooled.err.bind(OutputStream.nullOutputStream());
+        if (pooled.statementLimit == this.defaultStatementLimit && this.idle.size() < this.maxIdle)
+            this.idle.offerFirst(pooled);
+        else
+            pooled.close();
+    }
+
+    /**
+     * Closes all idle contexts and the shared engine, cancelling executions that are still running
+     */
+    @Override
+    public void close() {
+        this.maintenance.shutdownNow();
+        PooledContext pooled;
+        while ((pooled = this.idle.pollFirst()) != null)
+            pooled.close();
+        this.engine.close(true);
+    }
+
+    private void refill() {
+        int missing = this.minIdle - this.idle.size() - this.pendingRefills.get();
+        for (int i = 0; i < missing; i++) {
+            this.pendingRefills.incrementAndGet();
+            try {
+                this.maintenance.execute(() -> {
+                    try {
+                        if (this.idle.size() < this.maxIdle)
+                            this.idle.offerFirst(this.createContext(this.defaultStatementLimit));
+                    } catch (Exception e) {
+                        log.warn("Could not pre-create JS context: {}", e.getMessage());
+                    } finally {
+                        this.pendingRefills.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Pool is being closed
+                this.pendingRefills.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void evictExpired() {
+        long deadline = System.nanoTime() - this.idleTimeout.toNanos();
+        while (this.idle.size() > this.minIdle) {
+            var oldest = this.idle.peekLast();
+            if (oldest == null || oldest.createdNanos - deadline > 0)
+                return;
+            if (this.idle.removeLastOccurrence(oldest))
+                oldest.close();
+        }
+    }
+
+    private PooledContext createContext(long statementLimit) {
+        var out = new RebindableOutputStream();
+        var err = new RebindableOutputStream();
+        var limitExceeded = new AtomicBoolean(false);
+        var builder = Context.newBuilder(LANGUAGE)
+                .engine(this.engine)
+                .out(out)
+                .err(err);
+        if (statementLimit > 0) {
+            // All contexts of the engine must share the same source filter, so none is used
+            builder.resourceLimits(
+                    ResourceLimits.newBuilder()
+                            .statementLimit(statementLimit, null)
+                            .onLimit(event -> limitExceeded.set(true))
+                            .build()
+            );
+        }
+        var ctx = builder.build();
+        ctx.initialize(LANGUAGE);
+        if (statementLimit > 0)
+            ctx.resetLimits();
+        return new PooledContext(ctx, out, err, Math.max(statementLimit, 0), limitExceeded);
+    }
+
+    public static class PooledContext implements AutoCloseable {
+
+        public final Context context;
+        private final RebindableOutputStream out;
+        private final RebindableOutputStream err;
+        private final long statementLimit;
+        private final AtomicBoolean limitExceeded;
+        private final long createdNanos = System.nanoTime();
+
+        private PooledContext(
+                Context context,
+                RebindableOutputStream out,
+                RebindableOutputStream err,
+                long statementLimit,
+                AtomicBoolean limitExceeded
+        ) {
+            this.context = context;
+            this.out = out;
+            this.err = err;
+            this.statementLimit = statementLimit;
+            this.limitExceeded = limitExceeded;
+        }
+
+        /**
+         * Whether context was cancelled because it exceeded its statement limit
+         */
+        public boolean isLimitExceeded() {
+            return this.limitExceeded.get();
+        }
+
+        /**
+         * Discards the context, stopping current execution if it is being performed
+         */
+        @Override
+        public void close() {
+            this.context.close(true);
+        }
+
+    }
+
+    /**
+     * Output stream of a context has to be provided when it is built,
+     * so pre-created contexts write into a stream that is later pointed to the script output
+     */
+    private static class RebindableOutputStream extends OutputStream {
+
+        private static final OutputStream DISCARD = OutputStream.nullOutputStream();
+
+        private volatile OutputStream target = DISCARD;
+
+        void bind(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.target.write(b);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            this.target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.target.flush();
+        }
+
+    }
+
+}
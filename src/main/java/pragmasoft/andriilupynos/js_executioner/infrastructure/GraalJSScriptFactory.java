@@ -1,40 +1,127 @@
 package pragmasoft.andriilupynos.js_executioner.infrastructure;
 
-import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import pragmasoft.andriilupynos.js_executioner.domain.Script;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidScriptProvidedException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptMemoryExceededException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptTimedOutException;
 
 import java.io.OutputStream;
-import java.util.logging.ConsoleHandler;
 
-public class GraalJSScriptFactory implements ScriptFactory {
+public class GraalJSScriptFactory implements ScriptFactory, AutoCloseable {
+
+    private static final String LANGUAGE = "js";
+
+    private final GraalJSContextPool contextPool;
+    private final GraalJSSourceCache sourceCache;
+
+    /**
+     * All contexts are taken from the provided pool and are bound to its engine,
+     * so parsed and compiled code of equal sources is shared between them
+     */
+    public GraalJSScriptFactory(GraalJSContextPool contextPool, GraalJSSourceCache sourceCache) {
+        this.contextPool = contextPool;
+        this.sourceCache = sourceCache;
+    }
 
     @Override
-    public Script createScript(String sourceCode, OutputStream out, OutputStream err) throws ScriptException {
-        return new GraalJSScript(sourceCode, out, err);
+    public Script createScript(
+            String sourceCode,
+            OutputStream out,
+            OutputStream err,
+            ScriptLimits limits
+    ) throws ScriptException {
+        var key = GraalJSSourceCache.keyOf(sourceCode);
+        var cached = this.sourceCache.get(key, sourceCode);
+        if (cached != null && cached.syntaxError != null)
+            throw new InvalidScriptProvidedException(cached.syntaxError);
+
+        var source = cached != null ? cached.source : Source.create(LANGUAGE, sourceCode);
+        long statementLimit = limits.hasStatementLimit() ? limits.maxStatements : 0;
+        var ctx = this.contextPool.checkout(out, err, statementLimit);
+        try {
+            // Engine reuses parsed code of the cached source, so parsing here is cheap
+            var value = ctx.context.parse(source);
+            if (cached == null)
+                this.sourceCache.putValid(key, source);
+            return new GraalJSScript(ctx, value, statementLimit, sourceCode, out, err);
+        } catch (PolyglotException e) {
+            ctx.close();
+            if (e.isSyntaxError())
+                this.sourceCache.putInvalid(key, sourceCode, e.getMessage());
+            throw new InvalidScriptProvidedException(e.getMessage());
+        } catch (Exception e) {
+            ctx.close();
+            throw new InvalidScriptProvidedException(e.getMessage());
+        }
     }
 
+    /**
+     * Code is parsed in a pooled context that is given back right after, so nothing is held until the script
+     * is created. Result is cached, so creating the script later does not parse the code again.
+     */
+    @Override
+    public void validate(String sourceCode, ScriptLimits limits) throws ScriptException {
+        var key = GraalJSSourceCache.keyOf(sourceCode);
+        var cached = this.sourceCache.get(key, sourceCode);
+        if (cached != null) {
+            if (cached.syntaxError != null)
+                throw new InvalidScriptProvidedException(cached.syntaxError);
+            return;
+        }
+
+        var source = Source.create(LANGUAGE, sourceCode);
+        var ctx = this.contextPool.checkout(OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+        try {
+            ctx.context.parse(source);
+            this.sourceCache.putValid(key, source);
+        } catch (PolyglotException e) {
+            if (e.isSyntaxError())
+                this.sourceCache.putInvalid(key, sourceCode, e.getMessage());
+            throw new InvalidScriptProvidedException(e.getMessage());
+        } catch (Exception e) {
+            throw new InvalidScriptProvidedException(e.getMessage());
+        } finally {
+            // Parsing does not run any code, so the context is still clean
+            this.contextPool.release(ctx);
+        }
+    }
+
+    /**
+     * Closes context pool together with the shared engine,
+     * cancelling all executions of scripts created by this factory
+     */
+    @Override
+    public void close() {
+        this.contextPool.close();
+    }
+
+    /**
+     * Context and parsed code are dropped when script is closed, so a finished script keeps only its code
+     */
     private static class GraalJSScript extends Script {
 
-        private final Value value;
+        private volatile GraalJSContextPool.PooledContext ctx;
+        private volatile Value value;
+        private final long statementLimit;
 
-        protected GraalJSScript(String sourceCode, OutputStream out, OutputStream err) {
+        protected GraalJSScript(
+                GraalJSContextPool.PooledContext ctx,
+                Value value,
+                long statementLimit,
+                String sourceCode,
+                OutputStream out,
+                OutputStream err
+        ) {
             super(sourceCode, out, err);
-            try {
-                // Could share one engine between Contexts
-                var ctx =
-                        Context.newBuilder("js")
-                            .out(this.out)
-                            .err(this.err)
-                            .logHandler(new ConsoleHandler())
-                            .build();
-                this.value = ctx.parse("js", sourceCode);
-            } catch(Exception e) {
-                throw new InvalidScriptProvidedException(e.getMessage());
-            }
+            this.ctx = ctx;
+            this.value = value;
+            this.statementLimit = statementLimit;
         }
 
         /**
@@ -42,12 +129,35 @@ public class GraalJSScriptFactory implements ScriptFactory {
          */
         @Override
         public void close() {
-            this.value.getContext().close(true);
+            var ctx = this.ctx;
+            this.ctx = null;
+            this.value = null;
+            if (ctx != null)
+                ctx.close();
         }
 
         @Override
         public void run() {
-            this.value.executeVoid();
+            // Script may be closed while it runs, so the context is read once
+            var ctx = this.ctx;
+            var value = this.value;
+            if (ctx == null || value == null)
+                throw new IllegalStateException("Script was closed");
+            try {
+                value.executeVoid();
+            } catch (PolyglotException e) {
+                if (ctx.isLimitExceeded())
+                    throw new ScriptTimedOutException("Statement limit of " + this.statementLimit + " exceeded");
+                // Host ran out of heap or stack while executing the script, only the former is a memory failure
+                if (e.isResourceExhausted() && !isStackOverflow(e))
+                    throw new ScriptMemoryExceededException("Script ran out of memory: " + e.getMessage());
+                throw e;
+            }
+        }
+
+        private static boolean isStackOverflow(PolyglotException e) {
+            var message = e.getMessage();
+            return message == null || message.toLowerCase().contains("stack");
         }
 
     }
@@ -0,0 +1,181 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.graalvm.polyglot.Source;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of parsed sources keyed by SHA-256 of the code.
+ * <p>
+ * Besides valid sources it remembers syntax errors, so identical invalid code is rejected
+ * without taking a context from the pool. Cache is bounded by number of entries,
+ * by total length of cached code and by time to live of every entry.
+ */
+public class GraalJSSourceCache {
+
+    private static final String LANGUAGE = "js";
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+
+    // Access ordered, so the least recently used entry is the first one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter weightEvictions;
+    private final Counter expirations;
+
+    public GraalJSSourceCache(int maxEntries, long maxWeight, Duration ttl, MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttl.isZero() || ttl.isNegative() ? Long.MAX_VALUE : ttl.toNanos();
+
+        this.hits = requestsCounter(meterRegistry, "hit");
+        this.misses = requestsCounter(meterRegistry, "miss");
+        this.sizeEvictions = evictionsCounter(meterRegistry, "size");
+        this.weightEvictions = evictionsCounter(meterRegistry, "weight");
+        this.expirations = evictionsCounter(meterRegistry, "expired");
+        meterRegistry.gauge("scripts.source.cache.size", this, GraalJSSourceCache::size);
+        meterRegistry.gauge("scripts.source.cache.weight", this, GraalJSSourceCache::weight);
+    }
+
+    /**
+     * Key of the code in the cache, computed once per submission and passed to every cache call
+     */
+    public static String keyOf(String code) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns cached entry for the code or null if code was not seen recently
+     *
+     * @param key key of the code computed by {@link #keyOf(String)}
+     */
+    public Entry get(String key, String code) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry != null && this.isExpired(entry)) {
+                this.remove(key, entry);
+                this.expirations.increment();
+                entry = null;
+            }
+        }
+        // Protects from hash collisions
+        if (entry != null && code.contentEquals(entry.source.getCharacters())) {
+            this.hits.increment();
+            return entry;
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    public Entry putValid(String key, Source source) {
+        return this.put(key, new Entry(source, null, System.nanoTime() + this.ttlNanos));
+    }
+
+    public Entry putInvalid(String key, String code, String syntaxError) {
+        return this.put(key, new Entry(Source.create(LANGUAGE, code), syntaxError, System.nanoTime() + this.ttlNanos));
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long weight() {
+        return this.weight;
+    }
+
+    private Entry put(String key, Entry entry) {
+        // Code that can never fit is not cached at all
+        if (entry.weight() > this.maxWeight || this.maxEntries <= 0)
+            return entry;
+
+        synchronized (this) {
+            var previous = this.entries.put(key, entry);
+            if (previous != null)
+                this.weight -= previous.weight();
+            this.weight += entry.weight();
+            this.evictOverflow();
+        }
+        return entry;
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = this.entries.entrySet().iterator();
+        while (leastRecentlyUsed.hasNext()
+                && (this.entries.size() > this.maxEntries || this.weight > this.maxWeight)) {
+            var evicted = leastRecentlyUsed.next().getValue();
+            if (this.entries.size() > this.maxEntries)
+                this.sizeEvictions.increment();
+            else
+                this.weightEvictions.increment();
+            leastRecentlyUsed.remove();
+            this.weight -= evicted.weight();
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return this.ttlNanos != Long.MAX_VALUE && entry.expiresAtNanos - System.nanoTime() < 0;
+    }
+
+    private void remove(String key, Entry entry) {
+        this.entries.remove(key);
+        this.weight -= entry.weight();
+    }
+
+    private static Counter requestsCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("scripts.source.cache.requests")
+                .description("Lookups of parsed sources in the cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionsCounter(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("scripts.source.cache.evictions")
+                .description("Sources evicted from the cache")
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+
+    public static class Entry {
+
+        public final Source source;
+        /**
+         * Null for valid sources
+         */
+        public final String syntaxError;
+        private final long expiresAtNanos;
+
+        private Entry(Source source, String syntaxError, long expiresAtNanos) {
+            this.source = source;
+            this.syntaxError = syntaxError;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private long weight() {
+            return this.source.getCharacters().length();
+        }
+
+    }
+
+}
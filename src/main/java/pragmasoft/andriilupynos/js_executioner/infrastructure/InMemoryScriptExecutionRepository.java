@@ -24,4 +24,9 @@ public class InMemoryScriptExecutionRepository implements ScriptExecutionReposit
     public ScriptExecution getAndRemove(String name) {
         return this.executions.remove(name);
     }
+
+    @Override
+    public boolean remove(ScriptExecution scriptExecution) {
+        return this.executions.remove(scriptExecution.getScriptName(), scriptExecution);
+    }
 }
@@ -3,24 +3,78 @@ package pragmasoft.andriilupynos.js_executioner.infrastructure;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
 import pragmasoft.andriilupynos.js_executioner.domain.ScriptService.SortBy;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.StreamSupport;
 
+/**
+ * Keeps scripts in memory together with indexes by name, by creation date and by status with either of them,
+ * so listing scripts in any supported order never sorts them. Indexes are updated on write
+ * and on every status change, while reads iterate them lazily without locking.
+ */
 public class InMemoryScriptInfoRepository implements ScriptInfoRepository {
 
     private final ConcurrentMap<String, ScriptInfo> scripts = new ConcurrentHashMap<>();
+    private final NavigableMap<ScriptPosition, ScriptInfo> byName =
+            new ConcurrentSkipListMap<>(ScriptPosition.order(SortBy.NAME));
+    private final NavigableMap<ScriptPosition, ScriptInfo> byCreated =
+            new ConcurrentSkipListMap<>(ScriptPosition.order(SortBy.CREATED));
+    /**
+     * Scripts of every status ordered by creation date
+     */
+    private final Map<ScriptInfo.Status, NavigableMap<ScriptPosition, ScriptInfo>> byStatus =
+            new EnumMap<>(ScriptInfo.Status.class);
+    /**
+     * Scripts of every status ordered by name
+     */
+    private final Map<ScriptInfo.Status, NavigableMap<ScriptPosition, ScriptInfo>> byStatusAndName =
+            new EnumMap<>(ScriptInfo.Status.class);
+    private final ScriptInfo.StatusListener statusListener = this::onStatusChange;
+
+    public InMemoryScriptInfoRepository() {
+        for (var status : ScriptInfo.Status.values()) {
+            this.byStatus.put(status, new ConcurrentSkipListMap<>(ScriptPosition.order(SortBy.CREATED)));
+            this.byStatusAndName.put(status, new ConcurrentSkipListMap<>(ScriptPosition.order(SortBy.NAME)));
+        }
+    }
 
     @Override
     public void store(ScriptInfo s) throws ScriptException {
-        this.scripts.put(s.name, s);
+        // Updates of a script are serialized by the lock of its entry
+        this.scripts.compute(s.name, (name, previous) -> {
+            if (previous != null && previous != s)
+                this.unindex(previous);
+            if (previous != s) {
+                var position = ScriptPosition.of(s);
+                s.addStatusListener(this.statusListener);
+                this.byName.put(position, s);
+                this.byCreated.put(position, s);
+                this.indexStatus(s);
+            }
+            return s;
+        });
     }
 
     @Override
     public boolean delete(ScriptInfo s) throws ScriptException {
-        return this.scripts.remove(s.name) != null;
+        var deleted = new boolean[]{false};
+        this.scripts.computeIfPresent(s.name, (name, stored) -> {
+            if (stored != s)
+                return stored;
+            this.unindex(stored);
+            deleted[0] = true;
+            return null;
+        });
+        return deleted[0];
     }
 
     @Override
@@ -30,21 +84,98 @@ public class InMemoryScriptInfoRepository implements ScriptInfoRepository {
 
     @Override
     public Iterable<ScriptInfo> all(SortBy by) throws ScriptException {
-        return scripts.values()
-                .stream()
-                .sorted((o1, o2) -> {
-                    if (SortBy.CREATED.equals(by)) {
-                        return o2.created.compareTo(o1.created);
-                    }
-                    if (SortBy.STATUS.equals(by)) {
-                        return o1.getStatus().compareTo(o2.getStatus());
-                    }
-                    if (SortBy.NAME.equals(by)) {
-                        return o1.name.compareTo(o2.name);
-                    }
-                    return 0;
+        if (by == null)
+            return this.scripts.values();
+        return this.all(by, null, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status) throws ScriptException {
+        if (by == null && status == null)
+            return this.scripts.values();
+        return this.all(by, status, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status, ScriptPosition from, boolean backwards) {
+        if (status != null) {
+            if (by == SortBy.CREATED || by == SortBy.STATUS)
+                return slice(this.byStatus.get(status), from, backwards);
+            return slice(this.byStatusAndName.get(status), from, backwards);
+        }
+        if (by == SortBy.CREATED)
+            return slice(this.byCreated, from, backwards);
+        if (by == SortBy.STATUS)
+            return this.allByStatus(from, backwards);
+        return slice(this.byName, from, backwards);
+    }
+
+    /**
+     * Indexes of statuses one after another, starting from the index of the position status
+     */
+    private Iterable<ScriptInfo> allByStatus(ScriptPosition from, boolean backwards) {
+        var statuses = ScriptInfo.Status.values();
+        return () -> Arrays.stream(statuses)
+                .filter(it -> from == null || (backwards ? it.compareTo(from.status) <= 0 : it.compareTo(from.status) >= 0))
+                .sorted(backwards ? Comparator.reverseOrder() : Comparator.naturalOrder())
+                .flatMap(it -> {
+                    var withStatus = this.byStatus.get(it);
+                    var scripts = from != null && it == from.status
+                            ? slice(withStatus, from, backwards)
+                            : slice(withStatus, null, backwards);
+                    return StreamSupport.stream(scripts.spliterator(), false);
                 })
-                .collect(Collectors.toList());
+                .iterator();
+    }
+
+    private static Iterable<ScriptInfo> slice(
+            NavigableMap<ScriptPosition, ScriptInfo> index,
+            ScriptPosition from,
+            boolean backwards
+    ) {
+        if (from == null)
+            return backwards ? index.descendingMap().values() : index.values();
+        return backwards
+                ? index.headMap(from, false).descendingMap().values()
+                : index.tailMap(from, false).values();
+    }
+
+    private void onStatusChange(ScriptInfo script, ScriptInfo.Status previousStatus, ScriptInfo.Status status) {
+        this.scripts.computeIfPresent(script.name, (name, stored) -> {
+            if (stored == script)
+                this.indexStatus(script);
+            return stored;
+        });
+    }
+
+    /**
+     * Moves the script to the index of its current status. Must be called under the lock of the script entry.
+     */
+    private void indexStatus(ScriptInfo s) {
+        var position = ScriptPosition.of(s);
+        indexStatus(this.byStatus, position, s);
+        indexStatus(this.byStatusAndName, position, s);
+    }
+
+    private static void indexStatus(
+            Map<ScriptInfo.Status, NavigableMap<ScriptPosition, ScriptInfo>> index,
+            ScriptPosition position,
+            ScriptInfo s
+    ) {
+        index.get(position.status).put(position, s);
+        index.forEach((status, withStatus) -> {
+            if (status != position.status)
+                withStatus.remove(position);
+        });
+    }
+
+    private void unindex(ScriptInfo s) {
+        var position = ScriptPosition.of(s);
+        s.removeStatusListener(this.statusListener);
+        this.byName.remove(position, s);
+        this.byCreated.remove(position, s);
+        this.byStatus.values().forEach(withStatus -> withStatus.remove(position, s));
+        this.byStatusAndName.values().forEach(withStatus -> withStatus.remove(position, s));
     }
 
 }
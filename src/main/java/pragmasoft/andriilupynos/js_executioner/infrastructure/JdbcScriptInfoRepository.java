@@ -0,0 +1,807 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecutionRepository;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService.SortBy;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InternalScriptException;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+/**
+ * Keeps scripts in a relational database. Schema below is created on start if asked, it is written for H2
+ * and has to be created by hand for databases without {@code CLOB} and {@code BLOB} types.
+ * <p>
+ * Writes go through a write-behind queue drained by a single thread, which writes everything queued
+ * in one transaction with JDBC batches. Creation and deletion of a script wait for their transaction,
+ * status changes do not, they reach the database at most {@code flushInterval} after they happened.
+ * Scripts created by this service stay in memory until their outputs are written after they finished,
+ * lists and finished scripts are read from the database, pages of them are taken with keyset queries
+ * over the {@code (status, created)} and {@code (created)} indexes.
+ * <p>
+ * Outputs are stored without bytes dropped by bounded outputs: {@code output_size} is the number of kept bytes
+ * in the BLOB, while {@code output_truncated} counts dropped ones. Transaction that fails is retried a few times,
+ * then its writes are retried one by one, so a write that can not succeed fails alone.
+ * <p>
+ * One service is expected per database: script that was not finished is marked with
+ * {@link ScriptInfo.Status#ERROR} on start, as its execution did not survive the restart.
+ * Times of executions are stored, but are not restored into the execution repository.
+ */
+public class JdbcScriptInfoRepository implements ScriptInfoRepository, AutoCloseable {
+
+    private static final String INTERRUPTED_MESSAGE = "Execution was interrupted by restart of the service\n";
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Duration RETRY_DELAY = Duration.ofMillis(100);
+    private static final List<String> SCHEMA = List.of(
+            "CREATE TABLE IF NOT EXISTS script (" +
+                    "name VARCHAR(" + ScriptInfo.MAX_NAME_LENGTH + ") NOT NULL PRIMARY KEY, " +
+                    "code CLOB NOT NULL, " +
+                    "status VARCHAR(32) NOT NULL, " +
+                    "created TIMESTAMP NOT NULL, " +
+                    "max_statements BIGINT, " +
+                    "max_wall_time_nanos BIGINT, " +
+                    "max_cpu_time_nanos BIGINT, " +
+                    "max_allocated_bytes BIGINT, " +
+                    "output_mode VARCHAR(32), " +
+                    "scheduled_at TIMESTAMP, " +
+                    "started TIMESTAMP, " +
+                    "finished TIMESTAMP)",
+            "CREATE INDEX IF NOT EXISTS script_status_created ON script (status, created)",
+            "CREATE INDEX IF NOT EXISTS script_created ON script (created)",
+            "CREATE TABLE IF NOT EXISTS script_output (" +
+                    "name VARCHAR(" + ScriptInfo.MAX_NAME_LENGTH + ") NOT NULL PRIMARY KEY, " +
+                    "output BLOB NOT NULL, " +
+                    "output_size BIGINT NOT NULL, " +
+                    "output_truncated BIGINT NOT NULL, " +
+                    "error BLOB NOT NULL, " +
+                    "error_size BIGINT NOT NULL, " +
+                    "error_truncated BIGINT NOT NULL)"
+    );
+    private static final String SELECT = "SELECT s.name, s.code, s.status, s.created, " +
+            "s.max_statements, s.max_wall_time_nanos, s.max_cpu_time_nanos, s.max_allocated_bytes, s.output_mode, " +
+            "o.output_size, o.output_truncated, o.error_size, o.error_truncated " +
+            "FROM script s LEFT JOIN script_output o ON o.name = s.name";
+
+    private final Logger log = LoggerFactory.getLogger(JdbcScriptInfoRepository.class);
+
+    private final DataSource dataSource;
+    private final ScriptExecutionRepository executionRepository;
+    private final Duration flushInterval;
+    private final int maxBatch;
+    /**
+     * Scripts created by this service whose outputs are not written yet
+     */
+    private final ConcurrentMap<String, ScriptInfo> live = new ConcurrentHashMap<>();
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Write stop = new Write(null, null, null, true);
+    private final Thread writer;
+    private final ScriptInfo.StatusListener statusListener = this::onStatusChange;
+
+    /**
+     * @param dataSource       data source owned by the repository, it is closed together with the repository
+     * @param initializeSchema whether tables and indexes should be created if they do not exist
+     * @param flushInterval    longest time a status change waits in the queue before it is written
+     * @param maxBatch         maximum number of writes in one transaction
+     */
+    public JdbcScriptInfoRepository(
+            DataSource dataSource,
+            boolean initializeSchema,
+            Duration flushInterval,
+            int maxBatch,
+            ScriptExecutionRepository executionRepository
+    ) {
+        if (maxBatch <= 0)
+            throw new java.lang.IllegalArgumentException("maxBatch must be positive");
+        this.dataSource = dataSource;
+        this.executionRepository = executionRepository;
+        this.flushInterval = flushInterval;
+        this.maxBatch = maxBatch;
+        this.initialize(initializeSchema);
+        this.writer = new Thread(this::writeLoop, "script-store-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void store(ScriptInfo s) throws ScriptException {
+        // Name that does not fit the column would fail the transaction of other writes, so it is never queued
+        if (s.name.length() > ScriptInfo.MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("name must be at most " + ScriptInfo.MAX_NAME_LENGTH + " characters");
+        s.addStatusListener(this.statusListener);
+        var inserted = new CompletableFuture<Integer>();
+        // Writes of a script are queued under the lock of its entry, so they are written in the order they happened
+        this.live.compute(s.name, (name, previous) -> {
+            if (previous != null)
+                previous.removeStatusListener(this.statusListener);
+            // Script with the same name replaces the previous one
+            this.enqueue(Statement.DELETE_OUTPUT, name, false, statement -> statement.setString(1, name));
+            this.enqueue(Statement.DELETE_SCRIPT, name, false, statement -> statement.setString(1, name));
+            this.enqueue(Statement.INSERT_SCRIPT, name, true, statement -> bindInsert(statement, s))
+                    .whenComplete((count, e) -> {
+                        if (e != null)
+                            inserted.completeExceptionally(e);
+                        else
+                            inserted.complete(count);
+                    });
+            return s;
+        });
+        try {
+            inserted.join();
+        } catch (CompletionException e) {
+            // Script that is not in the database must not be served or watched either
+            if (this.live.remove(s.name, s))
+                s.removeStatusListener(this.statusListener);
+            throw new InternalScriptException("Failed to store script " + s.name, e.getCause());
+        }
+    }
+
+    @Override
+    public boolean delete(ScriptInfo s) throws ScriptException {
+        var deleted = new CompletableFuture<Integer>();
+        var wasLive = new boolean[1];
+        this.live.compute(s.name, (name, current) -> {
+            // Provided script was replaced by another one with the same name
+            if (current != null && current != s) {
+                deleted.complete(0);
+                return current;
+            }
+            wasLive[0] = current != null;
+            CompletableFuture<Integer> deletion;
+            if (current != null) {
+                current.removeStatusListener(this.statusListener);
+                this.enqueue(Statement.DELETE_OUTPUT, name, false, statement -> statement.setString(1, name));
+                deletion = this.enqueue(Statement.DELETE_SCRIPT, name, true, statement -> statement.setString(1, name));
+            } else {
+                // Script read from the database is deleted only if it was not replaced since it was read
+                this.enqueue(Statement.DELETE_CREATED_OUTPUT, name, false, statement -> {
+                    statement.setString(1, name);
+                    setTimestamp(statement, 2, s.created);
+                });
+                deletion = this.enqueue(Statement.DELETE_CREATED_SCRIPT, name, true, statement -> {
+                    statement.setString(1, name);
+                    setTimestamp(statement, 2, s.created);
+                });
+            }
+            deletion.whenComplete((count, e) -> {
+                        if (e != null)
+                            deleted.completeExceptionally(e);
+                        else
+                            deleted.complete(count);
+                    });
+            return null;
+        });
+        return deleted.join() != 0 || wasLive[0];
+    }
+
+    @Override
+    public ScriptInfo get(String name) throws ScriptException {
+        var script = this.live.get(name);
+        if (script != null)
+            return script;
+        return this.query(SELECT + " WHERE s.name = ?", List.of(name))
+                .stream()
+                .findFirst()
+                .map(it -> it.script)
+                .orElse(null);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by) throws ScriptException {
+        return this.all(by, null, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status) throws ScriptException {
+        return this.all(by, status, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status, ScriptPosition from, boolean backwards) {
+        if (by != SortBy.STATUS)
+            return () -> new PageIterator(by == SortBy.CREATED, status, from, backwards);
+
+        // Scripts of every status are taken from the (status, created) index one status after another
+        var statuses = new ArrayList<>(Arrays.asList(ScriptInfo.Status.values()));
+        if (backwards)
+            Collections.reverse(statuses);
+        return () -> statuses.stream()
+                .filter(it -> status == null || it == status)
+                .filter(it -> from == null || (backwards ? it.compareTo(from.status) <= 0 : it.compareTo(from.status) >= 0))
+                .flatMap(it -> {
+                    var start = from != null && it == from.status ? from : null;
+                    Iterable<ScriptInfo> scripts = () -> new PageIterator(true, it, start, backwards);
+                    return StreamSupport.stream(scripts.spliterator(), false);
+                })
+                .iterator();
+    }
+
+    /**
+     * Writes queued changes, stops the writer and closes the data source
+     */
+    @Override
+    public void close() {
+        this.queue.add(this.stop);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.dataSource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) this.dataSource).close();
+            } catch (Exception e) {
+                log.warn("Failed to close script store data source", e);
+            }
+        }
+    }
+
+    private void onStatusChange(ScriptInfo script, ScriptInfo.Status previousStatus, ScriptInfo.Status status) {
+        var execution = Optional.ofNullable(this.executionRepository.get(script.name));
+        var scheduledAt = execution.flatMap(ScriptExecution::getScheduledAt).orElse(null);
+        var started = execution.flatMap(ScriptExecution::getStarted).orElse(null);
+        var finished = execution.flatMap(ScriptExecution::getFinished).orElse(null);
+        this.live.computeIfPresent(script.name, (name, current) -> {
+            if (current != script)
+                return current;
+            this.enqueue(Statement.UPDATE_STATUS, name, false, statement -> {
+                statement.setString(1, status.name());
+                setTimestamp(statement, 2, scheduledAt);
+                setTimestamp(statement, 3, started);
+                setTimestamp(statement, 4, finished);
+                statement.setString(5, name);
+            });
+            if (status.isTerminal()) {
+                // Script is read from the database once its outputs are there, or once they failed to get there,
+                // so it does not stay in memory forever
+                this.enqueue(Statement.INSERT_OUTPUT, name, false, statement -> bindOutputs(statement, script))
+                        .whenComplete((count, e) -> {
+                            if (e != null)
+                                log.error("Outputs of script {} were not stored and are lost", name, e);
+                            if (this.live.remove(name, script))
+                                script.removeStatusListener(this.statusListener);
+                        });
+            }
+            return current;
+        });
+    }
+
+    private CompletableFuture<Integer> enqueue(Statement statement, String name, boolean awaited, Binder binder) {
+        var write = new Write(statement, name, binder, awaited);
+        this.queue.add(write);
+        return write.done;
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<Write>();
+        var stopped = false;
+        while (!stopped) {
+            try {
+                var first = this.queue.take();
+                batch.add(first);
+                // Writes nobody waits for are collected for at most the flush interval
+                long deadline = System.nanoTime() + this.flushInterval.toNanos();
+                var awaited = first.awaited;
+                while (!awaited && batch.size() < this.maxBatch) {
+                    var next = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                    awaited = next.awaited;
+                }
+                // Writes queued meanwhile share the transaction
+                this.queue.drainTo(batch, this.maxBatch - batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+            stopped |= batch.remove(this.stop);
+            if (stopped)
+                this.queue.drainTo(batch);
+            this.flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the batch, retrying it if it fails. Writes of a batch that keeps failing are retried one by one,
+     * so only the writes that can not be written are failed.
+     */
+    private void flush(List<Write> batch) {
+        if (batch.isEmpty())
+            return;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                this.write(batch);
+                batch.forEach(it -> it.done.complete(it.count));
+                return;
+            } catch (SQLException | RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS || !this.awaitRetry(attempt)) {
+                    log.error("Failed to write {} changes of scripts", batch.size(), e);
+                    if (batch.size() == 1) {
+                        batch.get(0).done.completeExceptionally(e);
+                        return;
+                    }
+                    break;
+                }
+                log.warn("Failed to write {} changes of scripts, retrying", batch.size(), e);
+            }
+        }
+        for (var write : batch) {
+            try {
+                this.write(List.of(write));
+                write.done.complete(write.count);
+            } catch (SQLException | RuntimeException e) {
+                log.error("Failed to write {} of script {}", write.statement, write.name, e);
+                write.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * @return false if the writer was interrupted and should not retry
+     */
+    private boolean awaitRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_DELAY.toMillis() * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction. Writes of the same statement are sent together,
+     * as long as it does not reorder writes of any script.
+     */
+    private void write(List<Write> batch) throws SQLException {
+        try (var connection = this.dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                var group = new EnumMap<Statement, List<Write>>(Statement.class);
+                var lastOfScript = new HashMap<String, Statement>();
+                for (var write : batch) {
+                    var last = lastOfScript.get(write.name);
+                    // Statements are sent in the order they are declared in, so the group is sent before it
+                    if (last != null && last.compareTo(write.statement) > 0) {
+                        this.execute(connection, group);
+                        group.clear();
+                        lastOfScript.clear();
+                    }
+                    group.computeIfAbsent(write.statement, it -> new ArrayList<>()).add(write);
+                    lastOfScript.put(write.name, write.statement);
+                }
+                this.execute(connection, group);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void execute(Connection connection, EnumMap<Statement, List<Write>> group) throws SQLException {
+        for (var entry : group.entrySet()) {
+            try (var statement = connection.prepareStatement(entry.getKey().sql)) {
+                for (var write : entry.getValue()) {
+                    write.binder.bind(statement);
+                    statement.addBatch();
+                }
+                var counts = statement.executeBatch();
+                for (int i = 0; i < counts.length && i < entry.getValue().size(); i++)
+                    entry.getValue().get(i).count = counts[i];
+            }
+        }
+    }
+
+    private void initialize(boolean initializeSchema) {
+        try (var connection = this.dataSource.getConnection()) {
+            if (initializeSchema) {
+                try (var statement = connection.createStatement()) {
+                    for (var sql : SCHEMA)
+                        statement.execute(sql);
+                }
+            }
+            connection.setAutoCommit(false);
+            var interrupted = new ArrayList<String>();
+            try (
+                    var statement = connection.prepareStatement("SELECT name FROM script WHERE status IN (?, ?)")
+            ) {
+                statement.setString(1, ScriptInfo.Status.SCHEDULED.name());
+                statement.setString(2, ScriptInfo.Status.RUNNING.name());
+                try (var resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        interrupted.add(resultSet.getString(1));
+                }
+            }
+            var message = INTERRUPTED_MESSAGE.getBytes(StandardCharsets.UTF_8);
+            try (
+                    var update = connection.prepareStatement("UPDATE script SET status = ? WHERE name = ?");
+                    var deleteOutput = connection.prepareStatement(Statement.DELETE_OUTPUT.sql);
+                    var insertOutput = connection.prepareStatement(Statement.INSERT_OUTPUT.sql)
+            ) {
+                for (var name : interrupted) {
+                    update.setString(1, ScriptInfo.Status.ERROR.name());
+                    update.setString(2, name);
+                    update.addBatch();
+                    deleteOutput.setString(1, name);
+                    deleteOutput.addBatch();
+                    insertOutput.setString(1, name);
+                    insertOutput.setBytes(2, new byte[0]);
+                    insertOutput.setLong(3, 0);
+                    insertOutput.setLong(4, 0);
+                    insertOutput.setBytes(5, message);
+                    insertOutput.setLong(6, message.length);
+                    insertOutput.setLong(7, 0);
+                    insertOutput.addBatch();
+                }
+                update.executeBatch();
+                deleteOutput.executeBatch();
+                insertOutput.executeBatch();
+            }
+            connection.commit();
+            log.info("Marked {} scripts interrupted by restart as failed", interrupted.size());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to initialize script store", e);
+        }
+    }
+
+    private List<Row> query(String sql, List<Object> parameters) {
+        try (
+                var connection = this.dataSource.getConnection();
+                var statement = connection.prepareStatement(sql)
+        ) {
+            for (int i = 0; i < parameters.size(); i++) {
+                var parameter = parameters.get(i);
+                if (parameter instanceof Instant)
+                    setTimestamp(statement, i + 1, (Instant) parameter);
+                else
+                    statement.setObject(i + 1, parameter);
+            }
+            var rows = new ArrayList<Row>();
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    rows.add(this.toRow(resultSet));
+            }
+            return rows;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read scripts", e);
+        }
+    }
+
+    private Row toRow(ResultSet resultSet) throws SQLException {
+        var name = resultSet.getString("name");
+        var status = ScriptInfo.Status.valueOf(resultSet.getString("status"));
+        var created = getTimestamp(resultSet, "created");
+        var position = new ScriptPosition(name, created, status);
+
+        // Script that is still in memory is returned as is, as its status may be ahead of the database
+        var script = this.live.get(name);
+        if (script != null)
+            return new Row(position, script);
+
+        var outputModeName = resultSet.getString("output_mode");
+        var outputMode = outputModeName != null ? ScriptOutputMode.valueOf(outputModeName) : null;
+        var limits = ScriptLimits.DEFAULT
+                .withMaxStatements(getLong(resultSet, "max_statements"))
+                .withMaxWallTime(getDuration(resultSet, "max_wall_time_nanos"))
+                .withMaxCpuTime(getDuration(resultSet, "max_cpu_time_nanos"))
+                .withMaxAllocatedBytes(getLong(resultSet, "max_allocated_bytes"));
+
+        ScriptInfo.ScriptOutput out;
+        ScriptInfo.ScriptOutput err;
+        var outputSize = getLong(resultSet, "output_size");
+        if (outputSize != null) {
+            out = new JdbcScriptOutput(
+                    this.dataSource, name, "output", outputSize, resultSet.getLong("output_truncated")
+            );
+            err = new JdbcScriptOutput(
+                    this.dataSource, name, "error", resultSet.getLong("error_size"), resultSet.getLong("error_truncated")
+            );
+        } else {
+            out = new ByteArrayScriptOutput();
+            err = new ByteArrayScriptOutput();
+        }
+        return new Row(
+                position,
+                ScriptInfo.restore(new StoredScript(resultSet.getString("code")), name, status, created, limits, outputMode, out, err)
+        );
+    }
+
+    private static void bindInsert(PreparedStatement statement, ScriptInfo s) throws SQLException {
+        statement.setString(1, s.name);
+        statement.setString(2, s.script.code);
+        statement.setString(3, s.getStatus().name());
+        setTimestamp(statement, 4, s.created);
+        setLong(statement, 5, s.limits.maxStatements);
+        setLong(statement, 6, s.limits.maxWallTime != null ? s.limits.maxWallTime.toNanos() : null);
+        setLong(statement, 7, s.limits.maxCpuTime != null ? s.limits.maxCpuTime.toNanos() : null);
+        setLong(statement, 8, s.limits.maxAllocatedBytes);
+        statement.setString(9, s.outputMode != null ? s.outputMode.name() : null);
+    }
+
+    private static void bindOutputs(PreparedStatement statement, ScriptInfo s) throws SQLException {
+        var out = s.getOutput();
+        var err = s.getErrorOutput();
+        long outKept = keptBytes(out);
+        long errKept = keptBytes(err);
+        statement.setString(1, s.name);
+        statement.setBinaryStream(2, new OutputInputStream(out, outKept), outKept);
+        statement.setLong(3, outKept);
+        statement.setLong(4, out.truncatedBytes());
+        statement.setBinaryStream(5, new OutputInputStream(err, errKept), errKept);
+        statement.setLong(6, errKept);
+        statement.setLong(7, err.truncatedBytes());
+    }
+
+    /**
+     * Number of bytes the output still holds, bounded outputs may count dropped bytes in their size
+     */
+    private static long keptBytes(ScriptInfo.ScriptOutput output) {
+        long size = output.size();
+        long kept = 0;
+        long from = output.keptFrom(0);
+        while (from < size) {
+            long until = Math.min(output.keptUntil(from), size);
+            if (until <= from)
+                break;
+            kept += until - from;
+            from = output.keptFrom(until);
+        }
+        return kept;
+    }
+
+    private static void setLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value != null)
+            statement.setLong(index, value);
+        else
+            statement.setNull(index, Types.BIGINT);
+    }
+
+    private static Long getLong(ResultSet resultSet, String column) throws SQLException {
+        long value = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    private static Duration getDuration(ResultSet resultSet, String column) throws SQLException {
+        var nanos = getLong(resultSet, column);
+        return nanos != null ? Duration.ofNanos(nanos) : null;
+    }
+
+    /**
+     * Instants are stored in UTC with the precision most databases keep
+     */
+    private static void setTimestamp(PreparedStatement statement, int index, Instant value) throws SQLException {
+        if (value != null)
+            statement.setTimestamp(index, Timestamp.from(value.truncatedTo(ChronoUnit.MICROS)), utc());
+        else
+            statement.setNull(index, Types.TIMESTAMP);
+    }
+
+    private static Instant getTimestamp(ResultSet resultSet, String column) throws SQLException {
+        var value = resultSet.getTimestamp(column, utc());
+        return value != null ? value.toInstant() : null;
+    }
+
+    private static Calendar utc() {
+        return Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Statements in the order they can be sent in without reordering writes of a script
+     */
+    private enum Statement {
+        DELETE_OUTPUT("DELETE FROM script_output WHERE name = ?"),
+        DELETE_SCRIPT("DELETE FROM script WHERE name = ?"),
+        DELETE_CREATED_OUTPUT("DELETE FROM script_output WHERE name = ? AND EXISTS " +
+                "(SELECT 1 FROM script s WHERE s.name = script_output.name AND s.created = ?)"),
+        DELETE_CREATED_SCRIPT("DELETE FROM script WHERE name = ? AND created = ?"),
+        INSERT_SCRIPT("INSERT INTO script (name, code, status, created, max_statements, max_wall_time_nanos, " +
+                "max_cpu_time_nanos, max_allocated_bytes, output_mode) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)"),
+        UPDATE_STATUS("UPDATE script SET status = ?, scheduled_at = ?, started = ?, finished = ? WHERE name = ?"),
+        INSERT_OUTPUT("INSERT INTO script_output (name, output, output_size, output_truncated, " +
+                "error, error_size, error_truncated) VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+        final String sql;
+
+        Statement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private static class Write {
+
+        final Statement statement;
+        final String name;
+        final Binder binder;
+        /**
+         * Whether somebody waits for the write, so it is written without waiting for others
+         */
+        final boolean awaited;
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        // Written by the writer thread only
+        int count;
+
+        Write(Statement statement, String name, Binder binder, boolean awaited) {
+            this.statement = statement;
+            this.name = name;
+            this.binder = binder;
+            this.awaited = awaited;
+        }
+
+    }
+
+    private static class Row {
+
+        final ScriptPosition position;
+        final ScriptInfo script;
+
+        Row(ScriptPosition position, ScriptInfo script) {
+            this.position = position;
+            this.script = script;
+        }
+
+    }
+
+    /**
+     * Iterates scripts of one index page by page, every page starts right after the last row of the previous one
+     */
+    private class PageIterator implements Iterator<ScriptInfo> {
+
+        private final boolean byCreated;
+        private final ScriptInfo.Status status;
+        private final boolean backwards;
+        private final ArrayDeque<Row> page = new ArrayDeque<>();
+        private ScriptPosition position;
+        private boolean exhausted = false;
+
+        PageIterator(boolean byCreated, ScriptInfo.Status status, ScriptPosition from, boolean backwards) {
+            this.byCreated = byCreated;
+            this.status = status;
+            this.position = from;
+            this.backwards = backwards;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.page.isEmpty() && !this.exhausted)
+                this.fetch();
+            return !this.page.isEmpty();
+        }
+
+        @Override
+        public ScriptInfo next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            return this.page.poll().script;
+        }
+
+        private void fetch() {
+            var conditions = new ArrayList<String>();
+            var parameters = new ArrayList<Object>();
+            if (this.status != null) {
+                conditions.add("s.status = ?");
+                parameters.add(this.status.name());
+            }
+            // Newest scripts go first, so created goes the opposite way to the name
+            var nameAfter = this.backwards ? "<" : ">";
+            var createdAfter = this.backwards ? ">" : "<";
+            String order;
+            if (this.byCreated) {
+                if (this.position != null) {
+                    conditions.add("(s.created " + createdAfter + " ? OR (s.created = ? AND s.name " + nameAfter + " ?))");
+                    parameters.addAll(List.of(this.position.created, this.position.created, this.position.name));
+                }
+                order = this.backwards ? "s.created ASC, s.name DESC" : "s.created DESC, s.name ASC";
+            } else {
+                if (this.position != null) {
+                    conditions.add("s.name " + nameAfter + " ?");
+                    parameters.add(this.position.name);
+                }
+                order = this.backwards ? "s.name DESC" : "s.name ASC";
+            }
+            var sql = SELECT
+                    + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                    + " ORDER BY " + order
+                    + " FETCH FIRST " + PAGE_SIZE + " ROWS ONLY";
+
+            var rows = query(sql, parameters);
+            this.exhausted = rows.size() < PAGE_SIZE;
+            if (!rows.isEmpty())
+                this.position = rows.get(rows.size() - 1).position;
+            this.page.addAll(rows);
+        }
+
+    }
+
+    /**
+     * Reads kept bytes of an output chunk by chunk, so it is not held in memory as a whole while it is written
+     */
+    private static class OutputInputStream extends InputStream {
+
+        private final ScriptInfo.ScriptOutput output;
+        private long remaining;
+        // Offset in the output, dropped bytes are skipped by reads
+        private long position = 0;
+
+        OutputInputStream(ScriptInfo.ScriptOutput output, long kept) {
+            this.output = output;
+            this.remaining = kept;
+        }
+
+        @Override
+        public int read() {
+            var bytes = new byte[1];
+            return this.read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (this.remaining <= 0)
+                return -1;
+            var chunk = this.output.read(this.position, (int) Math.min(length, this.remaining));
+            if (chunk.bytes.length == 0)
+                return -1;
+            System.arraycopy(chunk.bytes, 0, bytes, offset, chunk.bytes.length);
+            this.position = chunk.offset + chunk.bytes.length;
+            this.remaining -= chunk.bytes.length;
+            return chunk.bytes.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Output is closed together with the script
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+/**
+ * Output of a finished script stored in a BLOB column. Nothing is written to it anymore,
+ * and only the requested range is fetched from the database. Output holds only the kept bytes,
+ * bytes dropped by a bounded output are only counted.
+ */
+public class JdbcScriptOutput implements ScriptInfo.ScriptOutput {
+
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+    private final String name;
+    private final String column;
+    private final long size;
+    private final long truncated;
+
+    /**
+     * @param column column of the {@code script_output} table the output is stored in
+     */
+    JdbcScriptOutput(DataSource dataSource, String name, String column, long size, long truncated) {
+        this.dataSource = dataSource;
+        this.name = name;
+        this.column = column;
+        this.size = size;
+        this.truncated = truncated;
+    }
+
+    @Override
+    public OutputStream asStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public long truncatedBytes() {
+        return this.truncated;
+    }
+
+    @Override
+    public Chunk read(long offset, int maxBytes) {
+        long from = Math.min(Math.max(offset, 0), this.size);
+        int length = (int) Math.min(Math.max(maxBytes, 0), this.size - from);
+        if (length == 0)
+            return new Chunk(from, new byte[0]);
+        try {
+            // Positions of BLOB bytes start at 1
+            var bytes = this.withBlob(blob -> blob != null ? blob.getBytes(from + 1, length) : new byte[0]);
+            return new Chunk(from, bytes);
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to read output of script " + this.name, e);
+        }
+    }
+
+    /**
+     * Streams the whole range from one query, rather than querying the database for every chunk
+     */
+    @Override
+    public long transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+        long from = Math.min(Math.max(offset, 0), this.size);
+        long count = Math.min(Math.max(length, 0), this.size - from);
+        if (count == 0)
+            return 0;
+        try {
+            return this.withBlob(blob -> {
+                if (blob == null)
+                    return 0L;
+                long transferred = 0;
+                try (var in = blob.getBinaryStream(from + 1, count)) {
+                    var buffer = new byte[(int) Math.min(count, TRANSFER_BUFFER_SIZE)];
+                    int read;
+                    while (transferred < count && (read = in.read(buffer, 0, (int) Math.min(buffer.length, count - transferred))) > 0) {
+                        var bytes = ByteBuffer.wrap(buffer, 0, read);
+                        while (bytes.hasRemaining())
+                            target.write(bytes);
+                        transferred += read;
+                    }
+                }
+                return transferred;
+            });
+        } catch (SQLException e) {
+            throw new IOException("Failed to read output of script " + this.name, e);
+        }
+    }
+
+    @Override
+    public void addWriteListener(Runnable listener) {
+        // Nothing is written anymore
+    }
+
+    @Override
+    public void removeWriteListener(Runnable listener) {
+        // Nothing is written anymore
+    }
+
+    /**
+     * Runs the reader with the BLOB of the output, or with null if the output is not stored anymore
+     */
+    private <T> T withBlob(BlobReader<T> reader) throws SQLException, IOException {
+        try (
+                var connection = this.dataSource.getConnection();
+                var statement = connection.prepareStatement(
+                        "SELECT " + this.column + " FROM script_output WHERE name = ?"
+                )
+        ) {
+            statement.setString(1, this.name);
+            try (var resultSet = statement.executeQuery()) {
+                if (!resultSet.next())
+                    return reader.read(null);
+                var blob = resultSet.getBlob(1);
+                try {
+                    return reader.read(blob);
+                } finally {
+                    blob.free();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.read(0, (int) Math.min(this.size, Integer.MAX_VALUE)).bytes, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface BlobReader<T> {
+        T read(Blob blob) throws SQLException, IOException;
+    }
+
+}
@@ -0,0 +1,555 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptException;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecutionRepository;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService.SortBy;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps scripts in a {@link SegmentLog}, so they survive restarts of the service. Metadata of a script is written
+ * when it is created and when it reaches terminal status; its outputs are written to separate files at that moment,
+ * so the log stays small and is replayed quickly. Outputs are written by a thread of the repository rather than
+ * by the one that finished the script, and their files are synced by the log together with its batch.
+ * <p>
+ * Scripts stay in memory until the record of their terminal status is synced. Afterwards only their positions
+ * are kept to list them, and finished scripts are read from the log when they are asked for.
+ * <p>
+ * Executions do not survive restarts: script that was not finished is restored with {@link ScriptInfo.Status#ERROR}.
+ * Times of executions are stored, but are not restored into the execution repository,
+ * as it would keep every restored script in memory.
+ */
+public class LogScriptInfoRepository implements ScriptInfoRepository, AutoCloseable {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final String INTERRUPTED_MESSAGE = "Execution was interrupted by restart of the service\n";
+
+    private final Logger log = LoggerFactory.getLogger(LogScriptInfoRepository.class);
+
+    /**
+     * Scripts whose terminal status is not stored yet
+     */
+    private final InMemoryScriptInfoRepository live = new InMemoryScriptInfoRepository();
+    /**
+     * Positions of finished scripts, which are read from the log
+     */
+    private final ScriptPositionIndex finished = new ScriptPositionIndex();
+    private final ConcurrentMap<String, Stored> stored = new ConcurrentHashMap<>();
+    private final ScriptExecutionRepository executionRepository;
+    private final SegmentLog segmentLog;
+    private final Path outputDirectory;
+    private final ExecutorService outputWriter;
+    private final ScriptInfo.StatusListener statusListener = this::onStatusChange;
+
+    /**
+     * Restores scripts stored in the directory
+     *
+     * @param segmentSize size of a log segment
+     * @param maxBatch    maximum number of writes synced together
+     */
+    public LogScriptInfoRepository(
+            Path directory,
+            long segmentSize,
+            int maxBatch,
+            ScriptExecutionRepository executionRepository
+    ) {
+        this.executionRepository = executionRepository;
+        this.outputDirectory = directory.resolve("outputs");
+        try {
+            Files.createDirectories(this.outputDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.segmentLog = new SegmentLog(directory.resolve("log"), segmentSize, maxBatch);
+        this.outputWriter = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "script-output-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.restore();
+    }
+
+    @Override
+    public void store(ScriptInfo s) throws ScriptException {
+        this.live.store(s);
+        var entry = new Stored(s.name, UUID.randomUUID().toString(), s, null);
+        var previous = this.stored.put(s.name, entry);
+        if (previous != null)
+            this.forget(previous);
+        s.addStatusListener(this.statusListener);
+        synchronized (entry) {
+            this.segmentLog.put(s.name, this.encode(s, entry.id, null, null)).join();
+        }
+    }
+
+    /**
+     * Deletes the script if it was not replaced by another one with the same name
+     */
+    @Override
+    public boolean delete(ScriptInfo s) throws ScriptException {
+        var entry = this.stored.get(s.name);
+        if (entry == null || !entry.holds(s) || !this.stored.remove(s.name, entry))
+            return false;
+        this.forget(entry);
+        this.segmentLog.delete(s.name).join();
+        return true;
+    }
+
+    @Override
+    public ScriptInfo get(String name) throws ScriptException {
+        while (true) {
+            var entry = this.stored.get(name);
+            if (entry == null)
+                return null;
+            var script = entry.script;
+            if (script != null)
+                return script;
+            var restored = this.read(name, entry);
+            if (restored != null || this.stored.get(name) == entry)
+                return restored;
+            // Script was replaced or deleted while it was read
+        }
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by) throws ScriptException {
+        return this.all(by, null, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status) throws ScriptException {
+        return this.all(by, status, null, false);
+    }
+
+    @Override
+    public Iterable<ScriptInfo> all(SortBy by, ScriptInfo.Status status, ScriptPosition from, boolean backwards) {
+        var order = backwards ? ScriptPosition.order(by).reversed() : ScriptPosition.order(by);
+        var live = this.live.all(by, status, from, backwards);
+        var finished = this.finished.all(by, status, from, backwards);
+        return () -> new MergingIterator(live.iterator(), finished.iterator(), order);
+    }
+
+    /**
+     * Writes outputs of finished scripts, syncs pending writes and closes the log
+     */
+    @Override
+    public void close() {
+        this.outputWriter.shutdown();
+        try {
+            if (!this.outputWriter.awaitTermination(1, TimeUnit.MINUTES))
+                log.warn("Outputs of finished scripts were not written in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.segmentLog.close();
+    }
+
+    private void onStatusChange(ScriptInfo script, ScriptInfo.Status previousStatus, ScriptInfo.Status status) {
+        if (!status.isTerminal())
+            return;
+        var entry = this.stored.get(script.name);
+        if (entry == null || entry.script != script)
+            return;
+        // Thread that finished the script does not wait for its outputs to be written and synced
+        try {
+            this.outputWriter.execute(() -> this.persistFinished(entry).whenComplete((result, e) -> {
+                if (e != null)
+                    log.error("Failed to store script {}", script.name, e);
+            }));
+        } catch (RejectedExecutionException e) {
+            log.error("Failed to store script {}, repository is closed", script.name);
+        }
+    }
+
+    /**
+     * Writes outputs of the finished script to files and then its metadata to the log, which syncs the files
+     * together with its batch. Once the record is synced, the script is dropped from memory.
+     */
+    private CompletableFuture<Void> persistFinished(Stored entry) {
+        // Deletion waits for the outputs to be written, so it is never overtaken by the record of a deleted script
+        synchronized (entry) {
+            var script = entry.script;
+            if (entry.deleted || script == null)
+                return CompletableFuture.completedFuture(null);
+            var outPath = this.outputPath(entry.id, "out");
+            var errPath = this.outputPath(entry.id, "err");
+            try {
+                var out = FileScriptOutput.write(script.getOutput(), outPath);
+                var err = FileScriptOutput.write(script.getErrorOutput(), errPath);
+                return this.segmentLog.put(script.name, this.encode(script, entry.id, out, err), List.of(outPath, errPath))
+                        .thenRun(() -> this.release(entry));
+            } catch (IOException | UncheckedIOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the finished script in memory with its position
+     */
+    private void release(Stored entry) {
+        synchronized (entry) {
+            var script = entry.script;
+            if (entry.deleted || script == null)
+                return;
+            // Position is set before the script is dropped, so the entry always identifies its script
+            entry.position = ScriptPosition.of(script);
+            this.finished.add(entry.position);
+            script.removeStatusListener(this.statusListener);
+            this.live.delete(script);
+            entry.script = null;
+        }
+    }
+
+    private void forget(Stored entry) {
+        synchronized (entry) {
+            entry.deleted = true;
+            var script = entry.script;
+            if (script != null) {
+                script.removeStatusListener(this.statusListener);
+                this.live.delete(script);
+            }
+            if (entry.position != null)
+                this.finished.remove(entry.position);
+            try {
+                Files.deleteIfExists(this.outputPath(entry.id, "out"));
+                Files.deleteIfExists(this.outputPath(entry.id, "err"));
+            } catch (IOException e) {
+                log.warn("Failed to delete outputs of script {}", entry.name, e);
+            }
+        }
+    }
+
+    /**
+     * Reads the finished script of the entry from the log
+     *
+     * @return script or null if the log does not hold the script of the entry anymore
+     */
+    private ScriptInfo read(String name, Stored entry) {
+        var bytes = this.segmentLog.get(name);
+        if (bytes == null)
+            return null;
+        try {
+            var record = this.decode(name, bytes);
+            return record.id.equals(entry.id) ? record.script : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Script of the position, or null if it was deleted or replaced since the position was taken
+     */
+    private ScriptInfo read(ScriptPosition position) {
+        var entry = this.stored.get(position.name);
+        if (entry == null || entry.position != position)
+            return null;
+        return this.read(position.name, entry);
+    }
+
+    private void restore() {
+        var interrupted = new ArrayList<Stored>();
+        this.segmentLog.forEach((name, bytes) -> {
+            try {
+                var record = this.decode(name, bytes);
+                if (record.interrupted) {
+                    var entry = new Stored(name, record.id, record.script, null);
+                    this.live.store(record.script);
+                    this.stored.put(name, entry);
+                    interrupted.add(entry);
+                } else {
+                    var position = ScriptPosition.of(record.script);
+                    this.finished.add(position);
+                    this.stored.put(name, new Stored(name, record.id, null, position));
+                }
+            } catch (IOException e) {
+                log.error("Failed to restore script {}", name, e);
+            }
+        });
+        // Log is not written while it is replayed
+        for (var entry : interrupted) {
+            try {
+                this.persistFinished(entry).join();
+            } catch (CompletionException e) {
+                log.error("Failed to store interrupted script {}", entry.name, e.getCause());
+            }
+        }
+        log.info("Restored {} scripts, {} of them were interrupted", this.stored.size(), interrupted.size());
+    }
+
+    private Path outputPath(String id, String kind) {
+        return this.outputDirectory.resolve(id + "." + kind);
+    }
+
+    /**
+     * @param out stored output of the finished script, or null if script is not finished yet
+     */
+    private byte[] encode(ScriptInfo s, String id, FileScriptOutput out, FileScriptOutput err) {
+        var bytes = new ByteArrayOutputStream();
+        try (var data = new DataOutputStream(bytes)) {
+            data.writeByte(FORMAT_VERSION);
+            data.writeUTF(id);
+            writeString(data, s.script.code);
+            writeInstant(data, s.created);
+            data.writeUTF(s.getStatus().name());
+
+            writeLong(data, s.limits.maxStatements);
+            writeDuration(data, s.limits.maxWallTime);
+            writeDuration(data, s.limits.maxCpuTime);
+            writeLong(data, s.limits.maxAllocatedBytes);
+            writeString(data, s.outputMode != null ? s.outputMode.name() : null);
+
+            var execution = this.executionRepository.get(s.name);
+            writeInstant(data, execution != null ? execution.getScheduledAt().orElse(null) : null);
+            writeInstant(data, execution != null ? execution.getStarted().orElse(null) : null);
+            writeInstant(data, execution != null ? execution.getFinished().orElse(null) : null);
+
+            data.writeBoolean(out != null);
+            if (out != null) {
+                data.writeLong(out.size());
+                data.writeLong(out.truncatedBytes());
+                data.writeLong(err.size());
+                data.writeLong(err.truncatedBytes());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Record decode(String name, byte[] bytes) throws IOException {
+        var data = new DataInputStream(new ByteArrayInputStream(bytes));
+        var version = data.readByte();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported record version " + version);
+        var id = data.readUTF();
+        var code = readString(data);
+        var created = readInstant(data);
+        var status = ScriptInfo.Status.valueOf(data.readUTF());
+
+        var limits = ScriptLimits.DEFAULT
+                .withMaxStatements(readLong(data))
+                .withMaxWallTime(readDuration(data))
+                .withMaxCpuTime(readDuration(data))
+                .withMaxAllocatedBytes(readLong(data));
+        var outputModeName = readString(data);
+        var outputMode = outputModeName != null ? ScriptOutputMode.valueOf(outputModeName) : null;
+
+        // Times of the execution are not restored
+        readInstant(data);
+        readInstant(data);
+        readInstant(data);
+
+        ScriptInfo.ScriptOutput out;
+        ScriptInfo.ScriptOutput err;
+        if (data.readBoolean()) {
+            out = new FileScriptOutput(this.outputPath(id, "out"), data.readLong(), data.readLong());
+            err = new FileScriptOutput(this.outputPath(id, "err"), data.readLong(), data.readLong());
+        } else {
+            out = new ByteArrayScriptOutput();
+            err = new ByteArrayScriptOutput();
+        }
+
+        var interrupted = !status.isTerminal();
+        if (interrupted) {
+            status = ScriptInfo.Status.ERROR;
+            err.asStream().write(INTERRUPTED_MESSAGE.getBytes(StandardCharsets.UTF_8));
+        }
+        var script = ScriptInfo.restore(new StoredScript(code), name, status, created, limits, outputMode, out, err);
+        return new Record(id, script, interrupted);
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0)
+            return null;
+        var bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLong(DataOutputStream data, Long value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null)
+            data.writeLong(value);
+    }
+
+    private static Long readLong(DataInputStream data) throws IOException {
+        return data.readBoolean() ? data.readLong() : null;
+    }
+
+    private static void writeInstant(DataOutputStream data, Instant value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeLong(value.getEpochSecond());
+            data.writeInt(value.getNano());
+        }
+    }
+
+    private static Instant readInstant(DataInputStream data) throws IOException {
+        return data.readBoolean() ? Instant.ofEpochSecond(data.readLong(), data.readInt()) : null;
+    }
+
+    private static void writeDuration(DataOutputStream data, Duration value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeLong(value.getSeconds());
+            data.writeInt(value.getNano());
+        }
+    }
+
+    private static Duration readDuration(DataInputStream data) throws IOException {
+        return data.readBoolean() ? Duration.ofSeconds(data.readLong(), data.readInt()) : null;
+    }
+
+    private static class Stored {
+
+        final String name;
+        /**
+         * Identifier of the stored outputs, differs from the name as names may not be valid file names
+         */
+        final String id;
+        /**
+         * Script kept in memory until its terminal status is stored, null afterwards
+         */
+        volatile ScriptInfo script;
+        /**
+         * Position of the finished script, set before its script is dropped from memory
+         */
+        volatile ScriptPosition position;
+        // Guarded by this
+        boolean deleted = false;
+
+        Stored(String name, String id, ScriptInfo script, ScriptPosition position) {
+            this.name = name;
+            this.id = id;
+            this.script = script;
+            this.position = position;
+        }
+
+        /**
+         * Whether the script is the one of this entry, finished script read from the log is recognized by its creation
+         */
+        boolean holds(ScriptInfo s) {
+            var script = this.script;
+            if (script != null)
+                return script == s;
+            return this.position.created.equals(s.created);
+        }
+
+    }
+
+    private static class Record {
+
+        final String id;
+        final ScriptInfo script;
+        /**
+         * Whether script was not finished when it was written, such script is restored failed
+         */
+        final boolean interrupted;
+
+        Record(String id, ScriptInfo script, boolean interrupted) {
+            this.id = id;
+            this.script = script;
+            this.interrupted = interrupted;
+        }
+
+    }
+
+    /**
+     * Merges scripts kept in memory with finished scripts read from the log, both following the same order
+     */
+    private class MergingIterator implements Iterator<ScriptInfo> {
+
+        private final Iterator<ScriptInfo> live;
+        private final Iterator<ScriptPosition> finished;
+        private final Comparator<ScriptPosition> order;
+        private ScriptInfo nextLive;
+        private ScriptPosition nextLivePosition;
+        private ScriptPosition nextFinished;
+        private ScriptInfo next;
+
+        MergingIterator(Iterator<ScriptInfo> live, Iterator<ScriptPosition> finished, Comparator<ScriptPosition> order) {
+            this.live = live;
+            this.finished = finished;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.next == null) {
+                if (this.nextLive == null && this.live.hasNext()) {
+                    this.nextLive = this.live.next();
+                    this.nextLivePosition = ScriptPosition.of(this.nextLive);
+                }
+                if (this.nextFinished == null && this.finished.hasNext())
+                    this.nextFinished = this.finished.next();
+                if (this.nextLive == null && this.nextFinished == null)
+                    return false;
+                if (this.nextFinished == null
+                        || (this.nextLive != null && this.order.compare(this.nextLivePosition, this.nextFinished) <= 0)) {
+                    this.next = this.nextLive;
+                    this.nextLive = null;
+                } else {
+                    // Script deleted or replaced after its position was taken is skipped
+                    this.next = read(this.nextFinished);
+                    this.nextFinished = null;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ScriptInfo next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            var next = this.next;
+            this.next = null;
+            return next;
+        }
+
+    }
+
+}
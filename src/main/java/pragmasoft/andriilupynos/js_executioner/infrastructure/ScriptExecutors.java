@@ -0,0 +1,157 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run scripts. Every executor publishes the same set of metrics
+ * regardless of its type: number of queued and active executions and number of rejections.
+ */
+public class ScriptExecutors {
+
+    public enum Type {
+        /**
+         * Fixed number of platform threads sharing one queue
+         */
+        FIXED,
+        /**
+         * Fork-join pool with per-worker queues and work stealing
+         */
+        WORK_STEALING,
+        /**
+         * New virtual thread for every script, requires Java 21 or newer
+         */
+        VIRTUAL
+    }
+
+    private ScriptExecutors() {}
+
+    /**
+     * @param parallelism number of worker threads, ignored for virtual threads
+     */
+    public static ExecutorService create(Type type, int parallelism, MeterRegistry meterRegistry) {
+        ExecutorService delegate;
+        switch (type) {
+            case FIXED:
+                delegate = new ThreadPoolExecutor(
+                        parallelism,
+                        parallelism,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(),
+                        namedThreads("script-executor-")
+                );
+                break;
+            case WORK_STEALING:
+                delegate = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                break;
+            case VIRTUAL:
+                delegate = newVirtualThreadPerTaskExecutor();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported executor type " + type);
+        }
+        return new MeteredExecutorService(delegate, type, meterRegistry);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        // Looked up reflectively, so the project still compiles for Java 11
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "Virtual thread executor requires Java 21 or newer, current version is "
+                            + Runtime.version(),
+                    e
+            );
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        var counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + counter.incrementAndGet());
+    }
+
+    private static class MeteredExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final Counter rejected;
+
+        MeteredExecutorService(ExecutorService delegate, Type type, MeterRegistry meterRegistry) {
+            this.delegate = delegate;
+            var tags = Tags.of("type", type.name().toLowerCase());
+            meterRegistry.gauge("scripts.executor.queued", tags, this.queued, AtomicInteger::get);
+            meterRegistry.gauge("scripts.executor.active", tags, this.active, AtomicInteger::get);
+            this.rejected = Counter.builder("scripts.executor.rejected")
+                    .description("Script executions rejected by the executor")
+                    .tag("type", type.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void execute(@Nonnull Runnable command) {
+            this.queued.incrementAndGet();
+            try {
+                this.delegate.execute(() -> {
+                    this.queued.decrementAndGet();
+                    this.active.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        this.active.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.queued.decrementAndGet();
+                this.rejected.increment();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            this.delegate.shutdown();
+        }
+
+        @Override
+        @Nonnull
+        public List<Runnable> shutdownNow() {
+            return this.delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+            return this.delegate.awaitTermination(timeout, unit);
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptPosition;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService.SortBy;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.StreamSupport;
+
+/**
+ * Positions of scripts in every supported order, so scripts can be listed without being kept in memory.
+ * Position of a script is expected not to change while it is indexed, which holds for finished scripts.
+ */
+class ScriptPositionIndex {
+
+    private final NavigableSet<ScriptPosition> byName = new ConcurrentSkipListSet<>(ScriptPosition.order(SortBy.NAME));
+    private final NavigableSet<ScriptPosition> byCreated = new ConcurrentSkipListSet<>(ScriptPosition.order(SortBy.CREATED));
+    /**
+     * Positions of every status ordered by creation date
+     */
+    private final Map<ScriptInfo.Status, NavigableSet<ScriptPosition>> byStatus = new EnumMap<>(ScriptInfo.Status.class);
+    /**
+     * Positions of every status ordered by name
+     */
+    private final Map<ScriptInfo.Status, NavigableSet<ScriptPosition>> byStatusAndName = new EnumMap<>(ScriptInfo.Status.class);
+
+    ScriptPositionIndex() {
+        for (var status : ScriptInfo.Status.values()) {
+            this.byStatus.put(status, new ConcurrentSkipListSet<>(ScriptPosition.order(SortBy.CREATED)));
+            this.byStatusAndName.put(status, new ConcurrentSkipListSet<>(ScriptPosition.order(SortBy.NAME)));
+        }
+    }
+
+    void add(ScriptPosition position) {
+        this.byName.add(position);
+        this.byCreated.add(position);
+        this.byStatus.get(position.status).add(position);
+        this.byStatusAndName.get(position.status).add(position);
+    }
+
+    void remove(ScriptPosition position) {
+        this.byName.remove(position);
+        this.byCreated.remove(position);
+        this.byStatus.get(position.status).remove(position);
+        this.byStatusAndName.get(position.status).remove(position);
+    }
+
+    /**
+     * Same slice of positions {@link InMemoryScriptInfoRepository} returns scripts of
+     */
+    Iterable<ScriptPosition> all(SortBy by, ScriptInfo.Status status, ScriptPosition from, boolean backwards) {
+        if (status != null) {
+            if (by == SortBy.CREATED || by == SortBy.STATUS)
+                return slice(this.byStatus.get(status), from, backwards);
+            return slice(this.byStatusAndName.get(status), from, backwards);
+        }
+        if (by == SortBy.CREATED)
+            return slice(this.byCreated, from, backwards);
+        if (by == SortBy.STATUS)
+            return this.allByStatus(from, backwards);
+        return slice(this.byName, from, backwards);
+    }
+
+    private Iterable<ScriptPosition> allByStatus(ScriptPosition from, boolean backwards) {
+        var statuses = ScriptInfo.Status.values();
+        return () -> Arrays.stream(statuses)
+                .filter(it -> from == null || (backwards ? it.compareTo(from.status) <= 0 : it.compareTo(from.status) >= 0))
+                .sorted(backwards ? Comparator.reverseOrder() : Comparator.naturalOrder())
+                .flatMap(it -> {
+                    var withStatus = this.byStatus.get(it);
+                    var positions = from != null && it == from.status
+                            ? slice(withStatus, from, backwards)
+                            : slice(withStatus, null, backwards);
+                    return StreamSupport.stream(positions.spliterator(), false);
+                })
+                .iterator();
+    }
+
+    private static Iterable<ScriptPosition> slice(NavigableSet<ScriptPosition> index, ScriptPosition from, boolean backwards) {
+        if (from == null)
+            return backwards ? index.descendingSet() : index;
+        return backwards
+                ? index.headSet(from, false).descendingSet()
+                : index.tailSet(from, false);
+    }
+
+}
@@ -0,0 +1,497 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Durable key-value log. Every put and delete is appended to the active segment file, and an in-memory index
+ * keeps location of the latest record of every key, so values themselves are not kept in memory.
+ * <p>
+ * Writes are performed by a single writer thread, which takes all writes queued so far, appends them and syncs
+ * the segment once for the whole batch, so cost of fsync is shared by concurrent writers (group commit).
+ * Files a record refers to are synced by the writer together with the batch of the record, right before it is appended.
+ * When active segment is full, a new one is started; if most of the bytes in sealed segments are overwritten
+ * or deleted records, live records of all sealed segments are copied into one compacted segment
+ * and sealed segments are removed.
+ * <p>
+ * Record is {@code [int length][int crc32][byte type][int key length][utf-8 key][int value length][value]}, where length
+ * and crc cover the bytes after them. Torn record at the end of the last segment is cut off when log is opened.
+ */
+public class SegmentLog implements AutoCloseable {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final Comparator<Location> WRITE_ORDER =
+            Comparator.<Location>comparingLong(it -> it.segment).thenComparingLong(it -> it.offset);
+
+    private final Logger log = LoggerFactory.getLogger(SegmentLog.class);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxBatch;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Written only by the writer thread once it is started, read concurrently by get
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    // Owned by the writer thread once it is started
+    private final Map<Long, Long> liveBytes = new HashMap<>();
+    private final Map<Long, Long> totalBytes = new HashMap<>();
+    private long activeSegment;
+    private FileChannel active;
+
+    /**
+     * Opens log in the directory, recovering index from existing segments
+     *
+     * @param segmentSize size after which a new segment is started
+     * @param maxBatch    maximum number of writes synced together
+     */
+    public SegmentLog(Path directory, long segmentSize, int maxBatch) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBatch = maxBatch;
+        try {
+            Files.createDirectories(directory);
+            this.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not open log in " + directory, e);
+        }
+        this.writer = new Thread(this::writeLoop, "segment-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Durably stores the value of the key
+     *
+     * @return future completed when value is synced to disk
+     */
+    public CompletableFuture<Void> put(String key, byte[] value) {
+        return this.put(key, value, List.of());
+    }
+
+    /**
+     * Durably stores the value of the key, which refers to the provided files
+     *
+     * @param files files written but not synced yet, they are synced before the value is appended
+     * @return future completed when files and value are synced to disk
+     */
+    public CompletableFuture<Void> put(String key, byte[] value, Collection<Path> files) {
+        return this.enqueue(new Write(PUT, key, value, files));
+    }
+
+    /**
+     * @return future completed when deletion is synced to disk
+     */
+    public CompletableFuture<Void> delete(String key) {
+        return this.enqueue(new Write(DELETE, key, new byte[0]));
+    }
+
+    /**
+     * Reads latest value of the key, may be called concurrently with writes
+     *
+     * @return value of the key or null if it has none
+     */
+    public byte[] get(String key) {
+        while (true) {
+            var location = this.index.get(key);
+            if (location == null)
+                return null;
+            try (var channel = FileChannel.open(this.segmentPath(location.segment), StandardOpenOption.READ)) {
+                return decode(read(channel, location), HEADER_SIZE).value;
+            } catch (NoSuchFileException e) {
+                // Segment was removed by compaction after its location was taken, record is in the compacted one
+                if (this.index.get(key) == location)
+                    throw new UncheckedIOException(e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads latest values of all keys in order of their last write.
+     * Must be called before the log is written to.
+     */
+    public void forEach(BiConsumer<String, byte[]> consumer) {
+        var locations = this.index.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByValue(WRITE_ORDER))
+                .collect(Collectors.toList());
+        var channels = new HashMap<Long, FileChannel>();
+        try {
+            for (var entry : locations) {
+                var location = entry.getValue();
+                var channel = channels.get(location.segment);
+                if (channel == null) {
+                    channel = FileChannel.open(this.segmentPath(location.segment), StandardOpenOption.READ);
+                    channels.put(location.segment, channel);
+                }
+                consumer.accept(entry.getKey(), decode(read(channel, location), HEADER_SIZE).value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (var channel : channels.entrySet()) {
+                try {
+                    channel.getValue().close();
+                } catch (IOException e) {
+                    log.warn("Failed to close log segment {}", this.segmentPath(channel.getKey()), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Syncs queued writes and closes the log
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Write write) {
+        if (!this.running)
+            return CompletableFuture.failedFuture(new IllegalStateException("Log is closed"));
+        this.queue.add(write);
+        return write.synced;
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<Write>();
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                var first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                this.queue.drainTo(batch, this.maxBatch - 1);
+                this.writeBatch(batch);
+                batch.forEach(it -> it.synced.complete(null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write {} records to the log", batch.size(), e);
+                batch.forEach(it -> it.synced.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+        try {
+            this.active.force(true);
+            this.active.close();
+        } catch (IOException e) {
+            log.error("Failed to close the log", e);
+        }
+        // Writes that raced with closing
+        this.queue.forEach(it -> it.synced.completeExceptionally(new IllegalStateException("Log is closed")));
+    }
+
+    private void writeBatch(List<Write> batch) throws IOException {
+        // Every record is encoded before any is appended, so a record that can not be encoded fails alone
+        var records = new ArrayList<byte[]>(batch.size());
+        var encoded = new ArrayList<Write>(batch.size());
+        for (var write : batch) {
+            try {
+                records.add(encode(write));
+                encoded.add(write);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to encode record of key {} for the log", write.key, e);
+                write.synced.completeExceptionally(e);
+            }
+        }
+        // Record must not reach the disk before the files it refers to
+        for (var write : encoded) {
+            for (var file : write.files) {
+                try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+        for (int i = 0; i < encoded.size(); i++) {
+            var write = encoded.get(i);
+            var record = records.get(i);
+            if (this.active.size() >= this.segmentSize)
+                this.roll();
+            long offset = this.active.size();
+            var buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining())
+                this.active.write(buffer, offset + buffer.position());
+            this.totalBytes.merge(this.activeSegment, (long) record.length, Long::sum);
+            if (write.type == PUT) {
+                this.replace(write.key, new Location(this.activeSegment, offset, record.length));
+            } else {
+                this.replace(write.key, null);
+                // Tombstone is needed only until older segments are compacted
+            }
+        }
+        this.active.force(false);
+    }
+
+    private void replace(String key, Location location) {
+        var previous = location != null ? this.index.put(key, location) : this.index.remove(key);
+        if (previous != null)
+            this.liveBytes.merge(previous.segment, -(long) previous.length, Long::sum);
+        if (location != null)
+            this.liveBytes.merge(location.segment, (long) location.length, Long::sum);
+    }
+
+    private void roll() throws IOException {
+        this.active.force(true);
+        this.active.close();
+
+        long sealedTotal = 0;
+        long sealedLive = 0;
+        for (var segment : this.totalBytes.keySet()) {
+            sealedTotal += this.totalBytes.get(segment);
+            sealedLive += this.liveBytes.getOrDefault(segment, 0L);
+        }
+        long next = this.activeSegment + 1;
+        if (sealedTotal - sealedLive > sealedLive) {
+            this.compact(next);
+            next++;
+        }
+        this.openActive(next);
+    }
+
+    /**
+     * Copies live records of all segments into the segment with the provided number and removes other segments
+     */
+    private void compact(long compacted) throws IOException {
+        var live = this.index.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByValue(WRITE_ORDER))
+                .collect(Collectors.toList());
+        var temporary = this.directory.resolve(segmentName(compacted) + TEMPORARY_SUFFIX);
+        var locations = new HashMap<String, Location>();
+        var sources = new HashMap<Long, FileChannel>();
+        try (var target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (var entry : live) {
+                var location = entry.getValue();
+                var source = sources.get(location.segment);
+                if (source == null) {
+                    source = FileChannel.open(this.segmentPath(location.segment), StandardOpenOption.READ);
+                    sources.put(location.segment, source);
+                }
+                long copied = 0;
+                while (copied < location.length) {
+                    long sent = source.transferTo(location.offset + copied, location.length - copied, target);
+                    // Nothing is transferred only past the end of segment, so compaction fails rather than spins
+                    if (sent == 0)
+                        throw new EOFException("Segment " + location.segment + " ends before record of " + entry.getKey());
+                    copied += sent;
+                }
+                locations.put(entry.getKey(), new Location(compacted, offset, location.length));
+                offset += location.length;
+            }
+            target.force(true);
+        } finally {
+            for (var source : sources.values())
+                source.close();
+        }
+        Files.move(temporary, this.segmentPath(compacted), StandardCopyOption.ATOMIC_MOVE);
+
+        var removed = new ArrayList<>(this.totalBytes.keySet());
+        this.index.putAll(locations);
+        this.totalBytes.clear();
+        this.liveBytes.clear();
+        long size = locations.values().stream().mapToLong(it -> it.length).sum();
+        this.totalBytes.put(compacted, size);
+        this.liveBytes.put(compacted, size);
+        for (var segment : removed)
+            Files.deleteIfExists(this.segmentPath(segment));
+        log.info("Compacted {} log segments into {} live records", removed.size(), locations.size());
+    }
+
+    private void recover() throws IOException {
+        List<Long> segments;
+        try (var files = Files.list(this.directory)) {
+            var paths = files.collect(Collectors.toList());
+            for (var path : paths)
+                if (path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    Files.delete(path); // Compaction was interrupted, sealed segments are still there
+            segments = paths.stream()
+                    .map(it -> it.getFileName().toString())
+                    .filter(it -> it.endsWith(SEGMENT_SUFFIX))
+                    .map(it -> Long.parseLong(it.substring(0, it.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < segments.size(); i++)
+            this.recoverSegment(segments.get(i), i == segments.size() - 1);
+        this.openActive(segments.isEmpty() ? 0 : segments.get(segments.size() - 1));
+    }
+
+    private void recoverSegment(long segment, boolean last) throws IOException {
+        var path = this.segmentPath(segment);
+        long size = Files.size(path);
+        long offset = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int crc = in.readInt();
+                if (length < 0 || offset + HEADER_SIZE + length > size)
+                    throw new EOFException("Record exceeds segment");
+                var body = new byte[length];
+                in.readFully(body);
+                if (crc != crc32(body))
+                    throw new EOFException("Checksum mismatch");
+                var record = decode(body, 0);
+                this.totalBytes.merge(segment, (long) HEADER_SIZE + length, Long::sum);
+                this.replace(record.key, record.type == PUT ? new Location(segment, offset, HEADER_SIZE + length) : null);
+                offset += HEADER_SIZE + length;
+            }
+        } catch (EOFException e) {
+            // Record was not completely written before the crash
+            log.warn("Log segment {} is truncated after {} bytes", path, offset);
+            if (last) {
+                try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(offset);
+                }
+            }
+        }
+        this.totalBytes.putIfAbsent(segment, 0L);
+    }
+
+    private void openActive(long segment) throws IOException {
+        this.activeSegment = segment;
+        this.active = FileChannel.open(this.segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.totalBytes.putIfAbsent(segment, 0L);
+    }
+
+    private Path segmentPath(long segment) {
+        return this.directory.resolve(segmentName(segment) + SEGMENT_SUFFIX);
+    }
+
+    private static String segmentName(long segment) {
+        return String.format("%020d", segment);
+    }
+
+    private static byte[] encode(Write write) throws IOException {
+        var key = write.key.getBytes(StandardCharsets.UTF_8);
+        var body = new ByteArrayOutputStream(write.value.length + key.length + 16);
+        var out = new DataOutputStream(body);
+        out.writeByte(write.type);
+        // Key is not limited to the 65535 bytes of modified UTF-8
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeInt(write.value.length);
+        out.write(write.value);
+        var bytes = body.toByteArray();
+        return ByteBuffer.allocate(HEADER_SIZE + bytes.length)
+                .putInt(bytes.length)
+                .putInt(crc32(bytes))
+                .put(bytes)
+                .array();
+    }
+
+    /**
+     * @param offset offset of the record body in the bytes
+     */
+    private static Write decode(byte[] bytes, int offset) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+        var type = in.readByte();
+        var keyBytes = new byte[in.readInt()];
+        in.readFully(keyBytes);
+        var key = new String(keyBytes, StandardCharsets.UTF_8);
+        var value = new byte[in.readInt()];
+        in.readFully(value);
+        return new Write(type, key, value);
+    }
+
+    private static byte[] read(FileChannel channel, Location location) throws IOException {
+        var record = ByteBuffer.allocate(location.length);
+        while (record.hasRemaining() && channel.read(record, location.offset + record.position()) >= 0) {
+            // Reading until the whole record is read
+        }
+        return record.array();
+    }
+
+    private static int crc32(byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static class Location {
+
+        final long segment;
+        final long offset;
+        final int length;
+
+        Location(long segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+    private static class Write {
+
+        final byte type;
+        final String key;
+        final byte[] value;
+        final Collection<Path> files;
+        final CompletableFuture<Void> synced = new CompletableFuture<>();
+
+        Write(byte type, String key, byte[] value) {
+            this(type, key, value, List.of());
+        }
+
+        Write(byte type, String key, byte[] value, Collection<Path> files) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.files = files;
+        }
+
+    }
+
+}
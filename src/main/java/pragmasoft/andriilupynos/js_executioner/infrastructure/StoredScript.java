@@ -0,0 +1,26 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+
+import java.io.OutputStream;
+
+/**
+ * Script restored from storage, it has already finished and can not be run again
+ */
+class StoredScript extends Script {
+
+    StoredScript(String code) {
+        super(code, OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+    }
+
+    @Override
+    public void run() {
+        throw new UnsupportedOperationException("Restored script can not be run");
+    }
+
+    @Override
+    public void close() {
+        // Nothing is held by a restored script
+    }
+
+}
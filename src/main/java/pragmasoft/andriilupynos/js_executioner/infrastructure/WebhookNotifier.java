@@ -0,0 +1,151 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEvent;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+import pragmasoft.andriilupynos.js_executioner.domain.TaskTimer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Posts status changes of scripts to webhook URLs as JSON arrays of events.
+ * <p>
+ * Events received from the bus together are sent in batches of at most {@code maxBatch} events.
+ * Requests are sent asynchronously, so a slow endpoint does not hold back the bus. Batch failing with
+ * a connection error, 429 or 5xx is retried with exponentially growing delay, batches are not ordered
+ * relative to each other while they are retried.
+ */
+public class WebhookNotifier implements ScriptEventBus.Subscriber, AutoCloseable {
+
+    private final Logger log = LoggerFactory.getLogger(WebhookNotifier.class);
+
+    private final List<URI> urls;
+    private final boolean terminalOnly;
+    private final int maxBatch;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper;
+    private final TaskTimer timer;
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile ScriptEventBus.Subscription subscription;
+    private volatile boolean closed = false;
+
+    /**
+     * @param terminalOnly whether only changes to a terminal status are sent
+     * @param maxAttempts  attempts to deliver a batch, including the first one
+     * @param retryDelay   delay before the second attempt, doubled for every next one
+     * @param timer        delays retries
+     */
+    public WebhookNotifier(
+            List<URI> urls,
+            boolean terminalOnly,
+            int maxBatch,
+            int maxAttempts,
+            Duration retryDelay,
+            Duration timeout,
+            HttpClient client,
+            ObjectMapper objectMapper,
+            TaskTimer timer
+    ) {
+        this.urls = urls;
+        this.terminalOnly = terminalOnly;
+        this.maxBatch = maxBatch;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.timeout = timeout;
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.timer = timer;
+    }
+
+    public void subscribeTo(ScriptEventBus eventBus) {
+        this.subscription = eventBus.subscribe(this);
+    }
+
+    @Override
+    public void onEvents(List<ScriptEvent> events) {
+        var selected = this.terminalOnly
+                ? events.stream().filter(event -> event.status.isTerminal()).collect(Collectors.toList())
+                : events;
+        for (int from = 0; from < selected.size(); from += this.maxBatch) {
+            var batch = selected.subList(from, Math.min(from + this.maxBatch, selected.size()));
+            byte[] body;
+            try {
+                body = this.objectMapper.writeValueAsBytes(batch);
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize {} script events", batch.size(), e);
+                this.failed.addAndGet((long) batch.size() * this.urls.size());
+                continue;
+            }
+            for (var url : this.urls)
+                this.send(url, body, batch.size(), 1);
+        }
+    }
+
+    @Override
+    public void onDropped(long count) {
+        log.warn("Webhooks missed {} script events that were overwritten before they were sent", count);
+        this.failed.addAndGet(count * this.urls.size());
+    }
+
+    /**
+     * Events delivered to webhooks, counted once for every URL
+     */
+    public long getDeliveredCount() {
+        return this.delivered.get();
+    }
+
+    /**
+     * Events that were not delivered after all attempts, counted once for every URL
+     */
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        var subscription = this.subscription;
+        if (subscription != null)
+            subscription.close();
+    }
+
+    private void send(URI url, byte[] body, int events, int attempt) {
+        var request = HttpRequest.newBuilder(url)
+                .timeout(this.timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        this.client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (error == null && response.statusCode() < 300) {
+                this.delivered.addAndGet(events);
+                return;
+            }
+            var retryable = error != null || response.statusCode() == 429 || response.statusCode() >= 500;
+            if (retryable && attempt < this.maxAttempts && !this.closed) {
+                var delay = this.retryDelay.multipliedBy(1L << Math.min(attempt - 1, 16));
+                this.timer.schedule(delay, () -> this.send(url, body, events, attempt + 1));
+                return;
+            }
+            this.failed.addAndGet(events);
+            log.warn(
+                    "Failed to deliver {} script events to {} after {} attempts: {}",
+                    events, url, attempt, error != null ? error.getMessage() : "status " + response.statusCode()
+            );
+        });
+    }
+
+}
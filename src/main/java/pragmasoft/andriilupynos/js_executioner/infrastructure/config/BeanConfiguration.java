@@ -1,13 +1,39 @@
 package pragmasoft.andriilupynos.js_executioner.infrastructure.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.graalvm.polyglot.Engine;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
 import pragmasoft.andriilupynos.js_executioner.domain.*;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.DefaultScriptOutputFactory;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.FairShareScheduler;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.HierarchicalTimingWheel;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSContextPool;
 import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSScriptFactory;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.GraalJSSourceCache;
 import pragmasoft.andriilupynos.js_executioner.infrastructure.InMemoryScriptExecutionRepository;
 import pragmasoft.andriilupynos.js_executioner.infrastructure.InMemoryScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.JdbcScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.LogScriptInfoRepository;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.ScriptExecutors;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ConsoleHandler;
 
 @Configuration
 public class BeanConfiguration {
@@ -16,24 +42,214 @@ public class BeanConfiguration {
     public ScriptService scriptService(
             ScriptFactory scriptFactory,
             ScriptInfoRepository scriptInfoRepository,
-            ScriptExecutionRepository scriptExecutionRepository
+            ScriptScheduler scriptScheduler,
+            TaskTimer scriptTimer,
+            ScriptLimits defaultScriptLimits,
+            ScriptOutputFactory scriptOutputFactory,
+            ScriptExecutionRepository scriptExecutionRepository,
+            ScriptEventBus scriptEventBus,
+            @Qualifier("scriptPreparationExecutor") ExecutorService scriptPreparationExecutor
     ) {
         return new DomainScriptService(
                 scriptFactory,
                 scriptInfoRepository,
-                Executors.newFixedThreadPool(8),
-                scriptExecutionRepository
+                scriptScheduler,
+                scriptTimer,
+                defaultScriptLimits,
+                scriptOutputFactory,
+                scriptExecutionRepository,
+                scriptEventBus,
+                scriptPreparationExecutor
         );
     }
 
     @Bean
-    public ScriptFactory scriptFactory() {
-        return new GraalJSScriptFactory();
+    public ScriptLimits defaultScriptLimits(
+            @Value("${scripts.limits.max-statements:0}") long maxStatements,
+            @Value("${scripts.limits.max-wall-time:0}") Duration maxWallTime,
+            @Value("${scripts.limits.max-cpu-time:0}") Duration maxCpuTime,
+            @Value("${scripts.limits.max-allocated:0}") DataSize maxAllocated
+    ) {
+        return ScriptLimits.UNLIMITED
+                .withMaxStatements(maxStatements)
+                .withMaxWallTime(maxWallTime)
+                .withMaxCpuTime(maxCpuTime)
+                .withMaxAllocatedBytes(maxAllocated.toBytes());
     }
 
     @Bean
-    public ScriptInfoRepository scriptInfoRepository() {
-        return new InMemoryScriptInfoRepository();
+    public ScriptOutputFactory scriptOutputFactory(
+            @Value("${scripts.output.mode:unbounded}") ScriptOutputMode mode,
+            @Value("${scripts.output.head-tail.head-size:64KB}") DataSize headSize,
+            @Value("${scripts.output.head-tail.tail-size:1MB}") DataSize tailSize,
+            @Value("${scripts.output.spill.memory-threshold:1MB}") DataSize spillThreshold,
+            @Value("${scripts.output.spill.max-size:1GB}") DataSize spillMaxSize,
+            @Value("${scripts.output.spill.directory:${java.io.tmpdir}}") Path spillDirectory
+    ) {
+        return new DefaultScriptOutputFactory(
+                mode,
+                Math.toIntExact(headSize.toBytes()),
+                Math.toIntExact(tailSize.toBytes()),
+                spillThreshold.toBytes(),
+                spillMaxSize.toBytes(),
+                spillDirectory
+        );
+    }
+
+    @Bean(destroyMethod = "close")
+    public HierarchicalTimingWheel scriptTimer(
+            @Value("${scripts.timer.tick:10ms}") Duration tick,
+            @Value("${scripts.timer.wheel-size:512}") int wheelSize
+    ) {
+        var taskExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "script-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new HierarchicalTimingWheel(tick, wheelSize, taskExecutor);
+    }
+
+    @Bean
+    public ScriptScheduler scriptScheduler(
+            @Qualifier("scriptExecutor") ExecutorService scriptExecutor,
+            Environment environment,
+            MeterRegistry meterRegistry,
+            @Value("${scripts.scheduler.max-concurrency:${scripts.executor.parallelism:8}}") int maxConcurrency,
+            @Value("${scripts.scheduler.queue-capacity:10000}") int queueCapacity,
+            @Value("${scripts.scheduler.aging-interval:10s}") Duration agingInterval
+    ) {
+        var weights = Binder.get(environment)
+                .bind("scripts.scheduler.weights", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Map.of());
+        var scheduler = new FairShareScheduler(scriptExecutor, maxConcurrency, queueCapacity, agingInterval, weights);
+
+        Gauge.builder("scripts.scheduler.queued", scheduler, FairShareScheduler::getQueuedCount)
+                .description("Executions waiting to be started")
+                .register(meterRegistry);
+        Gauge.builder("scripts.scheduler.running", scheduler, FairShareScheduler::getRunningCount)
+                .description("Executions passed to the executor")
+                .register(meterRegistry);
+        Gauge.builder("scripts.scheduler.saturation", scheduler, it -> (double) it.getQueuedCount() / it.getQueueCapacity())
+                .description("Share of the execution queue capacity in use")
+                .register(meterRegistry);
+        FunctionCounter.builder("scripts.admission.rejected", scheduler, FairShareScheduler::getRejectedCount)
+                .description("Script submissions rejected by admission control")
+                .tag("reason", "queue-full")
+                .register(meterRegistry);
+        return scheduler;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ScriptEventBus scriptEventBus(
+            MeterRegistry meterRegistry,
+            @Value("${scripts.events.capacity:65536}") int capacity,
+            @Value("${scripts.events.dispatchers:4}") int dispatchers
+    ) {
+        var counter = new AtomicInteger();
+        var dispatcher = Executors.newFixedThreadPool(dispatchers, runnable -> {
+            var thread = new Thread(runnable, "script-events-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        var eventBus = new ScriptEventBus(capacity, dispatcher);
+
+        FunctionCounter.builder("scripts.events.published", eventBus, ScriptEventBus::getPublishedCount)
+                .description("Status changes of scripts published to subscribers")
+                .register(meterRegistry);
+        FunctionCounter.builder("scripts.events.dropped", eventBus, ScriptEventBus::getDroppedCount)
+                .description("Events skipped by subscribers that fell behind the event buffer")
+                .register(meterRegistry);
+        return eventBus;
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService scriptExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${scripts.executor.type:fixed}") ScriptExecutors.Type type,
+            @Value("${scripts.executor.parallelism:8}") int parallelism
+    ) {
+        return ScriptExecutors.create(type, parallelism, meterRegistry);
+    }
+
+    /**
+     * Parses scripts of batches, kept apart from the common pool so batches neither wait for nor stall
+     * unrelated parallel work
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService scriptPreparationExecutor(
+            @Value("${scripts.batch.parallelism:0}") int parallelism
+    ) {
+        var counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    var thread = new Thread(runnable, "script-preparation-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    @Bean
+    public ScriptFactory scriptFactory(
+            MeterRegistry meterRegistry,
+            ScriptLimits defaultScriptLimits,
+            @Value("${scripts.context-pool.min-idle:2}") int minIdle,
+            @Value("${scripts.context-pool.max-idle:16}") int maxIdle,
+            @Value("${scripts.context-pool.idle-timeout:5m}") Duration idleTimeout,
+            @Value("${scripts.source-cache.max-entries:10000}") int cacheMaxEntries,
+            @Value("${scripts.source-cache.max-weight:50000000}") long cacheMaxWeight,
+            @Value("${scripts.source-cache.ttl:1h}") Duration cacheTtl
+    ) {
+        var engine = Engine.newBuilder().logHandler(new ConsoleHandler()).build();
+        return new GraalJSScriptFactory(
+                new GraalJSContextPool(
+                        engine,
+                        minIdle,
+                        maxIdle,
+                        idleTimeout,
+                        defaultScriptLimits.hasStatementLimit() ? defaultScriptLimits.maxStatements : 0,
+                        meterRegistry
+                ),
+                new GraalJSSourceCache(cacheMaxEntries, cacheMaxWeight, cacheTtl, meterRegistry)
+        );
+    }
+
+    @Bean
+    public ScriptInfoRepository scriptInfoRepository(
+            ScriptExecutionRepository scriptExecutionRepository,
+            @Value("${scripts.store.type:memory}") ScriptStoreType type,
+            @Value("${scripts.store.directory:data}") Path directory,
+            @Value("${scripts.store.segment-size:64MB}") DataSize segmentSize,
+            @Value("${scripts.store.max-batch:1024}") int maxBatch,
+            @Value("${scripts.store.jdbc.url:jdbc:h2:file:./data/scripts}") String jdbcUrl,
+            @Value("${scripts.store.jdbc.username:sa}") String jdbcUsername,
+            @Value("${scripts.store.jdbc.password:}") String jdbcPassword,
+            @Value("${scripts.store.jdbc.pool-size:8}") int jdbcPoolSize,
+            @Value("${scripts.store.jdbc.initialize-schema:true}") boolean jdbcInitializeSchema,
+            @Value("${scripts.store.jdbc.flush-interval:100ms}") Duration jdbcFlushInterval,
+            @Value("${scripts.store.jdbc.max-batch:1000}") int jdbcMaxBatch
+    ) {
+        switch (type) {
+            case LOG:
+                return new LogScriptInfoRepository(directory, segmentSize.toBytes(), maxBatch, scriptExecutionRepository);
+            case JDBC:
+                var config = new HikariConfig();
+                config.setPoolName("script-store");
+                config.setJdbcUrl(jdbcUrl);
+                config.setUsername(jdbcUsername);
+                config.setPassword(jdbcPassword);
+                config.setMaximumPoolSize(jdbcPoolSize);
+                return new JdbcScriptInfoRepository(
+                        new HikariDataSource(config),
+                        jdbcInitializeSchema,
+                        jdbcFlushInterval,
+                        jdbcMaxBatch,
+                        scriptExecutionRepository
+                );
+            default:
+                return new InMemoryScriptInfoRepository();
+        }
     }
 
     @Bean
@@ -41,4 +257,19 @@ public class BeanConfiguration {
         return new InMemoryScriptExecutionRepository();
     }
 
+    public enum ScriptStoreType {
+        /**
+         * Scripts are kept in memory only and are lost on restart
+         */
+        MEMORY,
+        /**
+         * Scripts are kept in an append-only log on disk
+         */
+        LOG,
+        /**
+         * Scripts are kept in a relational database
+         */
+        JDBC
+    }
+
 }
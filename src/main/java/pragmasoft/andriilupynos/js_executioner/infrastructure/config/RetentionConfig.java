@@ -0,0 +1,57 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.unit.DataSize;
+import pragmasoft.andriilupynos.js_executioner.domain.RetentionPolicy;
+import pragmasoft.andriilupynos.js_executioner.domain.RetentionSweeper;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "scripts.retention.enabled", havingValue = "true")
+public class RetentionConfig {
+
+    private final RetentionSweeper sweeper;
+
+    public RetentionConfig(
+            ScriptService scriptService,
+            ScriptEventBus scriptEventBus,
+            MeterRegistry meterRegistry,
+            @Value("${scripts.retention.max-age:1d}") Duration maxAge,
+            @Value("${scripts.retention.max-count:10000}") int maxCount,
+            @Value("${scripts.retention.max-output:1GB}") DataSize maxOutput
+    ) {
+        this.sweeper = new RetentionSweeper(
+                scriptService,
+                scriptEventBus,
+                new RetentionPolicy(maxAge, maxCount, maxOutput.toBytes())
+        );
+
+        FunctionCounter.builder("scripts.retention.evicted", this.sweeper, RetentionSweeper::getEvictedCount)
+                .description("Finished scripts evicted by the retention policy")
+                .register(meterRegistry);
+        FunctionCounter.builder("scripts.retention.reclaimed", this.sweeper, RetentionSweeper::getReclaimedBytes)
+                .description("Output bytes freed by eviction of finished scripts")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${scripts.retention.sweep-interval:PT1M}")
+    public void evictFinishedScripts() {
+        this.sweeper.sweep();
+    }
+
+    @PreDestroy
+    public void close() {
+        this.sweeper.close();
+    }
+
+}
@@ -0,0 +1,59 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEventBus;
+import pragmasoft.andriilupynos.js_executioner.domain.TaskTimer;
+import pragmasoft.andriilupynos.js_executioner.infrastructure.WebhookNotifier;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+@Configuration
+@ConditionalOnProperty(name = "scripts.events.webhooks.urls")
+public class WebhookConfig {
+
+    @Bean(destroyMethod = "close")
+    public WebhookNotifier webhookNotifier(
+            ScriptEventBus scriptEventBus,
+            TaskTimer scriptTimer,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${scripts.events.webhooks.urls}") String[] urls,
+            @Value("${scripts.events.webhooks.terminal-only:true}") boolean terminalOnly,
+            @Value("${scripts.events.webhooks.max-batch:100}") int maxBatch,
+            @Value("${scripts.events.webhooks.max-attempts:5}") int maxAttempts,
+            @Value("${scripts.events.webhooks.retry-delay:1s}") Duration retryDelay,
+            @Value("${scripts.events.webhooks.timeout:10s}") Duration timeout
+    ) {
+        var notifier = new WebhookNotifier(
+                Arrays.stream(urls).map(String::trim).map(URI::create).collect(Collectors.toList()),
+                terminalOnly,
+                maxBatch,
+                maxAttempts,
+                retryDelay,
+                timeout,
+                HttpClient.newBuilder().connectTimeout(timeout).build(),
+                objectMapper,
+                scriptTimer
+        );
+        notifier.subscribeTo(scriptEventBus);
+
+        FunctionCounter.builder("scripts.events.webhooks.delivered", notifier, WebhookNotifier::getDeliveredCount)
+                .description("Script events delivered to webhooks")
+                .register(meterRegistry);
+        FunctionCounter.builder("scripts.events.webhooks.failed", notifier, WebhookNotifier::getFailedCount)
+                .description("Script events that could not be delivered to webhooks")
+                .register(meterRegistry);
+        return notifier;
+    }
+
+}
@@ -0,0 +1,534 @@
+package pragmasoft.andriilupynos.js_executioner.application.api;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "scripts.output.head-tail.head-size=16B",
+        "scripts.output.head-tail.tail-size=16B",
+        "scripts.batch.max-size=3",
+        "scripts.code.max-size=64B"
+})
+@AutoConfigureMockMvc
+class ScriptControllerTests {
+
+    // Lines of 16 bytes at the beginning and the end and 32 bytes in the middle
+    private static final String HEAD_MIDDLE_TAIL =
+            "console.log('h'.repeat(15)); console.log('m'.repeat(31)); console.log('t'.repeat(15))";
+
+    @Autowired private MockMvc mvc;
+    @Autowired private ScriptService scriptService;
+
+    @Test
+    void rangeSpanningDroppedOutputShouldCoverOnlyKeptBytes() throws Exception {
+        // GIVEN - finished script whose head-tail output dropped its middle line
+        var scriptInfo = finishedHeadTailScript();
+
+        // WHEN - range from the head into the dropped middle is requested
+        var result = mvc.perform(get("/scripts/{name}/output", scriptInfo.name).header(HttpHeaders.RANGE, "bytes=8-55"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN - response should claim exactly the head bytes it carries
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-15/64"))
+                .andExpect(content().string("hhhhhhh\n"));
+    }
+
+    @Test
+    void rangeStartingInDroppedOutputShouldStartAtTail() throws Exception {
+        // GIVEN
+        var scriptInfo = finishedHeadTailScript();
+
+        // WHEN - range starting in the dropped middle is requested
+        var result = mvc.perform(get("/scripts/{name}/output", scriptInfo.name).header(HttpHeaders.RANGE, "bytes=20-59"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN - response should start at the first kept byte
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 48-59/64"))
+                .andExpect(content().string("tttttttttttt"));
+    }
+
+    @Test
+    void rangeBeyondOutputShouldNotBeSatisfiable() throws Exception {
+        // GIVEN
+        var scriptInfo = finishedHeadTailScript();
+
+        // WHEN
+        mvc.perform(get("/scripts/{name}/output", scriptInfo.name).header(HttpHeaders.RANGE, "bytes=100-200"))
+                // THEN
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */64"));
+    }
+
+    @Test
+    void batchShouldAnswerEveryScriptWithItsOwnStatus() throws Exception {
+        // GIVEN - valid script, script that can not be parsed and script named as the first one
+        var name = UUID.randomUUID().toString();
+        var batch = "[" +
+                "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\"}," +
+                "{\"code\": \"console.log(\"}," +
+                "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\"}" +
+                "]";
+
+        // WHEN
+        mvc.perform(post("/scripts/batch").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(batch))
+                // THEN - results should follow the order of the batch
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[0].status").value(202))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[0].name").value(name))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[1].status").value(400))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[2].status").value(400))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[2].index").value(2));
+    }
+
+    @Test
+    void ndjsonBatchShouldAnswerInvalidLineOnItsOwn() throws Exception {
+        // GIVEN - valid script, blank line and line that is not a script
+        var name = UUID.randomUUID().toString();
+        var batch = "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\"}\n" +
+                "\n" +
+                "not a script\n";
+
+        // WHEN
+        mvc.perform(post("/scripts/batch").with(csrf()).contentType(MediaType.APPLICATION_NDJSON).content(batch))
+                // THEN - blank line should be skipped
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList.length()").value(2))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[0].status").value(202))
+                .andExpect(jsonPath("$._embedded.scriptBatchItemDtoList[1].status").value(400));
+    }
+
+    @Test
+    void batchExceedingMaxSizeShouldBeRejected() throws Exception {
+        // GIVEN - one script more than the batch may contain
+        var batch = "{\"code\": \"console.log('Hi')\"}\n".repeat(4);
+
+        // WHEN
+        mvc.perform(post("/scripts/batch").with(csrf()).contentType(MediaType.APPLICATION_NDJSON).content(batch))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void cronThatNeverFiresShouldBeRejectedWithoutStoringScript() throws Exception {
+        // GIVEN - valid expression of the 30th of February
+        var name = UUID.randomUUID().toString();
+        var rq = "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\", \"cron\": \"0 0 0 30 2 ?\"}";
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(rq))
+                // THEN
+                .andExpect(status().isBadRequest());
+        assertThrows(ScriptNotFoundException.class, () -> scriptService.get(name));
+    }
+
+    @Test
+    void scriptWithTooLongNameShouldBeRejected() throws Exception {
+        // GIVEN - name one character longer than stores keep
+        var name = "n".repeat(ScriptInfo.MAX_NAME_LENGTH + 1);
+        var rq = "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\"}";
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(rq))
+                // THEN
+                .andExpect(status().isBadRequest());
+        assertThrows(ScriptNotFoundException.class, () -> scriptService.get(name));
+    }
+
+    @Test
+    void recurringScriptWhoseOccurrencesWouldHaveTooLongNamesShouldBeRejected() throws Exception {
+        // GIVEN - name that fits the limit, while names of its occurrences would not
+        var name = UUID.randomUUID() + "n".repeat(ScriptInfo.MAX_NAME_LENGTH - 36);
+        var rq = "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\", \"cron\": \"0 0 0 * * ?\"}";
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(rq))
+                // THEN
+                .andExpect(status().isBadRequest());
+        assertThrows(ScriptNotFoundException.class, () -> scriptService.get(name));
+    }
+
+    @Test
+    void plainBodyShouldBeScheduledAsCode() throws Exception {
+        // GIVEN
+        var name = UUID.randomUUID().toString();
+
+        // WHEN
+        mvc.perform(post("/scripts")
+                        .with(csrf())
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .header(ScriptController.SCRIPT_NAME_HEADER, name)
+                        .content("console.log(\"Hi\")"))
+                // THEN - code should be taken as is
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.name").value(name));
+        awaitOutput(name, "Hi\n");
+    }
+
+    @Test
+    void uploadedFileShouldBeScheduledAsCode() throws Exception {
+        // GIVEN
+        var name = UUID.randomUUID().toString();
+        var file = new MockMultipartFile(
+                "code",
+                name + ".js",
+                ScriptController.APPLICATION_JAVASCRIPT_VALUE,
+                "console.log('Hi')".getBytes(StandardCharsets.UTF_8)
+        );
+
+        // WHEN
+        mvc.perform(multipart("/scripts").file(file).with(csrf()))
+                // THEN - name should be taken from the file name
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.name").value(name + ".js"));
+        awaitOutput(name + ".js", "Hi\n");
+    }
+
+    @Test
+    void plainBodyExceedingMaxSizeShouldBeRejected() throws Exception {
+        // GIVEN - code one byte longer than allowed
+        var code = "//" + "x".repeat(63);
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).contentType(MediaType.TEXT_PLAIN).content(code))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void uploadedFileExceedingMaxSizeShouldBeRejected() throws Exception {
+        // GIVEN - code one byte longer than allowed
+        var file = new MockMultipartFile(
+                "code",
+                "big.js",
+                ScriptController.APPLICATION_JAVASCRIPT_VALUE,
+                ("//" + "x".repeat(63)).getBytes(StandardCharsets.UTF_8)
+        );
+
+        // WHEN
+        mvc.perform(multipart("/scripts").file(file).with(csrf()))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runScriptFinishedInTimeShouldBeAnsweredWithItsOutput() throws Exception {
+        // GIVEN
+        var name = UUID.randomUUID().toString();
+        var rq = "{\"code\": \"console.log('Hi')\", \"name\": \"" + name + "\"}";
+
+        // WHEN
+        var result = mvc.perform(post("/scripts").with(csrf()).param("wait", "5s")
+                        .contentType(MediaType.APPLICATION_JSON).content(rq))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.output").value("Hi\n"));
+    }
+
+    @Test
+    void runScriptNotFinishedInTimeShouldBeAnsweredAsScheduled() throws Exception {
+        // GIVEN
+        var name = UUID.randomUUID().toString();
+        var rq = "{\"code\": \"while(true) {}\", \"name\": \"" + name + "\"}";
+
+        try {
+            // WHEN
+            var result = mvc.perform(post("/scripts").with(csrf()).param("wait", "100ms")
+                            .contentType(MediaType.APPLICATION_JSON).content(rq))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            // THEN - response should be the same as without waiting
+            mvc.perform(asyncDispatch(result))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.name").value(name));
+        } finally {
+            scriptService.stopExecution(name);
+        }
+    }
+
+    @Test
+    void runScriptWithInvalidWaitShouldBeRejected() throws Exception {
+        // GIVEN
+        var rq = "{\"code\": \"console.log('Hi')\"}";
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).param("wait", "soon")
+                        .contentType(MediaType.APPLICATION_JSON).content(rq))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runScriptWithWaitExceedingMaxShouldBeRejected() throws Exception {
+        // GIVEN - wait longer than scripts.wait.max
+        var rq = "{\"code\": \"console.log('Hi')\"}";
+
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).param("wait", "2m")
+                        .contentType(MediaType.APPLICATION_JSON).content(rq))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runScriptCodeFinishedInTimeShouldBeAnsweredWithItsOutput() throws Exception {
+        // WHEN
+        var result = mvc.perform(post("/scripts").with(csrf()).param("wait", "5s")
+                        .contentType(MediaType.TEXT_PLAIN).content("console.log(\"Hi\")"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.output").value("Hi\n"));
+    }
+
+    @Test
+    void runScriptCodeWithInvalidWaitShouldBeRejected() throws Exception {
+        // WHEN
+        mvc.perform(post("/scripts").with(csrf()).param("wait", "-1s")
+                        .contentType(MediaType.TEXT_PLAIN).content("console.log(\"Hi\")"))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runUploadedScriptFinishedInTimeShouldBeAnsweredWithItsOutput() throws Exception {
+        // GIVEN
+        var file = new MockMultipartFile(
+                "code",
+                UUID.randomUUID() + ".js",
+                ScriptController.APPLICATION_JAVASCRIPT_VALUE,
+                "console.log('Hi')".getBytes(StandardCharsets.UTF_8)
+        );
+
+        // WHEN
+        var result = mvc.perform(multipart("/scripts").file(file).param("wait", "5s").with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.output").value("Hi\n"));
+    }
+
+    @Test
+    void runUploadedScriptNotFinishedInTimeShouldBeAnsweredAsScheduled() throws Exception {
+        // GIVEN
+        var name = UUID.randomUUID() + ".js";
+        var file = new MockMultipartFile(
+                "code",
+                name,
+                ScriptController.APPLICATION_JAVASCRIPT_VALUE,
+                "while(true) {}".getBytes(StandardCharsets.UTF_8)
+        );
+
+        try {
+            // WHEN
+            var result = mvc.perform(multipart("/scripts").file(file).param("wait", "100ms").with(csrf()))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            // THEN
+            mvc.perform(asyncDispatch(result))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.name").value(name));
+        } finally {
+            scriptService.stopExecution(name);
+        }
+    }
+
+    @Test
+    void runUploadedScriptWithWaitExceedingMaxShouldBeRejected() throws Exception {
+        // GIVEN
+        var file = new MockMultipartFile(
+                "code",
+                "wait.js",
+                ScriptController.APPLICATION_JAVASCRIPT_VALUE,
+                "console.log('Hi')".getBytes(StandardCharsets.UTF_8)
+        );
+
+        // WHEN
+        mvc.perform(multipart("/scripts").file(file).param("wait", "2m").with(csrf()))
+                // THEN
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void waitForScriptExecutionShouldAnswerOnceScriptFinishes() throws Exception {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('Hi')");
+        scriptService.execute(scriptInfo);
+
+        // WHEN
+        var result = mvc.perform(get("/scripts/{name}/execution", scriptInfo.name).param("waitForCompletion", "5s"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.output").value("Hi\n"));
+    }
+
+    @Test
+    void waitForScriptExecutionShouldAnswerWithRunningScriptOnceWaitPasses() throws Exception {
+        // GIVEN
+        var scriptInfo = scriptService.create("while(true) {}");
+        scriptService.execute(scriptInfo);
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> scriptInfo.getStatus() == ScriptInfo.Status.RUNNING);
+
+        try {
+            // WHEN
+            var result = mvc.perform(get("/scripts/{name}/execution", scriptInfo.name).param("waitForCompletion", "100ms"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            // THEN - execution should be answered as it is
+            mvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status").value("RUNNING"));
+        } finally {
+            scriptService.stopExecution(scriptInfo.name);
+        }
+    }
+
+    @Test
+    void waitForScriptExecutionWithInvalidWaitShouldBeRejected() throws Exception {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('Hi')");
+
+        // WHEN
+        mvc.perform(get("/scripts/{name}/execution", scriptInfo.name).param("waitForCompletion", "soon"))
+                // THEN
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/scripts/{name}/execution", scriptInfo.name).param("waitForCompletion", "2m"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void eventStreamShouldResumeAfterLastEventId() throws Exception {
+        // GIVEN - stream that received creation of the first script
+        var first = UUID.randomUUID().toString();
+        var second = UUID.randomUUID().toString();
+        var stream = mvc.perform(get("/scripts/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        scriptService.create("console.log('first')", first);
+        long firstId = awaitEventId(stream.getResponse(), first);
+        scriptService.create("console.log('second')", second);
+
+        // WHEN - client reconnects with the id of the event it received last
+        var resumed = mvc.perform(get("/scripts/events").header("Last-Event-ID", String.valueOf(firstId)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // THEN - stream should start right after that event
+        long secondId = awaitEventId(resumed.getResponse(), second);
+        var content = resumed.getResponse().getContentAsString();
+        assertTrue(secondId > firstId);
+        assertTrue(content.startsWith("id:" + (firstId + 1) + "\n"));
+        assertFalse(eventIdOf(content, first).isPresent());
+    }
+
+    @Test
+    void eventStreamWithMalformedLastEventIdShouldStreamOnlyNewEvents() throws Exception {
+        // GIVEN
+        var old = UUID.randomUUID().toString();
+        var created = UUID.randomUUID().toString();
+        scriptService.create("console.log('old')", old);
+
+        // WHEN
+        var stream = mvc.perform(get("/scripts/events").header("Last-Event-ID", "not-an-id"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        scriptService.create("console.log('new')", created);
+
+        // THEN
+        awaitEventId(stream.getResponse(), created);
+        assertFalse(eventIdOf(stream.getResponse().getContentAsString(), old).isPresent());
+    }
+
+    /**
+     * @return id of the first status event of the named script received by the stream
+     */
+    private long awaitEventId(MockHttpServletResponse stream, String name) {
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> eventIdOf(stream.getContentAsString(), name).isPresent());
+        return eventIdOf(stream.getContentAsString(), name).orElseThrow();
+    }
+
+    private static Optional<Long> eventIdOf(String stream, String name) {
+        var matcher = Pattern.compile("id:(\\d+)\nevent:status\ndata:[^\n]*\"name\":\"" + Pattern.quote(name) + "\"")
+                .matcher(stream);
+        return matcher.find() ? Optional.of(Long.parseLong(matcher.group(1))) : Optional.empty();
+    }
+
+    private void awaitOutput(String name, String output) {
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> scriptService.get(name).getStatus() == ScriptInfo.Status.COMPLETED);
+        assertEquals(output, scriptService.get(name).getOut());
+    }
+
+    private ScriptInfo finishedHeadTailScript() throws Exception {
+        var scriptInfo = scriptService.create(
+                HEAD_MIDDLE_TAIL,
+                UUID.randomUUID().toString(),
+                ScriptLimits.DEFAULT,
+                ScriptOutputMode.HEAD_TAIL
+        );
+        scriptService.execute(scriptInfo).get();
+        return scriptInfo;
+    }
+
+}
@@ -0,0 +1,93 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import pragmasoft.andriilupynos.js_executioner.application.api.ScriptController;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitInterceptorTests {
+
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(
+            new ClientRateLimiter(2, 0.001, Duration.ofMinutes(10), new SimpleMeterRegistry()),
+            new SimpleMeterRegistry()
+    );
+
+    @Test
+    void anonymousClientShouldNotEscapeRateLimitByChangingItsId() {
+        // GIVEN - anonymous client that used its budget
+        submit("10.0.0.1", null, "a");
+        submit("10.0.0.1", null, "b");
+
+        // WHEN - it sends a request with yet another client id
+        // THEN - request should be rejected
+        assertThrows(RateLimitExceededException.class, () -> submit("10.0.0.1", null, "c"));
+    }
+
+    @Test
+    void anonymousClientShouldNotUseBudgetOfAnotherOneByTakingItsId() {
+        // GIVEN - anonymous client that used its budget
+        submit("10.0.0.2", null, "victim");
+        submit("10.0.0.2", null, "victim");
+
+        // WHEN - another client sends the same client id
+        // THEN - its request should be admitted
+        assertDoesNotThrow(() -> submit("10.0.0.3", null, "victim"));
+    }
+
+    @Test
+    void authenticatedPrincipalShouldSplitItsBudgetByClientId() {
+        // GIVEN - client of a principal that used its budget
+        submit("10.0.0.4", "service", "a");
+        submit("10.0.0.4", "service", "a");
+        assertThrows(RateLimitExceededException.class, () -> submit("10.0.0.4", "service", "a"));
+
+        // WHEN - another client of the same principal sends a request
+        // THEN - its request should be admitted
+        assertDoesNotThrow(() -> submit("10.0.0.4", "service", "b"));
+    }
+
+    @Test
+    void batchShouldTakeTokenForEveryScript() {
+        // GIVEN
+        var batchInterceptor = new RateLimitInterceptor(
+                new ClientRateLimiter(2, 0.001, Duration.ofMinutes(10), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry(),
+                true
+        );
+        var first = request("10.0.0.5", null, null);
+        batchInterceptor.preHandle(first, new MockHttpServletResponse(), new Object());
+
+        // WHEN - batch of more scripts than the client has tokens left is admitted
+        RateLimitInterceptor.acquire(first, 3);
+
+        // THEN - following batch should wait until the tokens taken beyond the balance are refilled
+        var second = request("10.0.0.5", null, null);
+        batchInterceptor.preHandle(second, new MockHttpServletResponse(), new Object());
+        assertThrows(RateLimitExceededException.class, () -> RateLimitInterceptor.acquire(second, 1));
+    }
+
+    @Test
+    void requestThatIsNotRateLimitedShouldBeAdmitted() {
+        assertDoesNotThrow(() -> RateLimitInterceptor.acquire(request("10.0.0.6", null, null), 100));
+    }
+
+    private void submit(String remoteAddress, String principal, String clientId) {
+        this.interceptor.preHandle(request(remoteAddress, principal, clientId), new MockHttpServletResponse(), new Object());
+    }
+
+    private static MockHttpServletRequest request(String remoteAddress, String principal, String clientId) {
+        var request = new MockHttpServletRequest("POST", "/scripts");
+        request.setRemoteAddr(remoteAddress);
+        if (principal != null)
+            request.setUserPrincipal(() -> principal);
+        if (clientId != null)
+            request.addHeader(ScriptController.CLIENT_ID_HEADER, clientId);
+        return request;
+    }
+
+}
@@ -0,0 +1,82 @@
+package pragmasoft.andriilupynos.js_executioner.application.api.reactive;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import pragmasoft.andriilupynos.js_executioner.domain.ExecutionOptions;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class ReactiveScriptServiceTests {
+
+    @Autowired private ScriptService scriptService;
+
+    @Test
+    void completionShouldBeSignalledWhenScriptFinishes() {
+        // GIVEN
+        var reactiveScriptService = new ReactiveScriptService(scriptService, Schedulers.boundedElastic());
+        var scriptInfo = scriptService.create("console.log('done')");
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo);
+
+        // THEN - completed execution is emitted with its output
+        StepVerifier.create(reactiveScriptService.completion(execution))
+                .assertNext(it -> {
+                    assertEquals(ScriptInfo.Status.COMPLETED, scriptInfo.getStatus());
+                    assertEquals("done\n", scriptInfo.getOut());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void completionOfStoppedScriptShouldBeSignalledWithItsFinalStatus() {
+        // GIVEN - running script
+        var reactiveScriptService = new ReactiveScriptService(scriptService, Schedulers.boundedElastic());
+        var scriptInfo = scriptService.create("while(true) {}");
+        var execution = scriptService.execute(scriptInfo);
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(2))
+                .until(() -> scriptInfo.getStatus() == ScriptInfo.Status.RUNNING);
+
+        // WHEN
+        execution.cancel(true);
+
+        // THEN - completion should wait for the interrupted script to fail
+        StepVerifier.create(reactiveScriptService.completion(execution))
+                .assertNext(it -> {
+                    assertEquals(ScriptInfo.Status.ERROR, scriptInfo.getStatus());
+                    assertEquals(scriptInfo.getStatus(), scriptService.get(it.getScriptName()).getStatus());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void completionOfCancelledPendingScriptShouldBeSignalled() {
+        // GIVEN - script delayed far into the future
+        var reactiveScriptService = new ReactiveScriptService(scriptService, Schedulers.boundedElastic());
+        var scriptInfo = scriptService.create("console.log('never')");
+        var execution = scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withStartAt(Instant.now().plus(Duration.ofHours(1))));
+
+        // WHEN
+        execution.cancel(false);
+
+        // THEN
+        StepVerifier.create(reactiveScriptService.completion(execution))
+                .assertNext(it -> assertEquals(ScriptInfo.Status.CANCELLED, scriptInfo.getStatus()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+}
@@ -0,0 +1,111 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScriptEventBusTests {
+
+    @Test
+    void subscriberShouldReceiveStatusChangesInOrder() {
+        // GIVEN
+        try (var eventBus = new ScriptEventBus(16, Executors.newSingleThreadExecutor())) {
+            var events = Collections.synchronizedList(new ArrayList<ScriptEvent>());
+            eventBus.subscribe(events::addAll);
+            var script = script("1");
+
+            // WHEN
+            eventBus.watch(script);
+            script.setStatus(ScriptInfo.Status.RUNNING);
+            script.setStatus(ScriptInfo.Status.COMPLETED);
+
+            // THEN
+            Awaitility.await()
+                    .atMost(Duration.ofSeconds(5))
+                    .until(() -> events.size() == 3);
+            assertEquals(List.of(0L, 1L, 2L), events.stream().map(it -> it.sequence).collect(Collectors.toList()));
+            assertNull(events.get(0).previousStatus);
+            assertEquals(ScriptInfo.Status.SCHEDULED, events.get(0).status);
+            assertEquals(ScriptInfo.Status.RUNNING, events.get(2).previousStatus);
+            assertEquals(ScriptInfo.Status.COMPLETED, events.get(2).status);
+        }
+    }
+
+    @Test
+    void slowSubscriberShouldSkipOverwrittenEvents() {
+        // GIVEN - dispatcher is busy until all events are published
+        var dispatcher = Executors.newSingleThreadExecutor();
+        var busy = new CountDownLatch(1);
+        dispatcher.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try (var eventBus = new ScriptEventBus(4, dispatcher)) {
+            var sequences = Collections.synchronizedList(new ArrayList<Long>());
+            var dropped = new AtomicLong();
+            eventBus.subscribe(new ScriptEventBus.Subscriber() {
+                @Override
+                public void onEvents(List<ScriptEvent> events) {
+                    events.forEach(it -> sequences.add(it.sequence));
+                }
+
+                @Override
+                public void onDropped(long count) {
+                    dropped.addAndGet(count);
+                }
+            });
+
+            // WHEN
+            for (int i = 0; i < 10; i++)
+                eventBus.publish(String.valueOf(i), null, ScriptInfo.Status.SCHEDULED);
+            busy.countDown();
+
+            // THEN - only the last events kept by the buffer are received
+            Awaitility.await()
+                    .atMost(Duration.ofSeconds(5))
+                    .until(() -> sequences.size() == 4);
+            assertEquals(LongStream.range(6, 10).boxed().collect(Collectors.toList()), sequences);
+            assertEquals(6, dropped.get());
+            assertEquals(6, eventBus.getDroppedCount());
+        }
+    }
+
+    private ScriptInfo script(String name) {
+        var code = new Script("print('Hi');", OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new ScriptInfo(
+                code,
+                name,
+                ScriptInfo.Status.SCHEDULED,
+                Instant.now(),
+                new ByteArrayScriptOutput(),
+                new ByteArrayScriptOutput()
+        );
+    }
+
+}
@@ -1,17 +1,29 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InternalScriptException;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidScriptProvidedException;
 import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +32,14 @@ class ScriptExecutionTests {
 
     @Autowired private ScriptService scriptService;
     @Autowired private ScriptInfoRepository scriptInfoRepository;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private ScriptFactory scriptFactory;
+    @Autowired private ScriptScheduler scriptScheduler;
+    @Autowired private TaskTimer scriptTimer;
+    @Autowired private ScriptLimits defaultScriptLimits;
+    @Autowired private ScriptOutputFactory scriptOutputFactory;
+    @Autowired private ScriptExecutionRepository scriptExecutionRepository;
+    @Autowired private ScriptEventBus scriptEventBus;
 
     @Test
     void userMustBeAbleToCreateScript() {
@@ -66,6 +86,38 @@ class ScriptExecutionTests {
         );
     }
 
+    @Test
+    void repeatedlySubmittedInvalidScriptMustBeRejectedWithSameDetails() {
+        // GIVEN
+        String code = "let x = ; // " + UUID.randomUUID();
+        double hits = sourceCacheRequests("hit");
+        double misses = sourceCacheRequests("miss");
+        var first = assertThrows(InvalidScriptProvidedException.class, () -> scriptService.create(code));
+
+        // WHEN - Same invalid code is submitted again
+        // THEN - Script should be rejected from the cache with the same details
+        var second = assertThrows(InvalidScriptProvidedException.class, () -> scriptService.create(code));
+        assertEquals(first.getMessage(), second.getMessage());
+        assertEquals(misses + 1, sourceCacheRequests("miss"));
+        assertEquals(hits + 1, sourceCacheRequests("hit"));
+    }
+
+    @Test
+    void repeatedlySubmittedScriptMustBeParsedOnce() {
+        // GIVEN
+        String code = "print('Hi'); // " + UUID.randomUUID();
+        double hits = sourceCacheRequests("hit");
+        double misses = sourceCacheRequests("miss");
+        scriptService.create(code);
+
+        // WHEN - Same code is submitted again
+        scriptService.create(code);
+
+        // THEN - Second script should reuse the cached source
+        assertEquals(misses + 1, sourceCacheRequests("miss"));
+        assertEquals(hits + 1, sourceCacheRequests("hit"));
+    }
+
     @Test
     void userMustBeAbleToExecuteScript() throws ExecutionException, InterruptedException {
         // GIVEN
@@ -150,4 +202,324 @@ class ScriptExecutionTests {
         );
     }
 
+    @Test
+    void delayedScriptShouldNotBeStartedBeforeScheduledTime() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('later')");
+        var startAt = Instant.now().plusMillis(500);
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withStartAt(startAt));
+
+        // THEN - script should wait for its time and then be executed
+        assertEquals(ScriptInfo.Status.SCHEDULED, execution.getStatus());
+        assertEquals(startAt, execution.getScheduledAt().orElseThrow());
+        execution.get();
+        assertEquals(ScriptInfo.Status.COMPLETED, execution.getStatus());
+        assertFalse(execution.getStarted().orElseThrow().isBefore(startAt));
+        assertEquals("later\n", scriptInfo.getOut());
+    }
+
+    @Test
+    void stoppedRecurringScriptShouldNotBeExecutedAnymore() {
+        // GIVEN - script recurring every 500 milliseconds
+        var scriptInfo = scriptService.create("console.log('tick')", "ticker");
+        ExecutionOptions.Recurrence every500ms = time -> Optional.of(time.plusMillis(500));
+        scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withRecurrence(every500ms));
+        Awaitility.await()
+                .ignoreExceptions()
+                .atMost(Duration.ofSeconds(3))
+                .untilAsserted(() -> assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("ticker#2").getStatus()));
+
+        // WHEN - pending occurrence is stopped
+        var pending = scriptService.all(ScriptService.SortBy.CREATED, ScriptInfo.Status.SCHEDULED).stream()
+                .filter(it -> it.name.startsWith("ticker#"))
+                .findFirst()
+                .orElseThrow();
+        scriptService.stopExecution(pending.name);
+
+        // THEN - neither stopped occurrence nor following ones should be executed
+        assertEquals(ScriptInfo.Status.CANCELLED, pending.getStatus());
+        Awaitility.await()
+                .during(Duration.ofMillis(1200))
+                .atMost(Duration.ofSeconds(2))
+                .until(() -> pending.getStatus() == ScriptInfo.Status.CANCELLED);
+        assertTrue(
+                scriptService.all(null, ScriptInfo.Status.SCHEDULED).stream()
+                        .noneMatch(it -> it.name.startsWith("ticker#"))
+        );
+    }
+
+    @Test
+    void stoppingFirstScriptOfRecurringScriptShouldStopAllItsOccurrences() {
+        // GIVEN - script recurring every 300 milliseconds that has already been executed
+        var scriptInfo = scriptService.create("console.log('tick')", "series");
+        ExecutionOptions.Recurrence every300ms = time -> Optional.of(time.plusMillis(300));
+        scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withRecurrence(every300ms));
+        Awaitility.await()
+                .ignoreExceptions()
+                .atMost(Duration.ofSeconds(3))
+                .untilAsserted(() -> assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("series#2").getStatus()));
+
+        // WHEN - first script is stopped
+        scriptService.stopExecution("series");
+
+        // THEN - pending occurrence should be cancelled and no more occurrences should be scheduled
+        Awaitility.await()
+                .during(Duration.ofMillis(900))
+                .atMost(Duration.ofSeconds(2))
+                .until(() -> scriptService.all(null, ScriptInfo.Status.SCHEDULED).stream()
+                        .noneMatch(it -> it.name.startsWith("series#")));
+        assertTrue(
+                scriptService.all(null, ScriptInfo.Status.CANCELLED).stream()
+                        .anyMatch(it -> it.name.startsWith("series#"))
+        );
+    }
+
+    @Test
+    void occurrenceOfRecurringScriptShouldNotReplaceScriptWithTheSameName() {
+        // GIVEN - script named as the next occurrence of a recurring one
+        var existing = scriptService.create("console.log('mine')", "clash#2");
+        var scriptInfo = scriptService.create("console.log('tick')", "clash");
+        ExecutionOptions.Recurrence every300ms = time -> Optional.of(time.plusMillis(300));
+
+        // WHEN
+        scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withRecurrence(every300ms));
+
+        // THEN - occurrence should take the next free name and the existing script should be left untouched
+        Awaitility.await()
+                .ignoreExceptions()
+                .atMost(Duration.ofSeconds(3))
+                .untilAsserted(() -> assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("clash#3").getStatus()));
+        assertSame(existing, scriptService.get("clash#2"));
+        assertEquals(ScriptInfo.Status.SCHEDULED, existing.getStatus());
+        scriptService.delete("clash");
+    }
+
+    @Test
+    void delayedScriptShouldNotBePreparedBeforeItsStart() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('later')");
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withStartAt(Instant.now().plusMillis(300)));
+
+        // THEN - script should hold no resources until it is started
+        assertFalse(((LazyScript) scriptInfo.script).isPrepared());
+        execution.get();
+        assertEquals("later\n", scriptInfo.getOut());
+    }
+
+    @Test
+    void scriptExceedingWallTimeLimitShouldBeTimedOut() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var limits = ScriptLimits.DEFAULT.withMaxWallTime(Duration.ofMillis(300));
+        var scriptInfo = scriptService.create("while(true) {}", null, limits);
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo);
+        execution.get();
+
+        // THEN - script should be stopped by the service
+        assertEquals(ScriptInfo.Status.TIMED_OUT, execution.getStatus());
+        assertEquals("Wall time limit of 300ms exceeded\n", scriptInfo.getErr());
+    }
+
+    @Test
+    void scriptExceedingStatementLimitShouldBeTimedOut() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var limits = ScriptLimits.DEFAULT.withMaxStatements(1000L);
+        var scriptInfo = scriptService.create("while(true) { console.log('loop') }", null, limits);
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo);
+        execution.get();
+
+        // THEN
+        assertEquals(ScriptInfo.Status.TIMED_OUT, execution.getStatus());
+        assertTrue(scriptInfo.getErr().endsWith("Statement limit of 1000 exceeded\n"));
+    }
+
+    @Test
+    void scriptExceedingMemoryLimitShouldBeStopped() throws ExecutionException, InterruptedException {
+        // GIVEN - script building an endless array
+        var limits = ScriptLimits.DEFAULT.withMaxAllocatedBytes(50L * 1024 * 1024);
+        var scriptInfo = scriptService.create("var a = []; while(true) { a.push('item ' + a.length) }", null, limits);
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo);
+        execution.get();
+
+        // THEN
+        assertEquals(ScriptInfo.Status.MEMORY_EXCEEDED, execution.getStatus());
+        assertEquals("Memory limit of 52428800 bytes exceeded\n", scriptInfo.getErr());
+    }
+
+    @Test
+    void scriptOverflowingStackShouldFailWithoutExceedingMemory() throws ExecutionException, InterruptedException {
+        // GIVEN - script recursing endlessly
+        var scriptInfo = scriptService.create("function f(n) { return f(n + 1) + 1 } f(0)");
+
+        // WHEN
+        var execution = scriptService.execute(scriptInfo);
+        execution.get();
+
+        // THEN - script should fail instead of being reported as out of memory
+        assertEquals(ScriptInfo.Status.ERROR, execution.getStatus());
+        assertFalse(scriptInfo.getErr().contains("out of memory"));
+    }
+
+    @Test
+    void headTailOutputShouldKeepOnlyBeginningAndEndOfOutput() throws ExecutionException, InterruptedException {
+        // GIVEN - script writing 2MB between the first and the last line
+        var scriptInfo = scriptService.create(
+                "console.log('first'); for (var i = 0; i < 2048; i++) console.log('x'.repeat(1023)); console.log('last')",
+                null,
+                ScriptLimits.DEFAULT,
+                ScriptOutputMode.HEAD_TAIL
+        );
+
+        // WHEN
+        scriptService.execute(scriptInfo).get();
+
+        // THEN - middle of the output should be dropped
+        var out = scriptInfo.getOut();
+        assertTrue(out.startsWith("first\n"));
+        assertTrue(out.endsWith("last\n"));
+        assertEquals((64 + 1024) * 1024, out.length());
+        assertEquals(scriptInfo.getOutput().size() - out.length(), scriptInfo.getOutput().truncatedBytes());
+        assertEquals(0, scriptInfo.getErrorOutput().truncatedBytes());
+    }
+
+    @Test
+    void finishedScriptShouldKeepShortOutputAfterItsContextIsReleased() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('Hi')", null, ScriptLimits.DEFAULT, ScriptOutputMode.HEAD_TAIL);
+
+        // WHEN
+        scriptService.execute(scriptInfo).get();
+
+        // THEN - outputs are sealed and script can not be run again
+        assertEquals("Hi\n", scriptInfo.getOut());
+        assertEquals("", scriptInfo.getErr());
+        assertThrows(IllegalStateException.class, scriptInfo.script::run);
+    }
+
+    @Test
+    void userShouldBeAbleToReadOnlyNewOutputOfScript() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var scriptInfo = scriptService.create("console.log('first'); console.log('second')");
+        var writes = new AtomicInteger();
+        scriptInfo.getOutput().addWriteListener(writes::incrementAndGet);
+
+        // WHEN
+        scriptService.execute(scriptInfo).get();
+
+        // THEN - output after the first line should be returned
+        assertTrue(writes.get() > 0);
+        assertEquals(13, scriptInfo.getOutput().size());
+        var chunk = scriptInfo.getOutput().read(6, 100);
+        assertEquals(6, chunk.offset);
+        assertEquals("second\n", new String(chunk.bytes, StandardCharsets.UTF_8));
+        assertEquals(0, scriptInfo.getOutput().read(13, 100).bytes.length);
+    }
+
+    @Test
+    void userShouldBeAbleToTransferRangeOfOutput() throws ExecutionException, InterruptedException, IOException {
+        for (var mode : ScriptOutputMode.values()) {
+            // GIVEN
+            var scriptInfo = scriptService.create("console.log('first'); console.log('second')", null, ScriptLimits.DEFAULT, mode);
+            scriptService.execute(scriptInfo).get();
+
+            // WHEN - bytes of the second line without line break are transferred
+            var target = new ByteArrayOutputStream();
+            var transferred = scriptInfo.getOutput().transferTo(6, 6, Channels.newChannel(target));
+
+            // THEN
+            assertEquals(6, transferred, mode.name());
+            assertEquals("second", target.toString(StandardCharsets.UTF_8), mode.name());
+        }
+    }
+
+    @Test
+    void validScriptsOfBatchShouldBeExecutedDespiteInvalidOne() throws ExecutionException, InterruptedException {
+        // GIVEN
+        var submissions = List.of(
+                new ScriptSubmission("print('first')", null, null, null, ExecutionOptions.DEFAULT),
+                new ScriptSubmission("print('", null, null, null, ExecutionOptions.DEFAULT),
+                new ScriptSubmission("print('third')", null, null, null, ExecutionOptions.DEFAULT)
+        );
+
+        // WHEN
+        var results = scriptService.submitAll(submissions);
+
+        // THEN - results are in the order of submissions
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSubmitted());
+        assertInstanceOf(InvalidScriptProvidedException.class, results.get(1).error);
+        assertTrue(results.get(2).isSubmitted());
+        results.get(0).execution.get();
+        results.get(2).execution.get();
+        assertEquals("first\n", results.get(0).script.getOut());
+        assertEquals("third\n", results.get(2).script.getOut());
+    }
+
+    @Test
+    void scriptOfBatchThatFailedToBeStoredShouldFailOnItsOwn() throws ExecutionException, InterruptedException {
+        // GIVEN - repository that keeps one of the scripts but fails to store it durably
+        var stored = UUID.randomUUID().toString();
+        var broken = UUID.randomUUID().toString();
+        var repository = new ScriptInfoRepository() {
+            @Override
+            public void store(ScriptInfo s) {
+                scriptInfoRepository.store(s);
+                if (s.name.equals(broken))
+                    throw new CompletionException(new IOException("No space left on device"));
+            }
+
+            @Override
+            public boolean delete(ScriptInfo s) {
+                return scriptInfoRepository.delete(s);
+            }
+
+            @Override
+            public ScriptInfo get(String name) {
+                return scriptInfoRepository.get(name);
+            }
+
+            @Override
+            public Iterable<ScriptInfo> all(ScriptService.SortBy by) {
+                return scriptInfoRepository.all(by);
+            }
+        };
+        var service = new DomainScriptService(
+                scriptFactory,
+                repository,
+                scriptScheduler,
+                scriptTimer,
+                defaultScriptLimits,
+                scriptOutputFactory,
+                scriptExecutionRepository,
+                scriptEventBus,
+                ForkJoinPool.commonPool()
+        );
+
+        // WHEN
+        var results = service.submitAll(List.of(
+                new ScriptSubmission("print('stored')", stored, null, null, ExecutionOptions.DEFAULT),
+                new ScriptSubmission("print('broken')", broken, null, null, ExecutionOptions.DEFAULT)
+        ));
+
+        // THEN - failed script should not be left behind
+        assertTrue(results.get(0).isSubmitted());
+        assertInstanceOf(InternalScriptException.class, results.get(1).error);
+        assertNull(scriptInfoRepository.get(broken));
+        results.get(0).execution.get();
+        assertEquals("stored\n", results.get(0).script.getOut());
+    }
+
+    private double sourceCacheRequests(String result) {
+        return meterRegistry.get("scripts.source.cache.requests").tag("result", result).counter().count();
+    }
+
 }
@@ -0,0 +1,155 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import org.junit.jupiter.api.Test;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.InvalidExecutionStateException;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScriptInfoTests {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void removedStatusListenerShouldNotBeNotified() {
+        // GIVEN
+        var script = script("1");
+        var first = new ArrayList<ScriptInfo.Status>();
+        var second = new ArrayList<ScriptInfo.Status>();
+        ScriptInfo.StatusListener firstListener = (scriptInfo, previousStatus, status) -> first.add(status);
+        script.addStatusListener(firstListener);
+        script.addStatusListener((scriptInfo, previousStatus, status) -> second.add(status));
+
+        // WHEN
+        script.setStatus(ScriptInfo.Status.RUNNING);
+        script.removeStatusListener(firstListener);
+        script.setStatus(ScriptInfo.Status.COMPLETED);
+
+        // THEN - status change that is not allowed is rejected without notifying listeners
+        assertThrows(InvalidExecutionStateException.class, () -> script.setStatus(ScriptInfo.Status.RUNNING));
+        assertEquals(List.of(ScriptInfo.Status.RUNNING), first);
+        assertEquals(List.of(ScriptInfo.Status.RUNNING, ScriptInfo.Status.COMPLETED), second);
+        assertEquals(ScriptInfo.Status.COMPLETED, script.getStatus());
+    }
+
+    @Test
+    void failingStatusListenerShouldNotAffectOtherListenersNorStatusChange() {
+        // GIVEN
+        var script = script("1");
+        var notified = new ArrayList<ScriptInfo.Status>();
+        script.addStatusListener((scriptInfo, previousStatus, status) -> {
+            throw new IllegalStateException("Listener failure");
+        });
+        script.addStatusListener((scriptInfo, previousStatus, status) -> notified.add(status));
+
+        // WHEN
+        script.setStatus(ScriptInfo.Status.RUNNING);
+
+        // THEN
+        assertEquals(List.of(ScriptInfo.Status.RUNNING), notified);
+        assertEquals(ScriptInfo.Status.RUNNING, script.getStatus());
+    }
+
+    @Test
+    void concurrentTransitionShouldSucceedOnlyOnce() throws InterruptedException, ExecutionException {
+        var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int attempt = 0; attempt < 100; attempt++) {
+                // GIVEN
+                var script = script(String.valueOf(attempt));
+                var notified = Collections.synchronizedList(new ArrayList<ScriptInfo.Status>());
+                script.addStatusListener((scriptInfo, previousStatus, status) -> notified.add(status));
+                var start = new CountDownLatch(1);
+                var rejected = new AtomicInteger();
+                var results = new ArrayList<Future<?>>();
+
+                // WHEN - every thread tries to start the script at once
+                for (int i = 0; i < THREADS; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            script.setStatus(ScriptInfo.Status.RUNNING);
+                        } catch (InvalidExecutionStateException e) {
+                            rejected.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (var result : results)
+                    result.get();
+
+                // THEN - only one thread should start it and listeners should be notified once
+                assertEquals(THREADS - 1, rejected.get());
+                assertEquals(List.of(ScriptInfo.Status.RUNNING), notified);
+                assertEquals(ScriptInfo.Status.RUNNING, script.getStatus());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentTerminalTransitionsShouldSucceedOnlyOnce() throws InterruptedException, ExecutionException {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int attempt = 0; attempt < 100; attempt++) {
+                // GIVEN
+                var script = script(String.valueOf(attempt));
+                var notified = Collections.synchronizedList(new ArrayList<ScriptInfo.Status>());
+                script.addStatusListener((scriptInfo, previousStatus, status) -> notified.add(status));
+                var start = new CountDownLatch(1);
+
+                // WHEN - script is cancelled while it is rejected
+                var cancelled = executor.submit(() -> {
+                    start.await();
+                    return script.compareAndSetStatus(ScriptInfo.Status.SCHEDULED, ScriptInfo.Status.CANCELLED);
+                });
+                var failed = executor.submit(() -> {
+                    start.await();
+                    return script.compareAndSetStatus(ScriptInfo.Status.SCHEDULED, ScriptInfo.Status.ERROR);
+                });
+                start.countDown();
+
+                // THEN - exactly one of the changes should win
+                assertEquals(1, (cancelled.get() ? 1 : 0) + (failed.get() ? 1 : 0));
+                assertEquals(List.of(script.getStatus()), notified);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ScriptInfo script(String name) {
+        var code = new Script("print('Hi');", OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new ScriptInfo(
+                code,
+                name,
+                ScriptInfo.Status.SCHEDULED,
+                Instant.now(),
+                new ByteArrayScriptOutput(),
+                new ByteArrayScriptOutput()
+        );
+    }
+
+}
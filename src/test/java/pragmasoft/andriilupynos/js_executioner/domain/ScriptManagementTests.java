@@ -1,16 +1,30 @@
 package pragmasoft.andriilupynos.js_executioner.domain;
 
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptNotFoundException;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class ScriptManagementTests {
 
     @Autowired private ScriptService scriptService;
+    @Autowired private ScriptEventBus scriptEventBus;
+
+    @BeforeEach
+    public void deleteAllScripts() {
+        scriptService.all().forEach(s -> scriptService.delete(s.name));
+    }
 
     @Test
     void userShouldBeAbleToDeleteScript() {
@@ -35,4 +49,90 @@ class ScriptManagementTests {
         assertThrows(ScriptNotFoundException.class, () -> scriptService.delete("1"));
     }
 
+    @Test
+    void oldestFinishedScriptsShouldBeEvictedByRetentionPolicy() throws ExecutionException, InterruptedException {
+        // GIVEN
+        for (var name : new String[] {"1", "2", "3"})
+            scriptService.execute(scriptService.create("print('Hi');", name)).get();
+        try (var sweeper = new RetentionSweeper(scriptService, scriptEventBus, new RetentionPolicy(Duration.ZERO, 1, 0))) {
+
+            // WHEN
+            var evicted = sweeper.sweep();
+
+            // THEN
+            assertEquals(2, evicted);
+            assertEquals(2 * "Hi\n".length(), sweeper.getReclaimedBytes());
+            assertThrows(ScriptNotFoundException.class, () -> scriptService.get("1"));
+            assertThrows(ScriptNotFoundException.class, () -> scriptService.get("2"));
+            assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("3").getStatus());
+        }
+    }
+
+    @Test
+    void scriptsFinishedAfterFirstSweepShouldBeEvictedByRetentionPolicy() throws ExecutionException, InterruptedException {
+        // GIVEN - sweeper that already swept once
+        scriptService.execute(scriptService.create("print('Hi');", "1")).get();
+        try (var sweeper = new RetentionSweeper(scriptService, scriptEventBus, new RetentionPolicy(Duration.ZERO, 1, 0))) {
+            assertEquals(0, sweeper.sweep());
+
+            // WHEN - another script finishes
+            scriptService.execute(scriptService.create("print('Hi');", "2")).get();
+
+            // THEN - the older script should be evicted once the sweeper is told about the newer one
+            Awaitility.await()
+                    .atMost(Duration.ofSeconds(3))
+                    .until(() -> sweeper.sweep() == 1);
+            assertThrows(ScriptNotFoundException.class, () -> scriptService.get("1"));
+            assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("2").getStatus());
+        }
+    }
+
+    @Test
+    void evictionShouldNotDeleteNewerScriptWithTheSameName() throws ExecutionException, InterruptedException {
+        // GIVEN - finished script replaced by a newer one with the same name
+        var old = scriptService.create("print('Hi');", "1");
+        scriptService.execute(old).get();
+        scriptService.delete("1");
+        var newer = scriptService.create("print('Hi');", "1");
+
+        // WHEN
+        var evicted = scriptService.evict(old);
+
+        // THEN
+        assertFalse(evicted);
+        assertSame(newer, scriptService.get("1"));
+    }
+
+    @Test
+    void evictionOfRecurringScriptShouldLeaveItsSeriesRunning() {
+        // GIVEN - script recurring every 300 milliseconds that has already been executed
+        var scriptInfo = scriptService.create("console.log('tick')", "retained");
+        ExecutionOptions.Recurrence every300ms = time -> Optional.of(time.plusMillis(300));
+        scriptService.execute(scriptInfo, ExecutionOptions.DEFAULT.withRecurrence(every300ms));
+        Awaitility.await()
+                .ignoreExceptions()
+                .atMost(Duration.ofSeconds(3))
+                .untilAsserted(() -> assertEquals(ScriptInfo.Status.COMPLETED, scriptService.get("retained#2").getStatus()));
+
+        // WHEN - first script is evicted
+        try (var sweeper = new RetentionSweeper(scriptService, scriptEventBus, new RetentionPolicy(Duration.ZERO, 1, 0))) {
+            sweeper.sweep();
+        }
+
+        // THEN - following occurrences should still be executed
+        assertThrows(ScriptNotFoundException.class, () -> scriptService.get("retained"));
+        var executed = occurrencesOf("retained", ScriptInfo.Status.COMPLETED);
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(3))
+                .until(() -> occurrencesOf("retained", ScriptInfo.Status.COMPLETED).stream().anyMatch(it -> !executed.contains(it)));
+        occurrencesOf("retained", ScriptInfo.Status.SCHEDULED).forEach(scriptService::stopExecution);
+    }
+
+    private List<String> occurrencesOf(String name, ScriptInfo.Status status) {
+        return scriptService.all(ScriptService.SortBy.CREATED, status).stream()
+                .map(it -> it.name)
+                .filter(it -> it.startsWith(name + "#"))
+                .collect(Collectors.toList());
+    }
+
 }
@@ -11,9 +11,13 @@ import pragmasoft.andriilupynos.js_executioner.util.CurrentClock;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 class ScriptQueryTests {
@@ -123,6 +127,49 @@ class ScriptQueryTests {
         assertEquals("1", res[1].name);
     }
 
+    @Test
+    void userShouldBeAbleToSearchScriptsWithOrderByName() {
+        // GIVEN
+        scriptService.create("print('b');", "b");
+        scriptService.create("print('c');", "c");
+        scriptService.create("print('a');", "a");
+        scriptService.delete("c");
+
+        // WHEN
+        var res = scriptService.all(ScriptService.SortBy.NAME, ScriptInfo.Status.SCHEDULED).toArray(new ScriptInfo[]{});
+
+        // THEN
+        assertEquals(2, res.length);
+        assertEquals("a", res[0].name);
+        assertEquals("b", res[1].name);
+    }
+
+    @Test
+    void userShouldBeAbleToPageThroughScripts() {
+        // GIVEN
+        for (var name : new String[]{"e", "d", "c", "b", "a"})
+            scriptService.create("print('" + name + "');", name);
+
+        // WHEN - second page is requested after the first one and the first page is requested back
+        var first = scriptService.page(ScriptService.SortBy.NAME, null, null, null, 2);
+        var second = scriptService.page(
+                ScriptService.SortBy.NAME, null, ScriptPosition.of(first.scripts.get(1)), null, 2
+        );
+        var previous = scriptService.page(
+                ScriptService.SortBy.NAME, null, null, ScriptPosition.of(second.scripts.get(0)), 2
+        );
+
+        // THEN
+        assertEquals(List.of("a", "b"), first.scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+        assertTrue(first.hasNext);
+        assertFalse(first.hasPrevious);
+        assertEquals(List.of("c", "d"), second.scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+        assertTrue(second.hasNext);
+        assertTrue(second.hasPrevious);
+        assertEquals(List.of("a", "b"), previous.scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+        assertFalse(previous.hasPrevious);
+    }
+
     @Test
     void userShouldBeAbleToSearchScriptsWithComplexFilter() {
         var mockedClock = Mockito.mock(Clock.class);
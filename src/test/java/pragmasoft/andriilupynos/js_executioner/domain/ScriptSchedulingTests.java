@@ -0,0 +1,209 @@
+package pragmasoft.andriilupynos.js_executioner.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.ScriptRejectedException;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.FairShareScheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScriptSchedulingTests {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final FairShareScheduler scheduler = new FairShareScheduler(executor, 1, Duration.ZERO, Map.of());
+    private final List<String> executionOrder = new CopyOnWriteArrayList<>();
+    private final CountDownLatch blockerReleased = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdownExecutor() {
+        blockerReleased.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void scriptsWithHigherPriorityShouldBeStartedFirst() throws ExecutionException, InterruptedException {
+        // GIVEN - the only worker is busy
+        submit("blocker", ExecutionOptions.DEFAULT);
+        var low = submit("low", ExecutionOptions.DEFAULT.withPriority(ExecutionOptions.Priority.LOW));
+        submit("normal", ExecutionOptions.DEFAULT);
+        submit("high", ExecutionOptions.DEFAULT.withPriority(ExecutionOptions.Priority.HIGH));
+
+        // WHEN
+        blockerReleased.countDown();
+        low.get();
+
+        // THEN
+        assertEquals(List.of("blocker", "high", "normal", "low"), executionOrder);
+    }
+
+    @Test
+    void submitterWithManyScriptsShouldNotDelayOtherSubmitters() throws ExecutionException, InterruptedException {
+        // GIVEN - the only worker is busy
+        submit("blocker", ExecutionOptions.DEFAULT);
+        submit("a1", ExecutionOptions.DEFAULT.withSubmitter("a"));
+        submit("a2", ExecutionOptions.DEFAULT.withSubmitter("a"));
+        var last = submit("a3", ExecutionOptions.DEFAULT.withSubmitter("a"));
+        submit("b1", ExecutionOptions.DEFAULT.withSubmitter("b"));
+
+        // WHEN
+        blockerReleased.countDown();
+        last.get();
+
+        // THEN
+        assertEquals(List.of("blocker", "a1", "b1", "a2", "a3"), executionOrder);
+    }
+
+    @Test
+    void userShouldBeAbleToSeeQueuePositionOfScript() {
+        // GIVEN - the only worker is busy
+        var blocker = submit("blocker", ExecutionOptions.DEFAULT);
+        var low = submit("low", ExecutionOptions.DEFAULT.withPriority(ExecutionOptions.Priority.LOW));
+        var normal = submit("normal", ExecutionOptions.DEFAULT);
+        var high = submit("high", ExecutionOptions.DEFAULT.withPriority(ExecutionOptions.Priority.HIGH));
+
+        // WHEN - THEN
+        assertEquals(-1, blocker.getQueuePosition().orElse(-1));
+        assertEquals(2, low.getQueuePosition().orElseThrow());
+        assertEquals(1, normal.getQueuePosition().orElseThrow());
+        assertEquals(0, high.getQueuePosition().orElseThrow());
+    }
+
+    @Test
+    void submissionsAboveQueueCapacityShouldBeRejected() {
+        // GIVEN - the only worker is busy and the only place in the queue is taken
+        var bounded = new FairShareScheduler(executor, 1, 1, Duration.ZERO, Map.of());
+        submit(bounded, "blocker", ExecutionOptions.DEFAULT);
+        submit(bounded, "queued", ExecutionOptions.DEFAULT);
+
+        // WHEN - THEN
+        var ex = assertThrows(
+                ScriptRejectedException.class,
+                () -> submit(bounded, "rejected", ExecutionOptions.DEFAULT)
+        );
+        assertTrue(ex.retryAfter.compareTo(Duration.ofSeconds(1)) >= 0);
+        assertEquals(1, bounded.getRejectedCount());
+        assertEquals(1, bounded.getQueuedCount());
+    }
+
+    @Test
+    void executionRejectedByExecutorShouldFail() {
+        // GIVEN - executor does not accept tasks anymore
+        var stopped = Executors.newSingleThreadExecutor();
+        stopped.shutdown();
+        var rejecting = new FairShareScheduler(stopped, 1, Duration.ZERO, Map.of());
+
+        // WHEN
+        var execution = submit(rejecting, "rejected", ExecutionOptions.DEFAULT);
+
+        // THEN - execution is finished instead of staying scheduled
+        assertEquals(ScriptInfo.Status.ERROR, execution.getStatus());
+        assertTrue(execution.isDone());
+        assertTrue(execution.completion().isDone());
+        assertTrue(executionOrder.isEmpty());
+        assertEquals(0, rejecting.getRunningCount());
+    }
+
+    @Test
+    void executionRejectedWhileCancelledShouldFinishOnlyOnce() throws ExecutionException, InterruptedException {
+        var racing = Executors.newFixedThreadPool(2);
+        try {
+            for (int attempt = 0; attempt < 100; attempt++) {
+                // GIVEN - execution that was not started yet
+                var err = new ByteArrayOutputStream();
+                var script = new Script("print('Hi');", OutputStream.nullOutputStream(), err) {
+                    @Override
+                    public void run() { /* Never started */ }
+
+                    @Override
+                    public void close() { /* Nothing to close */ }
+                };
+                var scriptInfo = new ScriptInfo(
+                        script,
+                        String.valueOf(attempt),
+                        ScriptInfo.Status.SCHEDULED,
+                        Instant.now(),
+                        new ByteArrayScriptOutput(),
+                        new ByteArrayScriptOutput()
+                );
+                var execution = new ScriptExecution(scriptInfo, scheduler);
+                var start = new CountDownLatch(1);
+
+                // WHEN - execution is rejected while it is cancelled
+                var rejected = racing.submit(() -> {
+                    start.await();
+                    execution.reject("Rejected");
+                    return null;
+                });
+                var cancelled = racing.submit(() -> {
+                    start.await();
+                    return execution.cancelPending();
+                });
+                start.countDown();
+                rejected.get();
+
+                // THEN - only the winner should leave its traces
+                if (cancelled.get()) {
+                    assertEquals(ScriptInfo.Status.CANCELLED, execution.getStatus());
+                    assertEquals(0, err.size());
+                } else {
+                    assertEquals(ScriptInfo.Status.ERROR, execution.getStatus());
+                    assertEquals("Rejected\n", err.toString(StandardCharsets.UTF_8));
+                }
+                assertTrue(execution.completion().isDone());
+            }
+        } finally {
+            racing.shutdownNow();
+        }
+    }
+
+    private ScriptExecution submit(String name, ExecutionOptions options) {
+        return submit(scheduler, name, options);
+    }
+
+    private ScriptExecution submit(FairShareScheduler scheduler, String name, ExecutionOptions options) {
+        var script = new Script(name, OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) {
+            @Override
+            public void run() {
+                executionOrder.add(name);
+                if (name.equals("blocker")) {
+                    try {
+                        blockerReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void close() { /* Nothing to close */ }
+        };
+        var scriptInfo = new ScriptInfo(
+                script,
+                name,
+                ScriptInfo.Status.SCHEDULED,
+                Instant.now(),
+                new ByteArrayScriptOutput(),
+                new ByteArrayScriptOutput()
+        );
+        var execution = new ScriptExecution(scriptInfo, scheduler);
+        scheduler.submit(execution, options);
+        return execution;
+    }
+
+}
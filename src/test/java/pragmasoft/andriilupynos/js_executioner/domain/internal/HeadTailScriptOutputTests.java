@@ -0,0 +1,56 @@
+package pragmasoft.andriilupynos.js_executioner.domain.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadTailScriptOutputTests {
+
+    @Test
+    void outputShorterThanHeadShouldBeKeptWhole() throws IOException {
+        // GIVEN
+        var output = new HeadTailScriptOutput(16, 8);
+
+        // WHEN - fewer bytes than the head size are written
+        output.asStream().write("short".getBytes(StandardCharsets.UTF_8));
+
+        // THEN - output should be readable both before and after sealing
+        assertEquals("short", output.toString());
+        assertEquals("ort", new String(output.read(2, 100).bytes, StandardCharsets.UTF_8));
+        assertEquals(0, output.read(5, 100).bytes.length);
+        output.seal();
+        assertEquals("short", output.toString());
+        assertEquals(5, output.size());
+        assertEquals(0, output.truncatedBytes());
+    }
+
+    @Test
+    void outputLongerThanHeadAndTailShouldDropItsMiddle() throws IOException {
+        // GIVEN
+        var output = new HeadTailScriptOutput(4, 4);
+
+        // WHEN
+        output.asStream().write("head".getBytes(StandardCharsets.UTF_8));
+        output.asStream().write("middle".getBytes(StandardCharsets.UTF_8));
+        output.asStream().write("tail".getBytes(StandardCharsets.UTF_8));
+
+        // THEN - reading the dropped middle should skip to the tail
+        assertEquals("headtail", output.toString());
+        assertEquals(6, output.truncatedBytes());
+        var chunk = output.read(5, 100);
+        assertEquals(10, chunk.offset);
+        assertEquals("tail", new String(chunk.bytes, StandardCharsets.UTF_8));
+        output.seal();
+        assertEquals("headtail", output.toString());
+    }
+
+    @Test
+    void outputShouldNotBeCreatedWithoutTail() {
+        assertThrows(IllegalArgumentException.class, () -> new HeadTailScriptOutput(16, 0));
+        assertThrows(IllegalArgumentException.class, () -> new HeadTailScriptOutput(-1, 16));
+    }
+
+}
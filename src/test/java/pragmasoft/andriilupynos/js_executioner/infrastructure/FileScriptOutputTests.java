@@ -0,0 +1,94 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.HeadTailScriptOutput;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.SpillingScriptOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileScriptOutputTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedOutputShouldBeReadFromOffset() throws IOException {
+        // GIVEN
+        var output = new ByteArrayScriptOutput();
+        output.asStream().write("Hello world".getBytes(StandardCharsets.UTF_8));
+
+        // WHEN
+        var stored = FileScriptOutput.write(output, this.directory.resolve("out"));
+
+        // THEN
+        var chunk = stored.read(6, 100);
+        assertEquals(6, chunk.offset);
+        assertEquals("world", new String(chunk.bytes, StandardCharsets.UTF_8));
+        assertEquals(11, stored.size());
+        assertEquals(0, stored.truncatedBytes());
+    }
+
+    @Test
+    void outputWhoseFileWasTruncatedShouldFailTransferInsteadOfSpinning() throws IOException {
+        // GIVEN - file lost its end after the output was stored
+        var output = new ByteArrayScriptOutput();
+        output.asStream().write("Hello world".getBytes(StandardCharsets.UTF_8));
+        var path = this.directory.resolve("out");
+        var stored = FileScriptOutput.write(output, path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(5);
+        }
+
+        // WHEN
+        var target = new ByteArrayOutputStream();
+        assertThrows(EOFException.class, () -> stored.transferTo(0, stored.size(), Channels.newChannel(target)));
+
+        // THEN - bytes the file still has should be read without padding
+        assertEquals("Hello", target.toString(StandardCharsets.UTF_8));
+        assertEquals("Hello", new String(stored.read(0, 100).bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void bytesDroppedByHeadTailOutputShouldBeCountedOnce() throws IOException {
+        // GIVEN - output that counts its dropped middle in its size
+        var output = new HeadTailScriptOutput(4, 4);
+        output.asStream().write("headmiddletail".getBytes(StandardCharsets.UTF_8));
+        output.seal();
+
+        // WHEN
+        var stored = FileScriptOutput.write(output, this.directory.resolve("out"));
+
+        // THEN
+        assertEquals("headtail", stored.toString());
+        assertEquals(8, stored.size());
+        assertEquals(6, stored.truncatedBytes());
+    }
+
+    @Test
+    void bytesDroppedBySpillingOutputShouldBeCountedOnce() throws IOException {
+        // GIVEN - output that does not count bytes beyond its maximum size in its size
+        var output = new SpillingScriptOutput(4, 8, this.directory);
+        output.asStream().write("0123456789".getBytes(StandardCharsets.UTF_8));
+        output.seal();
+
+        // WHEN
+        var stored = FileScriptOutput.write(output, this.directory.resolve("out"));
+
+        // THEN
+        assertEquals("01234567", stored.toString());
+        assertEquals(8, stored.size());
+        assertEquals(2, stored.truncatedBytes());
+    }
+
+}
@@ -0,0 +1,160 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.exception.IllegalArgumentException;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.HeadTailScriptOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JdbcScriptInfoRepositoryTests {
+
+    @Test
+    void finishedScriptShouldBeReadFromDatabase() {
+        // GIVEN
+        var url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (var repository = jdbcRepository(url)) {
+            var script = script("1", Instant.parse("2022-01-01T00:00:00Z"), "Hi", new ByteArrayScriptOutput());
+            repository.store(script);
+
+            // WHEN
+            new ScriptExecution(script).run();
+
+            // THEN - script is read from the database once its outputs are written
+            Awaitility.await()
+                    .atMost(Duration.ofSeconds(5))
+                    .until(() -> repository.get("1") != script);
+            var stored = repository.get("1");
+            assertNotSame(script, stored);
+            assertEquals(ScriptInfo.Status.COMPLETED, stored.getStatus());
+            assertEquals("Hi", stored.getOut());
+        }
+    }
+
+    @Test
+    void onlyKeptBytesOfBoundedOutputShouldBeStored() throws IOException {
+        // GIVEN - script whose output drops its middle
+        var url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (var repository = jdbcRepository(url)) {
+            var script = script("1", Instant.parse("2022-01-01T00:00:00Z"), "headmiddletail", new HeadTailScriptOutput(4, 4));
+            repository.store(script);
+
+            // WHEN
+            new ScriptExecution(script).run();
+
+            // THEN - stored output should hold the kept bytes and count the dropped ones
+            Awaitility.await()
+                    .atMost(Duration.ofSeconds(5))
+                    .until(() -> repository.get("1") != script);
+            var output = repository.get("1").getOutput();
+            assertEquals(8, output.size());
+            assertEquals(6, output.truncatedBytes());
+            assertEquals("headtail", output.toString());
+            var transferred = new ByteArrayOutputStream();
+            assertEquals(6, output.transferTo(2, 100, Channels.newChannel(transferred)));
+            assertEquals("adtail", transferred.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void scriptWithTooLongNameShouldBeRejectedWithoutBeingKept() {
+        // GIVEN
+        var url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        var name = "n".repeat(ScriptInfo.MAX_NAME_LENGTH + 1);
+        try (var repository = jdbcRepository(url)) {
+            var script = script(name, Instant.parse("2022-01-01T00:00:00Z"), "", new ByteArrayScriptOutput());
+
+            // WHEN
+            assertThrows(IllegalArgumentException.class, () -> repository.store(script));
+
+            // THEN - script should be neither served nor prevent other scripts from being stored
+            assertNull(repository.get(name));
+            repository.store(script("1", Instant.parse("2022-01-01T00:00:00Z"), "", new ByteArrayScriptOutput()));
+            assertEquals("1", repository.get("1").name);
+        }
+    }
+
+    @Test
+    void unfinishedScriptsShouldBeFailedAfterRestart() {
+        // GIVEN
+        var url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (var repository = jdbcRepository(url)) {
+            repository.store(script("old", Instant.parse("2022-01-01T00:00:00Z"), "", new ByteArrayScriptOutput()));
+            repository.store(script("new", Instant.parse("2022-01-02T00:00:00Z"), "", new ByteArrayScriptOutput()));
+        }
+
+        // WHEN
+        try (var repository = jdbcRepository(url)) {
+            var scripts = StreamSupport.stream(repository.all(ScriptService.SortBy.CREATED).spliterator(), false)
+                    .collect(Collectors.toList());
+
+            // THEN
+            assertEquals(List.of("new", "old"), scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+            assertEquals(ScriptInfo.Status.ERROR, scripts.get(0).getStatus());
+            assertEquals("Execution was interrupted by restart of the service\n", scripts.get(0).getErr());
+        }
+    }
+
+    private JdbcScriptInfoRepository jdbcRepository(String url) {
+        var dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        return new JdbcScriptInfoRepository(
+                dataSource, true, Duration.ofMillis(10), 100, new InMemoryScriptExecutionRepository()
+        );
+    }
+
+    /**
+     * @param printed what the script prints when it is run
+     */
+    private ScriptInfo script(String name, Instant created, String printed, ScriptInfo.ScriptOutput out) {
+        var err = new ByteArrayScriptOutput();
+        var code = new Script("print('Hi');", out.asStream(), err.asStream()) {
+            @Override
+            public void run() {
+                try {
+                    this.out.write(printed.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return ScriptInfo.restore(
+                code,
+                name,
+                ScriptInfo.Status.SCHEDULED,
+                created,
+                ScriptLimits.UNLIMITED,
+                ScriptOutputMode.UNBOUNDED,
+                out,
+                err
+        );
+    }
+
+}
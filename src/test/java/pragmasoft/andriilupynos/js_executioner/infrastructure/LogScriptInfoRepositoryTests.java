@@ -0,0 +1,149 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pragmasoft.andriilupynos.js_executioner.domain.Script;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptExecution;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptLimits;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptOutputMode;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptService;
+import pragmasoft.andriilupynos.js_executioner.domain.internal.ByteArrayScriptOutput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogScriptInfoRepositoryTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void finishedScriptShouldBeReadFromLogAfterRestart() {
+        // GIVEN
+        try (var repository = this.open()) {
+            var script = script("1", Instant.parse("2022-01-01T00:00:00Z"));
+            repository.store(script);
+
+            // WHEN
+            new ScriptExecution(script).run();
+        }
+
+        // THEN
+        try (var repository = this.open()) {
+            var stored = repository.get("1");
+            assertEquals(ScriptInfo.Status.COMPLETED, stored.getStatus());
+            assertEquals("print('Hi');", stored.script.code);
+            assertEquals("Hi", stored.getOut());
+        }
+    }
+
+    @Test
+    void unfinishedScriptsShouldBeFailedAfterRestart() {
+        // GIVEN
+        try (var repository = this.open()) {
+            repository.store(script("old", Instant.parse("2022-01-01T00:00:00Z")));
+            repository.store(script("new", Instant.parse("2022-01-02T00:00:00Z")));
+        }
+
+        // WHEN
+        try (var repository = this.open()) {
+            var scripts = all(repository);
+
+            // THEN
+            assertEquals(List.of("new", "old"), scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+            assertEquals(ScriptInfo.Status.ERROR, scripts.get(0).getStatus());
+            assertEquals("Execution was interrupted by restart of the service\n", scripts.get(0).getErr());
+        }
+    }
+
+    @Test
+    void finishedScriptsShouldBeListedTogetherWithScriptsInMemory() {
+        // GIVEN - scripts finished before the restart and a script created after it
+        try (var repository = this.open()) {
+            for (var name : List.of("1", "3")) {
+                var script = script(name, Instant.parse("2022-01-0" + name + "T00:00:00Z"));
+                repository.store(script);
+                new ScriptExecution(script).run();
+            }
+        }
+        try (var repository = this.open()) {
+            repository.store(script("2", Instant.parse("2022-01-02T00:00:00Z")));
+
+            // WHEN
+            var scripts = all(repository);
+
+            // THEN
+            assertEquals(List.of("3", "2", "1"), scripts.stream().map(it -> it.name).collect(Collectors.toList()));
+            assertEquals(ScriptInfo.Status.COMPLETED, scripts.get(0).getStatus());
+            assertEquals(ScriptInfo.Status.SCHEDULED, scripts.get(1).getStatus());
+        }
+    }
+
+    @Test
+    void deletedScriptShouldNotBeRestored() {
+        // GIVEN
+        try (var repository = this.open()) {
+            var script = script("1", Instant.parse("2022-01-01T00:00:00Z"));
+            repository.store(script);
+            new ScriptExecution(script).run();
+            repository.store(script("2", Instant.parse("2022-01-02T00:00:00Z")));
+
+            // WHEN
+            assertTrue(repository.delete(repository.get("1")));
+        }
+
+        // THEN
+        try (var repository = this.open()) {
+            assertNull(repository.get("1"));
+            assertEquals(List.of("2"), all(repository).stream().map(it -> it.name).collect(Collectors.toList()));
+        }
+    }
+
+    private LogScriptInfoRepository open() {
+        return new LogScriptInfoRepository(this.directory, 1024 * 1024, 16, new InMemoryScriptExecutionRepository());
+    }
+
+    private static List<ScriptInfo> all(LogScriptInfoRepository repository) {
+        return StreamSupport.stream(repository.all(ScriptService.SortBy.CREATED).spliterator(), false)
+                .collect(Collectors.toList());
+    }
+
+    private static ScriptInfo script(String name, Instant created) {
+        var out = new ByteArrayScriptOutput();
+        var err = new ByteArrayScriptOutput();
+        var code = new Script("print('Hi');", out.asStream(), err.asStream()) {
+            @Override
+            public void run() {
+                try {
+                    this.out.write("Hi".getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return ScriptInfo.restore(
+                code,
+                name,
+                ScriptInfo.Status.SCHEDULED,
+                created,
+                ScriptLimits.UNLIMITED,
+                ScriptOutputMode.UNBOUNDED,
+                out,
+                err
+        );
+    }
+
+}
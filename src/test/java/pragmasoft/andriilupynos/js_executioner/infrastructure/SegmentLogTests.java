@@ -0,0 +1,144 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentLogTests {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void latestValuesShouldBeReplayedAfterReopening() {
+        // GIVEN
+        try (var log = this.open(SEGMENT_SIZE)) {
+            log.put("a", bytes("1")).join();
+            log.put("b", bytes("2")).join();
+            log.put("a", bytes("3")).join();
+            log.delete("b").join();
+            assertEquals("3", string(log.get("a")));
+            assertNull(log.get("b"));
+        }
+
+        // WHEN
+        try (var log = this.open(SEGMENT_SIZE)) {
+            // THEN
+            assertEquals(Map.of("a", "3"), values(log));
+        }
+    }
+
+    @Test
+    void tornRecordAtTheEndShouldBeCutOff() throws IOException {
+        // GIVEN - log whose last record was not completely written before the crash
+        try (var log = this.open(SEGMENT_SIZE)) {
+            log.put("a", bytes("1")).join();
+        }
+        try (var out = Files.newOutputStream(this.lastSegment(), StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2});
+        }
+
+        // WHEN
+        try (var log = this.open(SEGMENT_SIZE)) {
+            // THEN - complete records should be kept and new records should be appended right after them
+            assertEquals(Map.of("a", "1"), values(log));
+            log.put("b", bytes("2")).join();
+        }
+        try (var log = this.open(SEGMENT_SIZE)) {
+            assertEquals(Map.of("a", "1", "b", "2"), values(log));
+        }
+    }
+
+    @Test
+    void keyLongerThanModifiedUtf8LimitShouldBeStoredWithOtherRecordsOfItsBatch() {
+        // GIVEN - key of 80000 bytes written together with a short one
+        var longKey = "\u00e4".repeat(40_000);
+        try (var log = this.open(SEGMENT_SIZE)) {
+            var longPut = log.put(longKey, bytes("1"));
+            var shortPut = log.put("a", bytes("2"));
+
+            // WHEN
+            longPut.join();
+            shortPut.join();
+        }
+
+        // THEN
+        try (var log = this.open(SEGMENT_SIZE)) {
+            assertEquals(Map.of(longKey, "1", "a", "2"), values(log));
+        }
+    }
+
+    @Test
+    void recordWithWrongChecksumShouldBeRejected() throws IOException {
+        // GIVEN - log whose last record was corrupted
+        try (var log = this.open(SEGMENT_SIZE)) {
+            log.put("a", bytes("1")).join();
+            log.put("b", bytes("2")).join();
+        }
+        var segment = this.lastSegment();
+        var content = Files.readAllBytes(segment);
+        content[content.length - 1] ^= 1;
+        Files.write(segment, content);
+
+        // WHEN
+        try (var log = this.open(SEGMENT_SIZE)) {
+            // THEN
+            assertEquals(Map.of("a", "1"), values(log));
+        }
+    }
+
+    @Test
+    void compactionShouldKeepOnlyLatestValues() throws IOException {
+        // GIVEN - tiny segments filled mostly with overwritten records
+        try (var log = this.open(64)) {
+            log.put("kept", bytes("value")).join();
+            for (int i = 0; i < 100; i++)
+                log.put("overwritten", bytes(String.valueOf(i))).join();
+            assertEquals("99", string(log.get("overwritten")));
+        }
+
+        // THEN - overwritten records should be gone together with their segments
+        try (var files = Files.list(this.directory)) {
+            assertTrue(files.count() <= 3);
+        }
+        try (var log = this.open(64)) {
+            assertEquals(Map.of("kept", "value", "overwritten", "99"), values(log));
+        }
+    }
+
+    private SegmentLog open(long segmentSize) {
+        return new SegmentLog(this.directory, segmentSize, 16);
+    }
+
+    private Path lastSegment() throws IOException {
+        try (var files = Files.list(this.directory)) {
+            return files.max(Path::compareTo).orElseThrow();
+        }
+    }
+
+    private static Map<String, String> values(SegmentLog log) {
+        var values = new HashMap<String, String>();
+        log.forEach((key, value) -> values.put(key, string(value)));
+        return values;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+}
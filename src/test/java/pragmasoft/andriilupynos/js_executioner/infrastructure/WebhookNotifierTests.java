@@ -0,0 +1,163 @@
+package pragmasoft.andriilupynos.js_executioner.infrastructure;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptEvent;
+import pragmasoft.andriilupynos.js_executioner.domain.ScriptInfo;
+import pragmasoft.andriilupynos.js_executioner.domain.TaskTimer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WebhookNotifierTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    // Statuses answered to the following requests, 200 once they run out
+    private final Queue<Integer> answers = new ConcurrentLinkedQueue<>();
+    private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+    private final List<Duration> retryDelays = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/hook", exchange -> {
+            bodies.add(exchange.getRequestBody().readAllBytes());
+            var status = answers.poll();
+            exchange.sendResponseHeaders(status != null ? status : 200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void terminalEventsShouldBePostedInBatches() throws IOException {
+        // GIVEN
+        var notifier = notifier(true, 2, 3);
+
+        // WHEN - four terminal changes and one that is not terminal are received together
+        notifier.onEvents(List.of(
+                event(0, "a", ScriptInfo.Status.COMPLETED),
+                event(1, "b", ScriptInfo.Status.RUNNING),
+                event(2, "b", ScriptInfo.Status.ERROR),
+                event(3, "c", ScriptInfo.Status.CANCELLED),
+                event(4, "d", ScriptInfo.Status.TIMED_OUT)
+        ));
+
+        // THEN - terminal changes should be posted two at a time
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> notifier.getDeliveredCount() == 4);
+        assertEquals(2, bodies.size());
+        var sizes = List.of(
+                objectMapper.readTree(bodies.get(0)).size(),
+                objectMapper.readTree(bodies.get(1)).size()
+        );
+        assertEquals(List.of(2, 2), sizes);
+        assertEquals(0, notifier.getFailedCount());
+        notifier.close();
+    }
+
+    @Test
+    void batchFailingWithTooManyRequestsOrServerErrorShouldBeRetriedWithGrowingDelay() {
+        // GIVEN
+        var notifier = notifier(true, 100, 5);
+        answers.addAll(List.of(503, 429, 500));
+
+        // WHEN
+        notifier.onEvents(List.of(event(0, "a", ScriptInfo.Status.COMPLETED)));
+
+        // THEN - batch should be delivered by the fourth attempt, every retry waiting twice as long
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> notifier.getDeliveredCount() == 1);
+        assertEquals(4, bodies.size());
+        assertEquals(List.of(Duration.ofMillis(10), Duration.ofMillis(20), Duration.ofMillis(40)), retryDelays);
+        assertEquals(0, notifier.getFailedCount());
+        notifier.close();
+    }
+
+    @Test
+    void batchShouldBeGivenUpAfterMaxAttempts() {
+        // GIVEN
+        var notifier = notifier(true, 100, 3);
+        answers.addAll(List.of(500, 500, 500, 500));
+
+        // WHEN
+        notifier.onEvents(List.of(event(0, "a", ScriptInfo.Status.COMPLETED), event(1, "b", ScriptInfo.Status.ERROR)));
+
+        // THEN - both events should be counted as failed after the third attempt
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> notifier.getFailedCount() == 2);
+        assertEquals(3, bodies.size());
+        assertEquals(0, notifier.getDeliveredCount());
+        notifier.close();
+    }
+
+    @Test
+    void batchRejectedByClientErrorShouldNotBeRetried() {
+        // GIVEN
+        var notifier = notifier(true, 100, 3);
+        answers.add(400);
+
+        // WHEN
+        notifier.onEvents(List.of(event(0, "a", ScriptInfo.Status.COMPLETED)));
+
+        // THEN
+        Awaitility.await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> notifier.getFailedCount() == 1);
+        assertEquals(1, bodies.size());
+        assertEquals(List.of(), retryDelays);
+        notifier.close();
+    }
+
+    private WebhookNotifier notifier(boolean terminalOnly, int maxBatch, int maxAttempts) {
+        return new WebhookNotifier(
+                List.of(URI.create("http://localhost:" + server.getAddress().getPort() + "/hook")),
+                terminalOnly,
+                maxBatch,
+                maxAttempts,
+                Duration.ofMillis(10),
+                Duration.ofSeconds(5),
+                HttpClient.newHttpClient(),
+                objectMapper,
+                this::recordRetry
+        );
+    }
+
+    /**
+     * Retries are recorded and run right away, so the test does not wait for their delays
+     */
+    private TaskTimer.Timeout recordRetry(Duration delay, Runnable task) {
+        retryDelays.add(delay);
+        ForkJoinPool.commonPool().execute(task);
+        return () -> false;
+    }
+
+    private static ScriptEvent event(long sequence, String name, ScriptInfo.Status status) {
+        return new ScriptEvent(sequence, name, ScriptInfo.Status.SCHEDULED, status, Instant.now());
+    }
+
+}